@@ -0,0 +1,29 @@
+import java.util.Arrays;
+
+//Represents a generator with buffers that are kept while the topology keeps
+//its size
+abstract class AGridGenerator implements ITreeGenerator {
+  // the topology the buffers were last sized for
+  GridTopology sizedFor;
+
+  // the ids of the tree's edges
+  int[] tree;
+
+  // whether each cell has joined the tree
+  boolean[] inTree;
+
+  // makes sure the buffers fit the given topology, and empties inTree
+  void prepare(GridTopology topology) {
+    if (this.sizedFor == null || this.sizedFor.cells != topology.cells
+        || this.sizedFor.edges != topology.edges) {
+      this.sizedFor = topology;
+      this.tree = new int[Math.max(topology.cells - 1, 0)];
+      this.inTree = new boolean[topology.cells];
+      this.resize(topology);
+    }
+    Arrays.fill(this.inTree, false);
+  }
+
+  // resizes the buffers of a particular strategy for the given topology
+  abstract void resize(GridTopology topology);
+}
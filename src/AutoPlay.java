@@ -0,0 +1,401 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import tester.Tester;
+
+//Represents a game played by a bot: a headless session, played only through the
+//rotate and station moves a player has, and the solved wires it was scrambled from
+class BotGame {
+  GameSession session;
+  byte[] solution;
+  int stationMoves;
+
+  // lays out and scrambles a board exactly as PackedBoard.generate does, keeping
+  // the wires from before the scramble
+  BotGame(long id, GridTopology topology, ITreeGenerator generator, Random rand) {
+    PackedBoard board = new PackedBoard(topology);
+    int[] tree = generator.spanningTree(topology, rand);
+
+    for (int i = 0; i < topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    this.solution = board.links.clone();
+    board.scramble(rand);
+    board.propagate();
+    this.session = new GameSession(id, board);
+    this.stationMoves = 0;
+  }
+
+  // makes the given move: a cell to rotate, or -1 - side to move the station
+  void play(int move) {
+    GridTopology t = this.session.board.topology;
+
+    if (move >= 0) {
+      this.session.rotate(t.col(move), t.row(move));
+    }
+    else {
+      this.session.moveStation(-1 - move);
+      this.stationMoves++;
+    }
+  }
+
+  // determines if every cell is powered
+  boolean won() {
+    return this.session.board.allPowered();
+  }
+}
+
+//Represents a way for a bot to choose its moves. A move is a cell to rotate, or
+//-1 - side to move the station through that side.
+interface IBotPolicy {
+  // gets ready to play a new game
+  void start(BotGame game);
+
+  // chooses the next move in the given game
+  int choose(BotGame game, Random rand);
+
+  // the name of this policy
+  String name();
+}
+
+//Rotates random cells, now and then trying to move the station
+class RandomPolicy implements IBotPolicy {
+  public void start(BotGame game) {
+    // a random player remembers nothing
+  }
+
+  public int choose(BotGame game, Random rand) {
+    GridTopology t = game.session.board.topology;
+
+    if (rand.nextInt(8) == 0) {
+      return -1 - rand.nextInt(t.sides);
+    }
+    return rand.nextInt(t.cells);
+  }
+
+  public String name() {
+    return "random";
+  }
+}
+
+//Turns the cell on the edge of the powered region that makes the most cells
+//powered, trying every number of turns of every such cell on a scratch copy of
+//the board, or a random one of those cells when no turn powers anything more
+class GreedyPolicy implements IBotPolicy {
+  PackedBoard scratch;
+  ArrayList<Integer> frontier = new ArrayList<Integer>();
+
+  // the cell being turned and the turns it still needs
+  int pendingCell;
+  int pendingTurns;
+
+  public void start(BotGame game) {
+    GridTopology t = game.session.board.topology;
+
+    if (this.scratch == null || this.scratch.topology != t) {
+      this.scratch = new PackedBoard(t);
+    }
+    this.pendingTurns = 0;
+  }
+
+  public int choose(BotGame game, Random rand) {
+    if (this.pendingTurns > 0) {
+      this.pendingTurns--;
+      return this.pendingCell;
+    }
+    PackedBoard board = game.session.board;
+    GridTopology t = board.topology;
+    int best = board.poweredCount();
+
+    this.frontier.clear();
+    for (int cell = 0; cell < t.cells; cell++) {
+      for (int i = t.start[cell]; i < t.start[cell + 1]; i++) {
+        int other = t.neighbors[i];
+
+        if (board.powered[cell] != board.powered[other]) {
+          this.frontier.add(cell);
+          break;
+        }
+      }
+    }
+    if (this.frontier.isEmpty()) {
+      return rand.nextInt(t.cells);
+    }
+
+    System.arraycopy(board.links, 0, this.scratch.links, 0, t.cells);
+    this.scratch.station = board.station;
+    for (int cell : this.frontier) {
+      for (int turns = 1; turns < t.sides; turns++) {
+        this.scratch.rotate(cell);
+        this.scratch.propagate();
+
+        if (this.scratch.poweredCount() > best) {
+          best = this.scratch.poweredCount();
+          this.pendingCell = cell;
+          this.pendingTurns = turns;
+        }
+      }
+      this.scratch.rotate(cell);
+    }
+    if (this.pendingTurns == 0) {
+      return this.frontier.get(rand.nextInt(this.frontier.size()));
+    }
+    this.pendingTurns--;
+    return this.pendingCell;
+  }
+
+  public String name() {
+    return "greedy";
+  }
+}
+
+//Turns every cell until it matches the solved board, the way a solver's answer
+//would be played in
+class SolutionPolicy implements IBotPolicy {
+  int next; // the first cell that may still be wrong
+
+  public void start(BotGame game) {
+    this.next = 0;
+  }
+
+  public int choose(BotGame game, Random rand) {
+    byte[] links = game.session.board.links;
+
+    while (this.next < links.length && links[this.next] == game.solution[this.next]) {
+      this.next++;
+    }
+    return this.next < links.length ? this.next : rand.nextInt(links.length);
+  }
+
+  public String name() {
+    return "solver";
+  }
+}
+
+//Plays many bot games at once on a pool of threads and measures how fast they go:
+//games per second, moves per game, and the time spent generating boards,
+//choosing moves and making them
+class BotHarness {
+  GridTopology topology;
+  Supplier<ITreeGenerator> generators;
+  Supplier<IBotPolicy> policies;
+  int maxMoves; // a game is given up after this many moves
+
+  LongAdder games = new LongAdder();
+  LongAdder wins = new LongAdder();
+  LongAdder rotations = new LongAdder();
+  LongAdder stationMoves = new LongAdder();
+  LongAdder generateNanos = new LongAdder();
+  LongAdder chooseNanos = new LongAdder();
+  LongAdder playNanos = new LongAdder();
+  long wallNanos;
+
+  BotHarness(GridTopology topology, Supplier<ITreeGenerator> generators,
+      Supplier<IBotPolicy> policies, int maxMoves) {
+    this.topology = topology;
+    this.generators = generators;
+    this.policies = policies;
+    this.maxMoves = maxMoves;
+  }
+
+  // plays the given number of games on the given number of threads, game i
+  // being generated and played from seed i
+  void run(int count, int threads) throws InterruptedException, ExecutionException {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ArrayList<Future<?>> done = new ArrayList<Future<?>>();
+    long start = System.nanoTime();
+
+    try {
+      for (int w = 0; w < threads; w++) {
+        int worker = w;
+        done.add(pool.submit(() -> this.work(worker, count, threads)));
+      }
+      for (Future<?> future : done) {
+        future.get();
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+    this.wallNanos += System.nanoTime() - start;
+  }
+
+  // plays every game whose number leaves the given remainder, with one generator
+  // and policy for all of them
+  void work(int worker, int count, int threads) {
+    ITreeGenerator generator = this.generators.get();
+    IBotPolicy policy = this.policies.get();
+
+    for (int i = worker; i < count; i += threads) {
+      this.play(i, generator, policy);
+    }
+  }
+
+  // plays game number i to the end
+  void play(long i, ITreeGenerator generator, IBotPolicy policy) {
+    Random rand = new Random(i);
+
+    long start = System.nanoTime();
+    BotGame game = new BotGame(i, this.topology, generator, rand);
+    long chose = System.nanoTime();
+    this.generateNanos.add(chose - start);
+
+    long choosing = 0;
+    long playing = 0;
+    int moves = 0;
+
+    policy.start(game);
+    while (!game.won() && moves < this.maxMoves) {
+      long before = System.nanoTime();
+      int move = policy.choose(game, rand);
+      long after = System.nanoTime();
+
+      game.play(move);
+      moves++;
+      choosing += after - before;
+      playing += System.nanoTime() - after;
+    }
+
+    this.chooseNanos.add(choosing);
+    this.playNanos.add(playing);
+    this.games.increment();
+    this.rotations.add(game.session.moves);
+    this.stationMoves.add(game.stationMoves);
+    if (game.won()) {
+      this.wins.increment();
+    }
+  }
+
+  // the measurements so far as a table row
+  String report(String policy) {
+    double games = Math.max(1, this.games.sum());
+
+    return String.format("%-7s %8d %6d %10.1f %10.1f %9.1f %9.3f %9.3f %9.3f", policy,
+        this.games.sum(), this.wins.sum(), this.games.sum() / (this.wallNanos / 1e9),
+        this.rotations.sum() / games, this.stationMoves.sum() / games,
+        this.generateNanos.sum() / 1e6 / games, this.chooseNanos.sum() / 1e6 / games,
+        this.playNanos.sum() / 1e6 / games);
+  }
+
+  // runs every policy on the same boards, optionally given the side of the
+  // boards, the number of games and the number of threads
+  public static void main(String[] args) throws InterruptedException, ExecutionException {
+    int side = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int count = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    int threads = args.length > 2 ? Integer.parseInt(args[2])
+        : Runtime.getRuntime().availableProcessors();
+    GridTopology topology = new GridTopology(side, side, GridTopology.SQUARE);
+    ArrayList<Supplier<IBotPolicy>> policies = new ArrayList<Supplier<IBotPolicy>>();
+
+    policies.add(SolutionPolicy::new);
+    policies.add(GreedyPolicy::new);
+    policies.add(RandomPolicy::new);
+
+    System.out.printf("%d x %d boards on %d threads%n", side, side, threads);
+    System.out.printf("%-7s %8s %6s %10s %10s %9s %9s %9s %9s%n", "policy", "games", "won",
+        "games/s", "rotations", "station", "gen ms", "choose ms", "play ms");
+    for (Supplier<IBotPolicy> policy : policies) {
+      BotHarness harness = new BotHarness(topology, KruskalGenerator::new, policy,
+          20 * topology.cells);
+
+      harness.run(count, threads);
+      System.out.println(harness.report(policy.get().name()));
+    }
+  }
+}
+
+//Examples and tests for bots
+class ExamplesAutoPlay {
+  GridTopology grid = new GridTopology(6, 5, GridTopology.SQUARE);
+
+  // tests that a bot game starts from the same board as a generated one
+  void testBotGame(Tester t) {
+    BotGame game = new BotGame(1, this.grid, new KruskalGenerator(), new Random(4));
+    PackedBoard board = new PackedBoard(this.grid);
+    board.generate(new KruskalGenerator(), new Random(4));
+
+    t.checkExpect(game.session.board.links, board.links);
+    t.checkExpect(game.session.board.powered, board.powered);
+
+    PackedBoard solved = new PackedBoard(this.grid);
+    System.arraycopy(game.solution, 0, solved.links, 0, this.grid.cells);
+    solved.propagate();
+    t.checkExpect(solved.allPowered(), true);
+
+    game.play(7);
+    t.checkExpect(game.session.moves, 1);
+    game.play(-1 - IUtils.RIGHT);
+    t.checkExpect(game.stationMoves, 1);
+  }
+
+  // tests that the solver policy wins every game without wasted turns
+  void testSolutionPolicy(Tester t) {
+    for (int seed = 0; seed < 5; seed++) {
+      BotGame game = new BotGame(seed, this.grid, new WilsonGenerator(), new Random(seed));
+      IBotPolicy policy = new SolutionPolicy();
+      Random rand = new Random(seed);
+      int moves = 0;
+
+      policy.start(game);
+      while (!game.won() && moves < 3 * this.grid.cells) {
+        game.play(policy.choose(game, rand));
+        moves++;
+      }
+      t.checkExpect(game.won(), true);
+    }
+  }
+
+  // tests that the greedy policy turns a cell to power as much as it can
+  void testGreedyPolicy(Tester t) {
+    BotGame game = new BotGame(2, this.grid, new KruskalGenerator(), new Random(2));
+    IBotPolicy policy = new GreedyPolicy();
+    Random rand = new Random(0);
+    int before = game.session.board.poweredCount();
+
+    policy.start(game);
+    for (int i = 0; i < 100 && game.session.board.poweredCount() <= before; i++) {
+      game.play(policy.choose(game, rand));
+    }
+    t.checkExpect(game.session.board.poweredCount() > before, true);
+  }
+
+  // tests that the random policy only makes legal moves
+  void testRandomPolicy(Tester t) {
+    BotGame game = new BotGame(3, this.grid, new KruskalGenerator(), new Random(3));
+    IBotPolicy policy = new RandomPolicy();
+    Random rand = new Random(1);
+    boolean legal = true;
+
+    for (int i = 0; i < 500; i++) {
+      int move = policy.choose(game, rand);
+      legal &= move < this.grid.cells && move >= -this.grid.sides;
+      game.play(move);
+    }
+    t.checkExpect(legal, true);
+    t.checkExpect(game.session.moves + game.stationMoves, 500);
+  }
+
+  // tests the harness on a pool of threads
+  void testHarness(Tester t) throws InterruptedException, ExecutionException {
+    BotHarness harness = new BotHarness(this.grid, KruskalGenerator::new, SolutionPolicy::new,
+        10 * this.grid.cells);
+
+    harness.run(40, 3);
+
+    t.checkExpect(harness.games.sum(), 40L);
+    t.checkExpect(harness.wins.sum(), 40L);
+    t.checkExpect(harness.rotations.sum() <= 40L * 3 * this.grid.cells, true);
+
+    String[] row = harness.report("solver").trim().split(" +");
+    t.checkExpect(row.length, 9);
+    t.checkExpect(row[0], "solver");
+    t.checkExpect(row[1], "40");
+    t.checkExpect(row[2], "40");
+  }
+}
@@ -0,0 +1,341 @@
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents the wires and power of a bounded square board as bit rows, so that
+//power can spread 64 cells at a time. Bit col % 64 of word row * words + col / 64
+//stands for the cell at (col, row), and every side has its own mask of the cells
+//with a wire through it. Power spreads along a word in one step with the carry of
+//an addition, and into the neighboring words with a plain and; words that gain
+//power wait in a worklist until nothing changes.
+class BitFloodFill {
+  int width; // columns
+  int height; // rows
+  int words; // words per row
+
+  // the cells with a wire through each side, indexed by IUtils side
+  long[][] sides;
+
+  // the powered cells
+  long[] powered;
+
+  // scratch masks of propagate: cells connected to their right and lower neighbor
+  long[] openRight;
+  long[] openDown;
+
+  // words that gained power and still have to pass it on, and whether each word
+  // is waiting in that worklist
+  int[] worklist;
+  boolean[] dirty;
+
+  BitFloodFill(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.words = (width + 63) / 64;
+    this.sides = new long[4][this.words * height];
+    this.powered = new long[this.words * height];
+    this.openRight = new long[this.words * height];
+    this.openDown = new long[this.words * height];
+    this.worklist = new int[this.words * height];
+    this.dirty = new boolean[this.words * height];
+  }
+
+  // copies the wires of a packed board on a bounded square grid
+  static BitFloodFill of(PackedBoard board) {
+    GridTopology t = board.topology;
+
+    if (t.kind != GridTopology.SQUARE) {
+      throw new IllegalArgumentException("Bit rows only fit bounded square grids");
+    }
+    BitFloodFill bits = new BitFloodFill(t.width, t.height);
+
+    for (int cell = 0; cell < t.cells; cell++) {
+      bits.setLinks(t.col(cell), t.row(cell), board.links[cell]);
+    }
+    return bits;
+  }
+
+  // sets the wires of the cell at the given column and row from a link mask
+  void setLinks(int col, int row, int links) {
+    int word = row * this.words + (col >>> 6);
+    long bit = 1L << col;
+
+    for (int side = 0; side < 4; side++) {
+      if ((links & (1 << side)) != 0) {
+        this.sides[side][word] |= bit;
+      }
+      else {
+        this.sides[side][word] &= ~bit;
+      }
+    }
+  }
+
+  // the link mask of the cell at the given column and row
+  int links(int col, int row) {
+    int word = row * this.words + (col >>> 6);
+    int links = 0;
+
+    for (int side = 0; side < 4; side++) {
+      if ((this.sides[side][word] & (1L << col)) != 0) {
+        links |= 1 << side;
+      }
+    }
+    return links;
+  }
+
+  // rotates the cell at the given column and row clockwise once
+  void rotate(int col, int row) {
+    int links = this.links(col, row);
+
+    this.setLinks(col, row, ((links << 1) | (links >>> 3)) & 0b1111);
+  }
+
+  // determines if the cell at the given column and row is powered
+  boolean isPowered(int col, int row) {
+    return (this.powered[row * this.words + (col >>> 6)] & (1L << col)) != 0;
+  }
+
+  // counts the powered cells
+  int poweredCount() {
+    int count = 0;
+
+    for (long word : this.powered) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  // powers every cell connected to the station at the given column and row,
+  // returning the number of words it had to visit
+  int propagate(int col, int row) {
+    long[] top = this.sides[IUtils.TOP];
+    long[] right = this.sides[IUtils.RIGHT];
+    long[] bottom = this.sides[IUtils.BOTTOM];
+    long[] left = this.sides[IUtils.LEFT];
+    int visits = 0;
+    int size = 0;
+
+    for (int r = 0; r < this.height; r++) {
+      for (int w = 0; w < this.words; w++) {
+        int i = r * this.words + w;
+        // a cell is open to the right if its right neighbor has a left wire
+        long leftOfNext = (left[i] >>> 1) | (w + 1 < this.words ? left[i + 1] << 63 : 0);
+
+        this.openRight[i] = right[i] & leftOfNext;
+        this.openDown[i] = r + 1 < this.height ? bottom[i] & top[i + this.words] : 0;
+        this.powered[i] = 0;
+        this.dirty[i] = false;
+      }
+    }
+    if (this.width == 0 || this.height == 0) {
+      return 0;
+    }
+    int first = row * this.words + (col >>> 6);
+    this.powered[first] |= 1L << col;
+    this.dirty[first] = true;
+    this.worklist[size++] = first;
+
+    while (size > 0) {
+      int i = this.worklist[--size];
+      int w = i % this.words;
+      long lit = this.fillWord(i);
+
+      this.dirty[i] = false;
+      visits++;
+
+      // power crosses into the words on either side through open wires at the ends
+      if (w + 1 < this.words && (lit & this.openRight[i]) >>> 63 != 0) {
+        size = this.light(i + 1, 1L, size);
+      }
+      if (w > 0 && (lit & 1L) != 0 && this.openRight[i - 1] >>> 63 != 0) {
+        size = this.light(i - 1, 1L << 63, size);
+      }
+      // and into the rows above and below
+      if (i + this.words < this.powered.length) {
+        size = this.light(i + this.words, lit & this.openDown[i], size);
+      }
+      if (i >= this.words) {
+        size = this.light(i - this.words, lit & this.openDown[i - this.words], size);
+      }
+    }
+    return visits;
+  }
+
+  // spreads power along the open wires inside the word at index i, to the right
+  // and then to the left, whole runs at a time; returns the powered cells of the word
+  long fillWord(int i) {
+    long open = this.openRight[i];
+    long lit = this.powered[i];
+
+    // adding the powered cells to a run of open cells carries through the rest of
+    // the run and into the first cell after it
+    lit |= (open + (lit & open)) ^ open;
+
+    // the same with the bits reversed spreads to the left, where a cell is open to
+    // the left if the cell before it is open to the right
+    long openLeft = Long.reverse(open << 1);
+    long reversed = Long.reverse(lit);
+    lit |= Long.reverse((openLeft + (reversed & openLeft)) ^ openLeft);
+
+    this.powered[i] = lit;
+    return lit;
+  }
+
+  // powers the given cells of the word at index i, adding the word to the worklist
+  // if that lit anything new; returns the new size of the worklist
+  int light(int i, long cells, int size) {
+    if ((cells & ~this.powered[i]) == 0) {
+      return size;
+    }
+    this.powered[i] |= cells;
+    if (!this.dirty[i]) {
+      this.dirty[i] = true;
+      this.worklist[size++] = i;
+    }
+    return size;
+  }
+
+  // copies the powered cells into the given packed board of the same size
+  void writeTo(PackedBoard board) {
+    GridTopology t = board.topology;
+
+    for (int cell = 0; cell < t.cells; cell++) {
+      board.powered[cell] = this.isPowered(t.col(cell), t.row(cell));
+    }
+  }
+}
+
+//Compares breadth first propagation with bit row propagation on large boards
+class FloodFillBenchmark {
+
+  // runs the benchmark, optionally with the board sides to try as arguments
+  public static void main(String[] args) {
+    int[] sides = { 256, 1024, 2048 };
+    if (args.length > 0) {
+      sides = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sides[i] = Integer.parseInt(args[i]);
+      }
+    }
+
+    System.out.printf("%6s %12s %12s %12s%n", "side", "bfs ms", "bits ms", "word visits");
+    for (int side : sides) {
+      PackedBoard board = new PackedBoard(new GridTopology(side, side, GridTopology.SQUARE));
+      int[] tree = new KruskalGenerator().spanningTree(board.topology, new Random(side));
+
+      for (int i = 0; i < board.topology.cells - 1; i++) {
+        board.connect(tree[i]);
+      }
+      BitFloodFill bits = BitFloodFill.of(board);
+      int visits = 0;
+
+      for (int warm = 0; warm < 3; warm++) {
+        board.propagate();
+        visits = bits.propagate(0, 0);
+      }
+
+      long start = System.nanoTime();
+      board.propagate();
+      double bfs = (System.nanoTime() - start) / 1e6;
+
+      start = System.nanoTime();
+      bits.propagate(0, 0);
+      double bitRows = (System.nanoTime() - start) / 1e6;
+
+      System.out.printf("%6d %12.2f %12.2f %12d%n", side, bfs, bitRows, visits);
+    }
+  }
+}
+
+//Examples and tests for bit row propagation
+class ExamplesBitFloodFill {
+
+  // tests that bit rows power the same cells as breadth first search
+  void testMatchesBreadthFirst(Tester t) {
+    int[][] sizes = { { 3, 3 }, { 1, 5 }, { 5, 1 }, { 64, 3 }, { 130, 7 }, { 70, 70 } };
+
+    for (int[] size : sizes) {
+      for (int seed = 0; seed < 3; seed++) {
+        PackedBoard board = new PackedBoard(
+            new GridTopology(size[0], size[1], GridTopology.SQUARE));
+        board.generate(new WilsonGenerator(), new Random(seed));
+        board.station = board.topology.cells / 2;
+        board.propagate();
+
+        boolean[] expected = board.powered.clone();
+        BitFloodFill bits = BitFloodFill.of(board);
+
+        bits.propagate(board.topology.col(board.station), board.topology.row(board.station));
+        bits.writeTo(board);
+
+        t.checkExpect(board.powered, expected);
+      }
+    }
+  }
+
+  // tests a solved board, whose wires run all over it
+  void testSolvedBoard(Tester t) {
+    PackedBoard board = new PackedBoard(new GridTopology(200, 50, GridTopology.SQUARE));
+    int[] tree = new PrimGenerator().spanningTree(board.topology, new Random(1));
+
+    for (int i = 0; i < board.topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    BitFloodFill bits = BitFloodFill.of(board);
+
+    bits.propagate(199, 49);
+    t.checkExpect(bits.poweredCount(), 10000);
+  }
+
+  // tests reading, writing and rotating cells
+  void testCells(Tester t) {
+    BitFloodFill bits = new BitFloodFill(100, 2);
+
+    bits.setLinks(70, 1, 0b0011);
+    t.checkExpect(bits.links(70, 1), 0b0011);
+    t.checkExpect(bits.links(70, 0), 0);
+
+    bits.rotate(70, 1);
+    t.checkExpect(bits.links(70, 1), 0b0110);
+    bits.rotate(70, 1);
+    bits.rotate(70, 1);
+    t.checkExpect(bits.links(70, 1), 0b1001);
+
+    // a wire to the right alone does not connect without one coming back
+    bits.setLinks(71, 1, 0b0001);
+    bits.propagate(70, 1);
+    t.checkExpect(bits.poweredCount(), 1);
+    t.checkExpect(bits.isPowered(70, 1), true);
+
+    bits.setLinks(69, 1, 0b0010);
+    bits.setLinks(70, 0, 0b0100);
+    bits.propagate(70, 1);
+    t.checkExpect(bits.poweredCount(), 3);
+    t.checkExpect(bits.isPowered(69, 1), true);
+    t.checkExpect(bits.isPowered(70, 0), true);
+    t.checkExpect(bits.isPowered(71, 1), false);
+
+    // and across the boundary between two words
+    bits.setLinks(63, 0, 0b0010);
+    bits.setLinks(64, 0, 0b1010);
+    bits.setLinks(65, 0, 0b1000);
+    bits.propagate(63, 0);
+    t.checkExpect(bits.poweredCount(), 3);
+    t.checkExpect(bits.isPowered(65, 0), true);
+    bits.propagate(65, 0);
+    t.checkExpect(bits.isPowered(63, 0), true);
+  }
+
+  // tests that only bounded square grids fit in bit rows
+  void testBadGrid(Tester t) {
+    PackedBoard torus = new PackedBoard(new GridTopology(3, 3, GridTopology.TORUS));
+
+    t.checkException(new IllegalArgumentException("Bit rows only fit bounded square grids"),
+        new ExamplesBitFloodFill(), "packTorus", torus);
+  }
+
+  // packs the given board into bit rows, for testing the exception
+  BitFloodFill packTorus(PackedBoard board) {
+    return BitFloodFill.of(board);
+  }
+}
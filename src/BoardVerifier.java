@@ -0,0 +1,473 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import tester.Tester;
+
+//Checks submitted final boards for a win without building a game for them: every
+//cell must be connected to the station, which is what checkWin asks of a
+//LightEmAll game. Boards come compactly encoded as a 13 byte header of width,
+//height, kind and station cell, followed by the wires of every cell in cell order,
+//always numbered column-major whatever the layout of the board it came from,
+//two four sided cells to a byte (the first in the low half) or one hexagonal cell
+//to a byte. Each thread reuses its own worklist, so a check allocates nothing.
+class BoardVerifier {
+  static final int HEADER = 13;
+
+  // the longest side of a board that is accepted, and the most bytes of
+  // topologies kept by default
+  static final int MAX_SIDE = 4096;
+  static final long CACHE_BYTES = 64L << 20;
+
+  // topologies are never changed, so every board of the same shape shares one.
+  // Once they take up the budget, boards of other shapes are checked without one.
+  ConcurrentHashMap<Long, GridTopology> topologies = new ConcurrentHashMap<Long, GridTopology>();
+  long budget = CACHE_BYTES;
+  long bytes; // the bytes of the topologies kept, changed only under their lock
+
+  // the worklist and visit marks of each thread
+  ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+  LongAdder verified = new LongAdder();
+
+  // encodes the wires and station of a packed board
+  static byte[] encode(PackedBoard board) {
+    GridTopology t = board.topology;
+    byte[] data = new byte[HEADER + cellBytes(t.cells, t.sides)];
+
+    writeInt(data, 0, t.width);
+    writeInt(data, 4, t.height);
+    data[8] = (byte) t.kind;
+    writeInt(data, 9, t.cells == 0 ? 0 : columnMajor(t, board.station));
+    for (int from = 0; from < t.cells; from++) {
+      int cell = columnMajor(t, from);
+
+      if (t.sides == 4) {
+        data[HEADER + (cell >>> 1)] |= (byte) (board.links[from] << ((cell & 1) << 2));
+      }
+      else {
+        data[HEADER + cell] = board.links[from];
+      }
+    }
+    return data;
+  }
+
+  // the number a cell of the given topology has in column-major order
+  static int columnMajor(GridTopology t, int cell) {
+    return t.col(cell) * t.height + t.row(cell);
+  }
+
+  // the bytes holding the wires of the given number of cells
+  static int cellBytes(int cells, int sides) {
+    return sides == 4 ? (cells + 1) / 2 : cells;
+  }
+
+  // writes a big endian int at the given index
+  static void writeInt(byte[] data, int at, int value) {
+    data[at] = (byte) (value >>> 24);
+    data[at + 1] = (byte) (value >>> 16);
+    data[at + 2] = (byte) (value >>> 8);
+    data[at + 3] = (byte) value;
+  }
+
+  // reads a big endian int at the given index
+  static int readInt(byte[] data, int at) {
+    return (data[at] & 0xFF) << 24 | (data[at + 1] & 0xFF) << 16 | (data[at + 2] & 0xFF) << 8
+        | (data[at + 3] & 0xFF);
+  }
+
+  // the topology of an encoded board, or null if its shape is not kept and does
+  // not fit the budget, checking that the rest of it fits before building anything
+  // from its header
+  GridTopology topologyOf(byte[] data) {
+    if (data.length < HEADER) {
+      throw new IllegalArgumentException("Malformed board: too short for a header");
+    }
+    int width = readInt(data, 0);
+    int height = readInt(data, 4);
+    int kind = data[8];
+
+    if (width < 0 || height < 0 || width > MAX_SIDE || height > MAX_SIDE
+        || kind < GridTopology.SQUARE || kind > GridTopology.HEX) {
+      throw new IllegalArgumentException("Malformed board: bad size or kind");
+    }
+    int cells = width * height;
+    int station = readInt(data, 9);
+
+    if (data.length != HEADER + cellBytes(cells, kind == GridTopology.HEX ? 6 : 4)
+        || station < 0 || (station >= cells && cells > 0)) {
+      throw new IllegalArgumentException("Malformed board: bad length or station");
+    }
+    long key = (long) width << 32 | (long) height << 2 | kind;
+    GridTopology t = this.topologies.get(key);
+
+    if (t == null) {
+      long needed = GridTopology.bytes(width, height, kind);
+
+      synchronized (this.topologies) {
+        t = this.topologies.get(key);
+        if (t == null && this.bytes + needed <= this.budget) {
+          t = new GridTopology(width, height, kind);
+          this.topologies.put(key, t);
+          this.bytes += needed;
+        }
+      }
+    }
+    return t;
+  }
+
+  // the wires of the given cell of an encoded board
+  static int links(byte[] data, int sides, int cell) {
+    if (sides == 4) {
+      return (data[HEADER + (cell >>> 1)] >>> ((cell & 1) << 2)) & 0xF;
+    }
+    return data[HEADER + cell] & 0xFF;
+  }
+
+  // determines if every cell of an encoded board is connected to its station
+  boolean verify(byte[] data) {
+    GridTopology t = this.topologyOf(data);
+    Scratch s = this.scratch.get();
+    int head = 0;
+    int tail = 0;
+
+    this.verified.increment();
+    if (t == null) {
+      return this.verifyUncached(data);
+    }
+    if (t.cells == 0) {
+      return true;
+    }
+    s.prepare(t.cells);
+    int station = readInt(data, 9);
+    s.visit(station);
+    s.queue[tail++] = station;
+
+    while (head < tail) {
+      int cell = s.queue[head++];
+      int links = links(data, t.sides, cell);
+
+      for (int i = t.start[cell]; i < t.start[cell + 1]; i++) {
+        int to = t.neighbors[i];
+        int side = t.sideOf[i];
+
+        if ((links & (1 << side)) != 0 && !s.visited(to)
+            && (links(data, t.sides, to) & (1 << t.opposite(side))) != 0) {
+          s.visit(to);
+          s.queue[tail++] = to;
+        }
+      }
+    }
+    return tail == t.cells;
+  }
+
+  // the same check for a well formed board whose topology is not kept, finding
+  // each neighbor from the shape instead of from tables
+  boolean verifyUncached(byte[] data) {
+    int width = readInt(data, 0);
+    int height = readInt(data, 4);
+    int kind = data[8];
+    int sides = kind == GridTopology.HEX ? 6 : 4;
+    int cells = width * height;
+    Scratch s = this.scratch.get();
+    int head = 0;
+    int tail = 0;
+
+    if (cells == 0) {
+      return true;
+    }
+    s.prepare(cells);
+    int station = readInt(data, 9);
+    s.visit(station);
+    s.queue[tail++] = station;
+
+    while (head < tail) {
+      int cell = s.queue[head++];
+      int links = links(data, sides, cell);
+
+      for (int side = 0; side < sides; side++) {
+        int to = GridTopology.neighborOf(width, height, kind, cell / height, cell % height,
+            side);
+        int back = (side + sides / 2) % sides;
+
+        if ((links & (1 << side)) != 0 && to >= 0 && !s.visited(to)
+            && (links(data, sides, to) & (1 << back)) != 0) {
+          s.visit(to);
+          s.queue[tail++] = to;
+        }
+      }
+    }
+    return tail == cells;
+  }
+
+  // verifies a batch of boards in parallel, malformed boards counting as not won
+  boolean[] verifyBatch(byte[][] boards) {
+    boolean[] won = new boolean[boards.length];
+
+    IntStream.range(0, boards.length).parallel()
+        .forEach(i -> won[i] = this.verifySafely(boards[i]));
+    return won;
+  }
+
+  // verifies a stream of boards in parallel, counting those that are won
+  long countWon(Stream<byte[]> boards) {
+    return boards.parallel().filter(this::verifySafely).count();
+  }
+
+  // verifies a board, a malformed one counting as not won
+  boolean verifySafely(byte[] data) {
+    try {
+      return this.verify(data);
+    }
+    catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+}
+
+//Represents the worklist of one thread's checks, and which cells it has reached.
+//A cell is reached if its mark equals the current round, so starting a new check
+//needs no clearing.
+class Scratch {
+  int[] queue = new int[0];
+  int[] marks = new int[0];
+  int round;
+
+  // makes room for a board of the given number of cells and starts a new round
+  void prepare(int cells) {
+    if (this.queue.length < cells) {
+      this.queue = new int[cells];
+      this.marks = new int[cells];
+      this.round = 0;
+    }
+    this.round++;
+    if (this.round == 0) {
+      Arrays.fill(this.marks, 0);
+      this.round = 1;
+    }
+  }
+
+  // marks the given cell as reached
+  void visit(int cell) {
+    this.marks[cell] = this.round;
+  }
+
+  // determines if the given cell has been reached this round
+  boolean visited(int cell) {
+    return this.marks[cell] == this.round;
+  }
+}
+
+//Times verification of encoded boards on every core
+class VerifyBenchmark {
+
+  // runs the benchmark, optionally given the side of the boards and their number
+  public static void main(String[] args) {
+    int side = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    int count = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+    GridTopology topology = new GridTopology(side, side, GridTopology.SQUARE);
+    byte[][] boards = new byte[count][];
+    Random rand = new Random(1);
+
+    for (int i = 0; i < count; i++) {
+      PackedBoard board = new PackedBoard(topology);
+      int[] tree = new KruskalGenerator().spanningTree(topology, rand);
+
+      for (int e = 0; e < topology.cells - 1; e++) {
+        board.connect(tree[e]);
+      }
+      // half of the boards are solved, half have one cell turned
+      if (i % 2 == 1) {
+        board.rotate(rand.nextInt(topology.cells));
+      }
+      boards[i] = BoardVerifier.encode(board);
+    }
+
+    BoardVerifier verifier = new BoardVerifier();
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      boolean[] won = verifier.verifyBatch(boards);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      int wins = 0;
+
+      for (boolean w : won) {
+        wins += w ? 1 : 0;
+      }
+      System.out.printf("%d boards of %d x %d: %d won, %.0f verifications/s%n", count, side,
+          side, wins, count / seconds);
+    }
+  }
+}
+
+//Examples and tests for board verification
+class ExamplesBoardVerifier {
+  BoardVerifier verifier = new BoardVerifier();
+
+  // makes a solved board laid out by Wilson's algorithm from the given seed
+  PackedBoard solved(GridTopology topology, int seed) {
+    PackedBoard board = new PackedBoard(topology);
+    int[] tree = new WilsonGenerator().spanningTree(topology, new Random(seed));
+
+    for (int i = 0; i < topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    return board;
+  }
+
+  // tests the encoding of a small board
+  void testEncode(Tester t) {
+    PackedBoard line = this.solved(new GridTopology(3, 1, GridTopology.SQUARE), 0);
+    line.station = 2;
+
+    t.checkExpect(BoardVerifier.encode(line), new byte[] { 0, 0, 0, 3, 0, 0, 0, 1, 0, 0, 0, 0,
+        2, (byte) 0xA2, 0x08 });
+    t.checkExpect(BoardVerifier.links(BoardVerifier.encode(line), 4, 1), 0b1010);
+    t.checkExpect(BoardVerifier.encode(new PackedBoard(new GridTopology(2, 1,
+        GridTopology.HEX))).length, 15);
+  }
+
+  // tests that verification agrees with powering a packed board
+  void testVerify(Tester t) {
+    int[] kinds = { GridTopology.SQUARE, GridTopology.TORUS, GridTopology.HEX };
+    boolean agrees = true;
+    int won = 0;
+
+    for (int kind : kinds) {
+      GridTopology grid = new GridTopology(7, 5, kind);
+
+      for (int seed = 0; seed < 30; seed++) {
+        PackedBoard board = this.solved(grid, seed);
+        board.station = seed % grid.cells;
+        if (seed % 3 > 0) {
+          board.rotate(seed % grid.cells);
+        }
+        board.propagate();
+
+        boolean verified = this.verifier.verify(BoardVerifier.encode(board));
+        agrees &= verified == board.allPowered();
+        won += verified ? 1 : 0;
+      }
+    }
+    t.checkExpect(agrees, true);
+    t.checkRange(won, 30, 90);
+    t.checkExpect(this.verifier.verified.sum(), 90L);
+  }
+
+  // tests that boards in other layouts encode as the same column-major board
+  void testLayouts(Tester t) {
+    GridTopology columns = new GridTopology(7, 5, GridTopology.SQUARE);
+    boolean agrees = true;
+
+    for (int layout = 1; layout < CellLayout.NAMES.length; layout++) {
+      GridTopology other = new GridTopology(7, 5, GridTopology.SQUARE, layout);
+
+      for (int seed = 0; seed < 20; seed++) {
+        PackedBoard board = this.solved(columns, seed);
+        PackedBoard moved = new PackedBoard(other);
+
+        for (int cell = 0; cell < columns.cells; cell++) {
+          moved.links[other.cell(columns.col(cell), columns.row(cell))] = board.links[cell];
+        }
+        board.station = seed % columns.cells;
+        moved.station = other.cell(columns.col(board.station), columns.row(board.station));
+        if (seed % 2 > 0) {
+          board.rotate(seed);
+          moved.rotate(other.cell(columns.col(seed), columns.row(seed)));
+        }
+        moved.propagate();
+
+        byte[] data = BoardVerifier.encode(moved);
+        agrees &= Arrays.equals(data, BoardVerifier.encode(board))
+            && this.verifier.verify(data) == moved.allPowered();
+      }
+    }
+    t.checkExpect(agrees, true);
+  }
+
+  // tests batches and streams of boards
+  void testBatch(Tester t) {
+    GridTopology grid = new GridTopology(10, 10, GridTopology.SQUARE);
+    byte[][] boards = new byte[200][];
+
+    for (int i = 0; i < boards.length; i++) {
+      PackedBoard board = this.solved(grid, i);
+      if (i % 4 == 0) {
+        board.links[i % grid.cells] = 0;
+      }
+      boards[i] = BoardVerifier.encode(board);
+    }
+    boards[7] = new byte[3];
+
+    boolean[] won = this.verifier.verifyBatch(boards);
+    int wins = 0;
+    for (boolean w : won) {
+      wins += w ? 1 : 0;
+    }
+    t.checkExpect(wins, 149);
+    t.checkExpect(won[7], false);
+    t.checkExpect(this.verifier.countWon(Arrays.stream(boards)), 149L);
+  }
+
+  // tests that malformed boards are rejected
+  void testMalformed(Tester t) {
+    byte[] board = BoardVerifier.encode(this.solved(new GridTopology(2, 2,
+        GridTopology.SQUARE), 0));
+
+    t.checkException(new IllegalArgumentException("Malformed board: too short for a header"),
+        this.verifier, "verify", new byte[4]);
+    t.checkException(new IllegalArgumentException("Malformed board: bad length or station"),
+        this.verifier, "verify", Arrays.copyOf(board, board.length + 1));
+
+    board[12] = 4;
+    t.checkException(new IllegalArgumentException("Malformed board: bad length or station"),
+        this.verifier, "verify", board);
+    board[12] = 0;
+    board[8] = 7;
+    t.checkException(new IllegalArgumentException("Malformed board: bad size or kind"),
+        this.verifier, "verify", board);
+
+    // a huge size is turned away before anything is built for it
+    byte[] huge = new byte[BoardVerifier.HEADER];
+    BoardVerifier.writeInt(huge, 0, 4000);
+    BoardVerifier.writeInt(huge, 4, 4000);
+    t.checkException(new IllegalArgumentException("Malformed board: bad length or station"),
+        this.verifier, "verify", huge);
+    BoardVerifier.writeInt(huge, 0, 20000);
+    t.checkException(new IllegalArgumentException("Malformed board: bad size or kind"),
+        this.verifier, "verify", huge);
+    t.checkExpect(this.verifier.topologies.size(), 0);
+  }
+
+  // tests that the topologies kept stay within their budget however many shapes
+  // come in, and that boards of the shapes left out are checked just the same
+  void testTopologyCache(Tester t) {
+    BoardVerifier verifier = new BoardVerifier();
+    int[] kinds = { GridTopology.SQUARE, GridTopology.TORUS, GridTopology.HEX };
+    boolean agrees = true;
+
+    verifier.budget = 40000;
+    for (int width = 1; width <= 40; width++) {
+      for (int kind : kinds) {
+        PackedBoard board = this.solved(new GridTopology(width, 3, kind), width);
+
+        agrees &= verifier.verify(BoardVerifier.encode(board));
+        board.rotate(width / 2);
+        board.propagate();
+        agrees &= verifier.verify(BoardVerifier.encode(board)) == board.allPowered();
+      }
+    }
+    t.checkExpect(agrees, true);
+    t.checkExpect(verifier.bytes <= verifier.budget, true);
+    t.checkRange(verifier.topologies.size(), 1, 120);
+    t.checkExpect(verifier.verified.sum(), 240L);
+
+    // an empty board of a shape left out is won
+    verifier.budget = 0;
+    byte[] empty = new byte[BoardVerifier.HEADER];
+    BoardVerifier.writeInt(empty, 0, 5);
+    t.checkExpect(verifier.verify(empty), true);
+  }
+}
@@ -0,0 +1,151 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import tester.Tester;
+
+//Scrambles whole arrays of link masks at once. Random rotation counts come a
+//long at a time, two bits per square cell, and every turn is a single lookup in a
+//table of rotated masks instead of one rotate call per quarter turn. Large
+//boards are cut into chunks that are scrambled in parallel, each with its own
+//random stream split off in chunk order, so a seed always gives the same board.
+class BulkScramble {
+  // cells per chunk of a parallel scramble
+  static final int CHUNK = 1 << 16;
+
+  // rotates every mask in links a random number of times, for cells with the
+  // given number of sides
+  static void scramble(byte[] links, int sides, Random rand) {
+    SplittableRandom root = new SplittableRandom(rand.nextLong());
+    int chunks = (links.length + CHUNK - 1) / CHUNK;
+    SplittableRandom[] streams = new SplittableRandom[chunks];
+
+    for (int c = 0; c < chunks; c++) {
+      streams[c] = root.split();
+    }
+    IntStream.range(0, chunks).parallel().forEach(c -> scrambleRange(links, sides,
+        c * CHUNK, Math.min(links.length, (c + 1) * CHUNK), streams[c]));
+  }
+
+  // rotates the masks from index start up to index end a random number of times
+  static void scrambleRange(byte[] links, int sides, int start, int end,
+      SplittableRandom rand) {
+    if (sides == 4) {
+      // 32 quarter turn counts in every random long
+      for (int base = start; base < end; base += 32) {
+        long bits = rand.nextLong();
+        int stop = Math.min(end, base + 32);
+
+        for (int i = base; i < stop; i++) {
+          links[i] = GridTopology.SQUARE_TURNS[(int) (bits & 3) << 4 | links[i]];
+          bits >>>= 2;
+        }
+      }
+    }
+    else {
+      // 21 draws of three bits in every random long, skipping draws of 6 and 7
+      long bits = 0;
+      int left = 0;
+
+      for (int i = start; i < end; i++) {
+        int turns = 7;
+
+        while (turns >= 6) {
+          if (left == 0) {
+            bits = rand.nextLong();
+            left = 21;
+          }
+          turns = (int) (bits & 7);
+          bits >>>= 3;
+          left--;
+        }
+        links[i] = GridTopology.HEX_TURNS[turns << 6 | links[i]];
+      }
+    }
+  }
+}
+
+//Times bulk scrambling against the per cell rotate loop
+class ScrambleBenchmark {
+
+  // runs the benchmark, optionally with the number of cells as an argument
+  public static void main(String[] args) {
+    int cells = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    byte[] links = new byte[cells];
+    Random rand = new Random(1);
+
+    for (int i = 0; i < cells; i++) {
+      links[i] = (byte) rand.nextInt(16);
+    }
+
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      BulkScramble.scramble(links, 4, rand);
+      double bulk = (System.nanoTime() - start) / 1e6;
+
+      start = System.nanoTime();
+      for (int i = 0; i < cells; i++) {
+        int rotations = rand.nextInt(4);
+        for (int k = 0; k < rotations; k++) {
+          links[i] = (byte) (((links[i] << 1) | (links[i] >>> 3)) & 0b1111);
+        }
+      }
+      double scalar = (System.nanoTime() - start) / 1e6;
+
+      System.out.printf("%d cells: bulk %.2f ms, per cell %.2f ms%n", cells, bulk, scalar);
+    }
+  }
+}
+
+//Examples and tests for bulk scrambling
+class ExamplesBulkScramble {
+
+  // tests that scrambling only turns cells, keeps the seed's board and reaches
+  // every number of turns
+  void testScramble(Tester t) {
+    for (int sides : new int[] { 4, 6 }) {
+      byte[] links = new byte[200_000];
+      for (int i = 0; i < links.length; i++) {
+        links[i] = (byte) (i % 3 == 0 ? 0b1 : 0b11);
+      }
+      byte[] again = links.clone();
+
+      BulkScramble.scramble(links, sides, new Random(4));
+      BulkScramble.scramble(again, sides, new Random(4));
+      t.checkExpect(links, again);
+
+      int[] seen = new int[1 << sides];
+      boolean turnedOnly = true;
+      for (int i = 0; i < links.length; i++) {
+        seen[links[i]]++;
+        turnedOnly &= Integer.bitCount(links[i]) == (i % 3 == 0 ? 1 : 2);
+      }
+      t.checkExpect(turnedOnly, true);
+      // a single wire ends up pointing through each side about as often
+      for (int side = 0; side < sides; side++) {
+        t.checkRange(seen[1 << side] * sides, 66_667 * 9 / 10, 66_667 * 11 / 10);
+      }
+    }
+  }
+
+  // tests bulk scrambling a packed board and the game's scramble
+  void testBoards(Tester t) {
+    PackedBoard board = new PackedBoard(new GridTopology(30, 30, GridTopology.HEX));
+    board.generate(new WilsonGenerator(), new Random(2));
+
+    byte[] before = board.links.clone();
+    board.bulkScramble(new Random(3));
+
+    boolean turnedOnly = true;
+    for (int cell = 0; cell < before.length; cell++) {
+      turnedOnly &= Integer.bitCount(before[cell]) == Integer.bitCount(board.links[cell]);
+    }
+    t.checkExpect(turnedOnly, true);
+
+    GamePiece piece = new GamePiece(0, 0, false, true, true, false, false);
+    piece.rotate(3);
+    t.checkExpect(piece, new GamePiece(0, 0, true, false, true, false, false));
+    piece.rotate(0);
+    t.checkExpect(piece, new GamePiece(0, 0, true, false, true, false, false));
+  }
+}
@@ -0,0 +1,425 @@
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents a square grid board in a form shared by every board that is the same
+//up to turning the whole board or flipping it over: of the eight ways to turn and
+//flip it, the one that comes first by width, height and then wires in cell order.
+//Two puzzles are the same if their solved boards have equal canonical forms.
+class CanonicalForm {
+  int width;
+  int height;
+  byte[] links;
+
+  // a 128 bit hash of the form, in two halves
+  long hashHigh;
+  long hashLow;
+
+  CanonicalForm(int width, int height, byte[] links) {
+    this.width = width;
+    this.height = height;
+    this.links = links;
+    this.hash();
+  }
+
+  // the canonical form of the given wires on a four sided grid
+  static CanonicalForm of(GridTopology topology, byte[] links) {
+    if (topology.sides != 4) {
+      throw new IllegalArgumentException("Canonical forms only cover four sided grids");
+    }
+    if (topology.layout != CellLayout.COLUMN_MAJOR) {
+      // the symmetries are worked out in column-major order
+      byte[] columns = new byte[topology.cells];
+
+      for (int cell = 0; cell < topology.cells; cell++) {
+        columns[topology.col(cell) * topology.height + topology.row(cell)] = links[cell];
+      }
+      links = columns;
+    }
+    byte[] best = null;
+    byte[] next = new byte[topology.cells];
+    int bestWidth = 0;
+
+    for (int symmetry = 0; symmetry < 8; symmetry++) {
+      int width = transform(topology.width, topology.height, links, symmetry, next);
+
+      if (best == null || compare(width, next, bestWidth, best) < 0) {
+        byte[] swap = best == null ? new byte[topology.cells] : best;
+        best = next;
+        next = swap;
+        bestWidth = width;
+      }
+    }
+    return new CanonicalForm(bestWidth, bestWidth == 0 ? 0 : topology.cells / bestWidth, best);
+  }
+
+  // writes the given board of the given size into out, flipped left to right if
+  // symmetry is 4 or more and then turned clockwise symmetry % 4 times, returning
+  // the width it ends up with
+  static int transform(int width, int height, byte[] links, int symmetry, byte[] out) {
+    boolean flip = symmetry >= 4;
+    int turns = symmetry % 4;
+    int outWidth = turns % 2 == 0 ? width : height;
+    int outHeight = turns % 2 == 0 ? height : width;
+
+    for (int col = 0; col < width; col++) {
+      for (int row = 0; row < height; row++) {
+        int mask = links[col * height + row];
+        int c = flip ? width - 1 - col : col;
+        int r = row;
+
+        if (flip) {
+          // right and left trade places, top and bottom stay
+          mask = mask & 0b0101 | (mask & 0b0010) << 2 | (mask & 0b1000) >>> 2;
+        }
+        mask = GridTopology.SQUARE_TURNS[turns << 4 | mask];
+
+        int w = width;
+        int h = height;
+        for (int k = 0; k < turns; k++) {
+          // a clockwise turn takes (c, r) on a w by h board to (h - 1 - r, c) on an
+          // h by w board
+          int turned = h - 1 - r;
+          r = c;
+          c = turned;
+          int swap = w;
+          w = h;
+          h = swap;
+        }
+        out[c * outHeight + r] = (byte) mask;
+      }
+    }
+    return outWidth;
+  }
+
+  // orders boards by width, and then by wires in cell order
+  static int compare(int width, byte[] links, int otherWidth, byte[] other) {
+    if (width != otherWidth) {
+      return Integer.compare(width, otherWidth);
+    }
+    for (int i = 0; i < links.length; i++) {
+      if (links[i] != other[i]) {
+        return Integer.compare(links[i], other[i]);
+      }
+    }
+    return 0;
+  }
+
+  // hashes the size and wires, sixteen four bit cells to a word, into two
+  // independently mixed 64 bit halves
+  void hash() {
+    long h1 = this.width * 0x9E3779B97F4A7C15L;
+    long h2 = this.height * 0xC2B2AE3D27D4EB4FL;
+
+    for (int base = 0; base < this.links.length; base += 16) {
+      long word = 0;
+
+      for (int i = base; i < Math.min(base + 16, this.links.length); i++) {
+        word |= (long) (this.links[i] & 0xF) << ((i - base) * 4);
+      }
+      h1 ^= mix(word * 0x87C37B91114253D5L);
+      h1 = Long.rotateLeft(h1, 27) * 5 + 0x52DCE729;
+      h2 ^= mix(word * 0x4CF5AD432745937FL);
+      h2 = Long.rotateLeft(h2, 31) * 5 + 0x38495AB5;
+      h1 += h2;
+      h2 += h1;
+    }
+    h1 ^= this.links.length;
+    h2 ^= this.links.length;
+    h1 += h2;
+    h2 += h1;
+    this.hashHigh = mix(h1);
+    this.hashLow = mix(h2);
+  }
+
+  // scrambles the bits of x so every bit affects every other
+  static long mix(long x) {
+    x ^= x >>> 33;
+    x *= 0xFF51AFD7ED558CCDL;
+    x ^= x >>> 33;
+    x *= 0xC4CEB9FE1A85EC53L;
+    x ^= x >>> 33;
+    return x;
+  }
+}
+
+//Represents a set of 128 bit puzzle hashes in one flat array of longs, each hash
+//taking two neighboring slots found by linear probing, so lookups touch a cache
+//line or two and allocate nothing. The all zero hash marks an empty slot and is
+//stored as 0, 1 instead.
+class DedupIndex {
+  long[] slots; // high and low halves of each hash, in pairs
+  int size;
+  int mask; // one less than the number of pairs, a power of two
+
+  DedupIndex(int expected) {
+    int pairs = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+
+    this.slots = new long[pairs * 2];
+    this.mask = pairs - 1;
+  }
+
+  // adds a hash, determining if it was new
+  boolean add(long high, long low) {
+    if ((high | low) == 0) {
+      low = 1;
+    }
+    if ((this.size + 1) * 4 > (this.mask + 1) * 3) {
+      this.grow();
+    }
+    int i = this.find(high, low);
+
+    if ((this.slots[i] | this.slots[i + 1]) != 0) {
+      return false;
+    }
+    this.slots[i] = high;
+    this.slots[i + 1] = low;
+    this.size++;
+    return true;
+  }
+
+  // determines if the index holds the given hash
+  boolean contains(long high, long low) {
+    if ((high | low) == 0) {
+      low = 1;
+    }
+    int i = this.find(high, low);
+    return (this.slots[i] | this.slots[i + 1]) != 0;
+  }
+
+  // adds the canonical form of the given wires, determining if it was new
+  boolean add(GridTopology topology, byte[] links) {
+    CanonicalForm form = CanonicalForm.of(topology, links);
+
+    return this.add(form.hashHigh, form.hashLow);
+  }
+
+  // the slot holding the given hash, or the empty slot where it would go
+  int find(long high, long low) {
+    int pair = (int) (low ^ low >>> 32) & this.mask;
+
+    while (true) {
+      int i = pair * 2;
+      long h = this.slots[i];
+      long l = this.slots[i + 1];
+
+      if ((h | l) == 0 || (h == high && l == low)) {
+        return i;
+      }
+      pair = (pair + 1) & this.mask;
+    }
+  }
+
+  // doubles the number of slots and puts every hash back
+  void grow() {
+    long[] old = this.slots;
+
+    this.slots = new long[old.length * 2];
+    this.mask = this.slots.length / 2 - 1;
+    for (int i = 0; i < old.length; i += 2) {
+      if ((old[i] | old[i + 1]) != 0) {
+        int j = this.find(old[i], old[i + 1]);
+        this.slots[j] = old[i];
+        this.slots[j + 1] = old[i + 1];
+      }
+    }
+  }
+
+  // generates a puzzle whose solution is not in the index yet and adds it, or
+  // gives null after the given number of tries all came out as duplicates
+  PackedBoard generateUnique(GridTopology topology, ITreeGenerator generator, Random rand,
+      int tries) {
+    for (int attempt = 0; attempt < tries; attempt++) {
+      PackedBoard board = new PackedBoard(topology);
+      int[] tree = generator.spanningTree(topology, rand);
+
+      for (int i = 0; i < topology.cells - 1; i++) {
+        board.connect(tree[i]);
+      }
+      if (this.add(topology, board.links)) {
+        board.scramble(rand);
+        board.propagate();
+        return board;
+      }
+    }
+    return null;
+  }
+}
+
+//Times canonical forms and index lookups
+class DedupBenchmark {
+
+  // runs the benchmark, optionally with the number of hashes to index
+  public static void main(String[] args) {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    Random rand = new Random(1);
+    long[] hashes = new long[count * 2];
+
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = rand.nextLong();
+    }
+    DedupIndex index = new DedupIndex(count);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < hashes.length; i += 2) {
+      index.add(hashes[i], hashes[i + 1]);
+    }
+    double adds = (System.nanoTime() - start) / 1e9;
+
+    int found = 0;
+    start = System.nanoTime();
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < hashes.length; i += 2) {
+        if (index.contains(hashes[i], hashes[i + 1] ^ (round & 1))) {
+          found++;
+        }
+      }
+    }
+    double lookups = (System.nanoTime() - start) / 1e9;
+
+    GridTopology grid = new GridTopology(16, 16, GridTopology.SQUARE);
+    PackedBoard board = new PackedBoard(grid);
+    board.generate(new KruskalGenerator(), rand);
+    start = System.nanoTime();
+    for (int i = 0; i < 100_000; i++) {
+      CanonicalForm.of(grid, board.links);
+    }
+    double forms = (System.nanoTime() - start) / 1e9;
+
+    System.out.printf("adds: %.1f M/s, lookups: %.1f M/s (%d found), 16 x 16 canonical "
+        + "forms: %.0f K/s%n", count / adds / 1e6, 5.0 * count / lookups / 1e6, found,
+        100 / forms);
+  }
+}
+
+//Examples and tests for canonical forms and the dedup index
+class ExamplesCanonicalForm {
+
+  // makes the solved wires of a board from the given seed
+  byte[] solved(GridTopology topology, int seed) {
+    PackedBoard board = new PackedBoard(topology);
+    int[] tree = new WilsonGenerator().spanningTree(topology, new Random(seed));
+
+    for (int i = 0; i < topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    return board.links;
+  }
+
+  // tests turning and flipping small boards by hand
+  void testTransform(Tester t) {
+    // a wire from (0, 0) right to (1, 0), turned clockwise, runs from (0, 0) down
+    // to (0, 1)
+    byte[] out = new byte[2];
+    t.checkExpect(CanonicalForm.transform(2, 1, new byte[] { 0b0010, 0b1000 }, 1, out), 1);
+    t.checkExpect(out, new byte[] { 0b0100, 0b0001 });
+
+    // an elbow from the top to the right in the top left corner of a 2 by 2 board,
+    // flipped, goes from the top to the left in the top right corner
+    byte[] square = new byte[4];
+    CanonicalForm.transform(2, 2, new byte[] { 0b0011, 0, 0, 0 }, 4, square);
+    t.checkExpect(square, new byte[] { 0, 0, 0b1001, 0 });
+
+    CanonicalForm.transform(2, 2, new byte[] { 0b0011, 0, 0, 0 }, 2, square);
+    t.checkExpect(square, new byte[] { 0, 0, 0, 0b1100 });
+  }
+
+  // tests that every turn and flip of a board has the same form and hash
+  void testInvariance(Tester t) {
+    GridTopology wide = new GridTopology(5, 3, GridTopology.SQUARE);
+    GridTopology tall = new GridTopology(3, 5, GridTopology.SQUARE);
+    byte[] links = this.solved(wide, 4);
+    CanonicalForm form = CanonicalForm.of(wide, links);
+
+    for (int symmetry = 0; symmetry < 8; symmetry++) {
+      byte[] moved = new byte[links.length];
+      int width = CanonicalForm.transform(5, 3, links, symmetry, moved);
+      CanonicalForm other = CanonicalForm.of(width == 5 ? wide : tall, moved);
+
+      t.checkExpect(other.links, form.links);
+      t.checkExpect(other.hashHigh, form.hashHigh);
+      t.checkExpect(other.hashLow, form.hashLow);
+    }
+    t.checkExpect(form.width, 3);
+    t.checkExpect(form.height, 5);
+
+    // the same board numbered row-major has the same form
+    GridTopology rows = new GridTopology(5, 3, GridTopology.SQUARE, CellLayout.ROW_MAJOR);
+    byte[] byRow = new byte[links.length];
+    for (int cell = 0; cell < links.length; cell++) {
+      byRow[rows.cell(wide.col(cell), wide.row(cell))] = links[cell];
+    }
+    CanonicalForm rowForm = CanonicalForm.of(rows, byRow);
+    t.checkExpect(rowForm.links, form.links);
+    t.checkExpect(rowForm.hashHigh, form.hashHigh);
+
+    CanonicalForm different = CanonicalForm.of(wide, this.solved(wide, 5));
+    t.checkExpect(different.hashHigh == form.hashHigh && different.hashLow == form.hashLow,
+        false);
+  }
+
+  // tests that hexagonal grids have no canonical form
+  void testHexGrid(Tester t) {
+    GridTopology hex = new GridTopology(3, 3, GridTopology.HEX);
+
+    t.checkException(new IllegalArgumentException("Canonical forms only cover four sided grids"),
+        new ExamplesCanonicalForm(), "formOf", hex);
+  }
+
+  // the canonical form of an empty board, for testing the exception
+  CanonicalForm formOf(GridTopology topology) {
+    return CanonicalForm.of(topology, new byte[topology.cells]);
+  }
+
+  // tests adding and finding hashes as the index grows
+  void testIndex(Tester t) {
+    DedupIndex index = new DedupIndex(4);
+    Random rand = new Random(2);
+    long[] hashes = new long[20_000];
+    boolean added = true;
+
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = rand.nextLong();
+    }
+    for (int i = 0; i < hashes.length; i += 2) {
+      added &= index.add(hashes[i], hashes[i + 1]);
+    }
+    t.checkExpect(added, true);
+    t.checkExpect(index.size, 10_000);
+
+    boolean again = false;
+    boolean found = true;
+    for (int i = 0; i < hashes.length; i += 2) {
+      again |= index.add(hashes[i], hashes[i + 1]);
+      found &= index.contains(hashes[i], hashes[i + 1]);
+    }
+    t.checkExpect(again, false);
+    t.checkExpect(found, true);
+    t.checkExpect(index.contains(1, 2), false);
+
+    t.checkExpect(index.add(0, 0), true);
+    t.checkExpect(index.contains(0, 0), true);
+  }
+
+  // tests rejecting duplicates while generating
+  void testGenerateUnique(Tester t) {
+    // every spanning tree of a 2 by 2 board leaves out one side of the square, so
+    // they are all turns of each other
+    GridTopology tiny = new GridTopology(2, 2, GridTopology.SQUARE);
+    DedupIndex index = new DedupIndex(16);
+    Random rand = new Random(0);
+
+    t.checkExpect(index.generateUnique(tiny, new KruskalGenerator(), rand, 50) == null, false);
+    t.checkExpect(index.generateUnique(tiny, new KruskalGenerator(), rand, 50), null);
+
+    GridTopology grid = new GridTopology(6, 6, GridTopology.SQUARE);
+    int made = 0;
+    for (int i = 0; i < 100; i++) {
+      if (index.generateUnique(grid, new KruskalGenerator(), rand, 1) != null) {
+        made++;
+      }
+    }
+    t.checkExpect(made, 100);
+    t.checkExpect(index.size, 101);
+  }
+}
@@ -0,0 +1,266 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents the orders the cells of a GridTopology can be numbered in, which is
+//also the order a PackedBoard stores them in. Column-major is the order of a
+//LightEmAll game. Tiled numbers the board 8 by 8 tiles at a time, so the wires of
+//a tile share one 64 byte cache line, and Morton follows the Z-order curve, so
+//cells near each other on the board are near each other in memory at every
+//scale. Either keeps a breadth first pass from jumping a whole column between
+//neighbors.
+class CellLayout {
+  static final int COLUMN_MAJOR = 0;
+  static final int ROW_MAJOR = 1;
+  static final int TILED = 2;
+  static final int MORTON = 3;
+
+  static final String[] NAMES = { "column", "row", "tiled", "morton" };
+
+  // the cells on each side of a tile
+  static final int TILE = 8;
+
+  // the cell of each column and row in the given layout, as
+  // order[col * height + row]
+  static int[] order(int width, int height, int layout) {
+    int[] order = new int[width * height];
+    int next = 0;
+
+    if (layout == COLUMN_MAJOR) {
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+    }
+    else if (layout == ROW_MAJOR) {
+      for (int row = 0; row < height; row++) {
+        for (int col = 0; col < width; col++) {
+          order[col * height + row] = next++;
+        }
+      }
+    }
+    else if (layout == TILED) {
+      // tiles in column-major order, and the cells of each tile the same way
+      for (int tileCol = 0; tileCol < width; tileCol += TILE) {
+        for (int tileRow = 0; tileRow < height; tileRow += TILE) {
+          for (int col = tileCol; col < Math.min(tileCol + TILE, width); col++) {
+            for (int row = tileRow; row < Math.min(tileRow + TILE, height); row++) {
+              order[col * height + row] = next++;
+            }
+          }
+        }
+      }
+    }
+    else if (layout == MORTON) {
+      // sorting the Z-order codes of the cells numbers them densely along the
+      // curve, even when the sides are not powers of two
+      long[] codes = new long[order.length];
+
+      for (int col = 0; col < width; col++) {
+        for (int row = 0; row < height; row++) {
+          codes[col * height + row] = morton(col, row);
+        }
+      }
+      Arrays.sort(codes);
+      for (long code : codes) {
+        order[unspread(code >>> 1) * height + unspread(code)] = next++;
+      }
+    }
+    else {
+      throw new IllegalArgumentException("Unknown cell layout: " + layout);
+    }
+    return order;
+  }
+
+  // the Z-order code of a column and row: the bits of the column in the odd
+  // places and the bits of the row in the even places
+  static long morton(int col, int row) {
+    return spread(col) << 1 | spread(row);
+  }
+
+  // spreads the bits of a non-negative int out to every other bit of a long
+  static long spread(int value) {
+    long bits = value & 0xFFFFFFFFL;
+
+    bits = (bits | bits << 16) & 0x0000FFFF0000FFFFL;
+    bits = (bits | bits << 8) & 0x00FF00FF00FF00FFL;
+    bits = (bits | bits << 4) & 0x0F0F0F0F0F0F0F0FL;
+    bits = (bits | bits << 2) & 0x3333333333333333L;
+    bits = (bits | bits << 1) & 0x5555555555555555L;
+    return bits;
+  }
+
+  // gathers every other bit of a long, starting with the lowest, back into an int
+  static int unspread(long code) {
+    long bits = code & 0x5555555555555555L;
+
+    bits = (bits | bits >>> 1) & 0x3333333333333333L;
+    bits = (bits | bits >>> 2) & 0x0F0F0F0F0F0F0F0FL;
+    bits = (bits | bits >>> 4) & 0x00FF00FF00FF00FFL;
+    bits = (bits | bits >>> 8) & 0x0000FFFF0000FFFFL;
+    bits = (bits | bits >>> 16) & 0x00000000FFFFFFFFL;
+    return (int) bits;
+  }
+}
+
+//Times generating, powering and sweeping large boards in each cell layout. Run it
+//with a single layout under perf stat -e cache-references,cache-misses to compare
+//their cache miss rates.
+class LayoutBenchmark {
+
+  // runs the benchmark, optionally given the side of the board and the names of
+  // the layouts to try
+  public static void main(String[] args) {
+    int side = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+    int[] layouts = { CellLayout.COLUMN_MAJOR, CellLayout.ROW_MAJOR, CellLayout.TILED,
+        CellLayout.MORTON };
+    if (args.length > 1) {
+      layouts = new int[args.length - 1];
+      for (int i = 1; i < args.length; i++) {
+        layouts[i - 1] = Arrays.asList(CellLayout.NAMES).indexOf(args[i]);
+      }
+    }
+
+    System.out.printf("%-8s %8s %12s %16s %16s%n", "layout", "cells", "generate ms",
+        "propagate ns/cell", "sweep ns/cell");
+    for (int layout : layouts) {
+      GridTopology topology = new GridTopology(side, side, GridTopology.SQUARE, layout);
+      PackedBoard board = new PackedBoard(topology);
+
+      long start = System.nanoTime();
+      int[] tree = new KruskalGenerator().spanningTree(topology, new Random(1));
+      for (int i = 0; i < topology.cells - 1; i++) {
+        board.connect(tree[i]);
+      }
+      double generate = (System.nanoTime() - start) / 1e6;
+
+      // a solved board, so every pass reaches every cell
+      int rounds = 10;
+      board.propagate();
+      start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) {
+        board.propagate();
+      }
+      double propagate = (double) (System.nanoTime() - start) / rounds / topology.cells;
+
+      // visits every cell in storage order and reads the wires of its neighbors
+      long sink = 0;
+      start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) {
+        for (int cell = 0; cell < topology.cells; cell++) {
+          for (int n = topology.start[cell]; n < topology.start[cell + 1]; n++) {
+            sink += board.links[topology.neighbors[n]];
+          }
+        }
+      }
+      double sweep = (double) (System.nanoTime() - start) / rounds / topology.cells;
+
+      System.out.printf("%-8s %8d %12.1f %16.2f %16.2f%s%n", CellLayout.NAMES[layout],
+          topology.cells, generate, propagate, sweep, sink == 42 ? " " : "");
+    }
+  }
+}
+
+//Examples and tests for cell layouts
+class ExamplesCellLayout {
+
+  // tests the orders of a small board in each layout
+  void testOrder(Tester t) {
+    // a 3 by 2 board, as order[col * 2 + row]
+    t.checkExpect(CellLayout.order(3, 2, CellLayout.COLUMN_MAJOR),
+        new int[] { 0, 1, 2, 3, 4, 5 });
+    t.checkExpect(CellLayout.order(3, 2, CellLayout.ROW_MAJOR), new int[] { 0, 3, 1, 4, 2, 5 });
+    t.checkExpect(CellLayout.order(3, 2, CellLayout.TILED), new int[] { 0, 1, 2, 3, 4, 5 });
+    // Z-order over a 2 by 2 block goes (0,0), (0,1), (1,0), (1,1), then on to
+    // column 2
+    t.checkExpect(CellLayout.order(3, 2, CellLayout.MORTON), new int[] { 0, 1, 2, 3, 4, 5 });
+    t.checkExpect(CellLayout.order(4, 4, CellLayout.MORTON), new int[] { 0, 1, 4, 5, 2, 3, 6,
+        7, 8, 9, 12, 13, 10, 11, 14, 15 });
+
+    int[] tiled = CellLayout.order(10, 9, CellLayout.TILED);
+    t.checkExpect(tiled[7], 7);
+    t.checkExpect(tiled[8], 64);
+    t.checkExpect(tiled[9], 8);
+    t.checkExpect(tiled[8 * 9], 72);
+
+    t.checkExpect(CellLayout.unspread(CellLayout.morton(12345, 678) >>> 1), 12345);
+    t.checkExpect(CellLayout.unspread(CellLayout.morton(Integer.MAX_VALUE, 0) >>> 1),
+        Integer.MAX_VALUE);
+    t.checkException(new IllegalArgumentException("Unknown cell layout: 9"), new CellLayout(),
+        "order", 2, 2, 9);
+  }
+
+  // tests that every layout numbers each cell once
+  void testPermutation(Tester t) {
+    boolean permutation = true;
+
+    for (int layout = 0; layout < CellLayout.NAMES.length; layout++) {
+      int[] order = CellLayout.order(13, 21, layout);
+      boolean[] seen = new boolean[order.length];
+
+      for (int cell : order) {
+        permutation &= !seen[cell];
+        seen[cell] = true;
+      }
+    }
+    t.checkExpect(permutation, true);
+  }
+
+  // tests that topologies in other layouts have the same neighbors, numbered
+  // differently, and that boards on them power the same cells
+  void testTopology(Tester t) {
+    int[] kinds = { GridTopology.SQUARE, GridTopology.TORUS, GridTopology.HEX };
+    boolean same = true;
+
+    for (int kind : kinds) {
+      GridTopology columns = new GridTopology(11, 9, kind);
+
+      for (int layout = 1; layout < CellLayout.NAMES.length; layout++) {
+        GridTopology other = new GridTopology(11, 9, kind, layout);
+        PackedBoard a = new PackedBoard(columns);
+        PackedBoard b = new PackedBoard(other);
+        Random rand = new Random(layout);
+
+        for (int cell = 0; cell < columns.cells; cell++) {
+          int col = columns.col(cell);
+          int row = columns.row(cell);
+          int moved = other.cell(col, row);
+
+          same &= other.col(moved) == col && other.row(moved) == row;
+          for (int side = 0; side < columns.sides; side++) {
+            int to = columns.neighbor(cell, side);
+            same &= to < 0 ? other.neighbor(moved, side) < 0
+                : other.neighbor(moved, side) == other.cell(columns.col(to), columns.row(to));
+          }
+          a.links[cell] = (byte) rand.nextInt(1 << columns.sides);
+          b.links[moved] = a.links[cell];
+        }
+        a.station = columns.cell(5, 4);
+        b.station = other.cell(5, 4);
+        a.propagate();
+        b.propagate();
+        for (int cell = 0; cell < columns.cells; cell++) {
+          same &= a.powered[cell] == b.powered[other.cell(columns.col(cell), columns.row(cell))];
+        }
+        same &= a.poweredCount() == b.poweredCount() && columns.edges == other.edges;
+      }
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(new GridTopology(4, 4, GridTopology.SQUARE, CellLayout.MORTON)
+        .sameShape(new GridTopology(4, 4, GridTopology.SQUARE)), false);
+  }
+
+  // tests that a board generated in Morton order can be won
+  void testGenerate(Tester t) {
+    GridTopology morton = new GridTopology(20, 12, GridTopology.SQUARE, CellLayout.MORTON);
+    PackedBoard board = new PackedBoard(morton);
+    int[] tree = new PrimGenerator().spanningTree(morton, new Random(4));
+
+    for (int i = 0; i < morton.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    board.propagate();
+    t.checkExpect(board.allPowered(), true);
+    t.checkExpect(board.station, 0);
+  }
+}
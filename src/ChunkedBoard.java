@@ -0,0 +1,528 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents one square chunk of an endless board that is in memory: the wires,
+//the turns the player made and the power of its cells, numbered in column-major
+//order within the chunk
+class BoardChunk {
+  int chunkCol;
+  int chunkRow;
+  byte[] links;
+  byte[] turns; // the clockwise turns made to each cell since it was generated, mod 4
+  boolean[] powered;
+  boolean turned; // whether any cell has been turned
+  int poweredCells;
+
+  BoardChunk(int chunkCol, int chunkRow, int cells) {
+    this.chunkCol = chunkCol;
+    this.chunkRow = chunkRow;
+    this.links = new byte[cells];
+    this.turns = new byte[cells];
+    this.powered = new boolean[cells];
+  }
+}
+
+//Represents an endless board of square cells, split into chunks of size by size
+//cells that are only generated when something looks at them. Each chunk lays its
+//wires along a spanning tree and scrambles them with a Random seeded from the
+//board's seed and the chunk's coordinates, so it comes out the same whenever and
+//in whatever order it is made. Every border between two chunks also gets exactly
+//one wire across it, at a place chosen from the seed and the border, so the
+//solved board is connected everywhere. Chunks without power are dropped least
+//recently used first once they take more than a budget of bytes; the turns made
+//to a dropped chunk are kept at two bits a cell and made again when it comes back.
+//Chunks holding power are kept whatever the budget, since their power could not
+//be made again without another pass. Power spreads from the station only into
+//chunks a powered wire leads into, and is worked out again the next time it is
+//asked for after a turn.
+class ChunkedBoard {
+  int size; // the cells on each side of a chunk
+  long seed;
+  long budget; // the most bytes of chunks to keep, unless they hold power
+  long bytes; // the bytes of the chunks kept now
+
+  // the shape of a chunk, shared by every chunk, and the generator laying them out
+  GridTopology chunkTopology;
+  KruskalGenerator generator;
+
+  // the chunks in memory by key, in order of use
+  LinkedHashMap<Long, BoardChunk> chunks;
+
+  // the turns made to dropped chunks, by key, four cells to a byte
+  HashMap<Long, byte[]> savedTurns;
+
+  int stationCol;
+  int stationRow;
+
+  boolean stale; // whether power has to be worked out again
+  boolean propagating; // whether chunks must be kept until a pass is done
+  long poweredCells;
+
+  // breadth first worklist of propagate, as packed columns and rows
+  long[] queue;
+
+  long generated;
+  long evictions;
+
+  ChunkedBoard(long seed, int size, long budget) {
+    if (size < 2) {
+      throw new IllegalArgumentException("A chunk needs at least two cells on each side");
+    }
+    if (budget < 0) {
+      throw new IllegalArgumentException("A chunked board cannot have a negative budget");
+    }
+    this.size = size;
+    this.seed = seed;
+    this.budget = budget;
+    this.chunkTopology = new GridTopology(size, size, GridTopology.SQUARE);
+    this.generator = new KruskalGenerator();
+    this.chunks = new LinkedHashMap<Long, BoardChunk>(16, 0.75f, true);
+    this.savedTurns = new HashMap<Long, byte[]>();
+    this.stationCol = 0;
+    this.stationRow = 0;
+    this.stale = true;
+    this.queue = new long[size * size];
+  }
+
+  // the key of the chunk with the given coordinates
+  static long key(int chunkCol, int chunkRow) {
+    return (long) chunkCol << 32 | (chunkRow & 0xFFFFFFFFL);
+  }
+
+  // a well mixed number drawn from the seed, a chunk and what it is for
+  long hash(int chunkCol, int chunkRow, int salt) {
+    return CanonicalForm.mix(this.seed ^ CanonicalForm.mix(key(chunkCol, chunkRow) + salt
+        * 0x9E3779B97F4A7C15L));
+  }
+
+  // the row within its chunks of the wire across the right border of a chunk
+  int rightBorderRow(int chunkCol, int chunkRow) {
+    return (int) Math.floorMod(this.hash(chunkCol, chunkRow, 1), (long) this.size);
+  }
+
+  // the column within its chunks of the wire across the bottom border of a chunk
+  int bottomBorderCol(int chunkCol, int chunkRow) {
+    return (int) Math.floorMod(this.hash(chunkCol, chunkRow, 2), (long) this.size);
+  }
+
+  // the bytes a chunk takes up on the heap: its three arrays and the objects
+  // around them
+  long chunkBytes() {
+    return 3L * this.size * this.size + 96;
+  }
+
+  // lays the solved wires of a chunk: a spanning tree within it, and the wires
+  // across its four borders
+  void lay(BoardChunk chunk) {
+    GridTopology t = this.chunkTopology;
+    int col = chunk.chunkCol;
+    int row = chunk.chunkRow;
+    int[] tree = this.generator.spanningTree(t, new Random(this.hash(col, row, 0)));
+
+    Arrays.fill(chunk.links, (byte) 0);
+    for (int i = 0; i < t.cells - 1; i++) {
+      int side = t.edgeSide[tree[i]];
+
+      chunk.links[t.edgeFrom[tree[i]]] |= 1 << side;
+      chunk.links[t.edgeTo[tree[i]]] |= 1 << t.opposite(side);
+    }
+    chunk.links[t.cell(this.size - 1, this.rightBorderRow(col, row))] |= 1 << IUtils.RIGHT;
+    chunk.links[t.cell(0, this.rightBorderRow(col - 1, row))] |= 1 << IUtils.LEFT;
+    chunk.links[t.cell(this.bottomBorderCol(col, row), this.size - 1)] |= 1 << IUtils.BOTTOM;
+    chunk.links[t.cell(this.bottomBorderCol(col, row - 1), 0)] |= 1 << IUtils.TOP;
+  }
+
+  // the chunk with the given coordinates, generated and scrambled if it is not in
+  // memory, with any turns made to it before it was dropped made again
+  BoardChunk chunk(int chunkCol, int chunkRow) {
+    long key = key(chunkCol, chunkRow);
+    BoardChunk chunk = this.chunks.get(key);
+
+    if (chunk != null) {
+      return chunk;
+    }
+    chunk = new BoardChunk(chunkCol, chunkRow, this.chunkTopology.cells);
+    this.lay(chunk);
+
+    Random scramble = new Random(this.hash(chunkCol, chunkRow, 3));
+    byte[] saved = this.savedTurns.remove(key);
+
+    for (int cell = 0; cell < chunk.links.length; cell++) {
+      int turns = scramble.nextInt(4);
+
+      if (saved != null) {
+        chunk.turns[cell] = (byte) ((saved[cell >>> 2] >>> ((cell & 3) << 1)) & 3);
+        chunk.turned = true;
+      }
+      chunk.links[cell] = GridTopology.SQUARE_TURNS[(turns + chunk.turns[cell]) % 4 << 4
+          | chunk.links[cell]];
+    }
+    this.chunks.put(key, chunk);
+    this.bytes += this.chunkBytes();
+    this.generated++;
+    // a chunk that was not in memory has no power, as those with power are kept
+    if (!this.propagating) {
+      this.evict();
+    }
+    return chunk;
+  }
+
+  // the chunk holding the given cell
+  BoardChunk chunkAt(int col, int row) {
+    return this.chunk(Math.floorDiv(col, this.size), Math.floorDiv(row, this.size));
+  }
+
+  // the index within its chunk of the given cell
+  int local(int col, int row) {
+    return Math.floorMod(col, this.size) * this.size + Math.floorMod(row, this.size);
+  }
+
+  // the wires of the given cell
+  int links(int col, int row) {
+    return this.chunkAt(col, row).links[this.local(col, row)];
+  }
+
+  // rotates the given cell clockwise once
+  void rotate(int col, int row) {
+    BoardChunk chunk = this.chunkAt(col, row);
+    int cell = this.local(col, row);
+
+    chunk.links[cell] = GridTopology.SQUARE_TURNS[1 << 4 | chunk.links[cell]];
+    chunk.turns[cell] = (byte) ((chunk.turns[cell] + 1) & 3);
+    chunk.turned = true;
+    this.stale = true;
+    this.evict();
+  }
+
+  // determines if the given cell is powered, working power out first if a turn
+  // may have changed it
+  boolean powered(int col, int row) {
+    if (this.stale) {
+      this.propagate();
+    }
+    return this.chunkAt(col, row).powered[this.local(col, row)];
+  }
+
+  // the number of powered cells
+  long poweredCount() {
+    if (this.stale) {
+      this.propagate();
+    }
+    return this.poweredCells;
+  }
+
+  // moves the station through the given side onto a powered neighbor it is wired
+  // to; determines if it moved
+  boolean moveStation(int side) {
+    int col = this.stationCol + GridTopology.SQUARE_COLS[side];
+    int row = this.stationRow + GridTopology.SQUARE_ROWS[side];
+
+    if ((this.links(this.stationCol, this.stationRow) & (1 << side)) != 0
+        && this.powered(col, row)) {
+      this.stationCol = col;
+      this.stationRow = row;
+      return true;
+    }
+    return false;
+  }
+
+  // works out the power of every cell with a breadth first pass from the station
+  // that only brings in the chunks powered wires lead into. Chunks are only
+  // dropped once the pass is done, so it may go over the budget while it runs.
+  void propagate() {
+    int head = 0;
+    int tail = 0;
+
+    this.stale = false;
+    this.propagating = true;
+    for (BoardChunk chunk : this.chunks.values()) {
+      if (chunk.poweredCells > 0) {
+        Arrays.fill(chunk.powered, false);
+        chunk.poweredCells = 0;
+      }
+    }
+    this.power(this.chunkAt(this.stationCol, this.stationRow), this.stationCol,
+        this.stationRow);
+    this.queue[tail++] = key(this.stationCol, this.stationRow);
+
+    while (head < tail) {
+      long at = this.queue[head++];
+      int col = (int) (at >> 32);
+      int row = (int) at;
+      int links = this.links(col, row);
+
+      for (int side = 0; side < 4; side++) {
+        int toCol = col + GridTopology.SQUARE_COLS[side];
+        int toRow = row + GridTopology.SQUARE_ROWS[side];
+
+        if ((links & (1 << side)) == 0) {
+          continue;
+        }
+        BoardChunk to = this.chunkAt(toCol, toRow);
+        int cell = this.local(toCol, toRow);
+
+        if (!to.powered[cell] && (to.links[cell] & (1 << ((side + 2) & 3))) != 0) {
+          this.power(to, toCol, toRow);
+          if (tail == this.queue.length) {
+            this.queue = Arrays.copyOf(this.queue, tail * 2);
+          }
+          this.queue[tail++] = key(toCol, toRow);
+        }
+      }
+    }
+    this.poweredCells = tail;
+    this.propagating = false;
+    this.evict();
+  }
+
+  // powers the given cell of the given chunk
+  void power(BoardChunk chunk, int col, int row) {
+    chunk.powered[this.local(col, row)] = true;
+    chunk.poweredCells++;
+  }
+
+  // drops the least recently used chunks without power until the rest fit the
+  // budget, or only chunks with power are left
+  void evict() {
+    Iterator<Map.Entry<Long, BoardChunk>> oldest = this.chunks.entrySet().iterator();
+
+    while (this.bytes > this.budget && oldest.hasNext()) {
+      Map.Entry<Long, BoardChunk> entry = oldest.next();
+      BoardChunk chunk = entry.getValue();
+
+      if (chunk.poweredCells > 0) {
+        continue;
+      }
+      if (chunk.turned) {
+        this.savedTurns.put(entry.getKey(), packTurns(chunk.turns));
+      }
+      oldest.remove();
+      this.bytes -= this.chunkBytes();
+      this.evictions++;
+    }
+  }
+
+  // packs the turns of a chunk's cells four to a byte
+  static byte[] packTurns(byte[] turns) {
+    byte[] packed = new byte[(turns.length + 3) / 4];
+
+    for (int cell = 0; cell < turns.length; cell++) {
+      packed[cell >>> 2] |= (byte) (turns[cell] << ((cell & 3) << 1));
+    }
+    return packed;
+  }
+}
+
+//Examples and tests for endless chunked boards
+class ExamplesChunkedBoard {
+
+  // tests that chunks come out the same whatever order they are made in
+  void testDeterministic(Tester t) {
+    ChunkedBoard a = new ChunkedBoard(5, 8, 1 << 20);
+    ChunkedBoard b = new ChunkedBoard(5, 8, 1 << 20);
+    boolean same = true;
+
+    b.chunk(1000, -1000);
+    b.chunk(-3, 2);
+    for (int col = -20; col < 20; col++) {
+      for (int row = -20; row < 20; row++) {
+        same &= a.links(col, row) == b.links(col, row);
+      }
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(a.chunk(1000, -1000).links, b.chunk(1000, -1000).links);
+    t.checkExpect(Arrays.equals(new ChunkedBoard(6, 8, 1 << 20).chunk(0, 0).links,
+        a.chunk(0, 0).links), false);
+  }
+
+  // tests that the solved chunks of a region are connected, with one wire across
+  // each border
+  void testSolvedConnected(Tester t) {
+    ChunkedBoard board = new ChunkedBoard(9, 4, 1 << 20);
+    int span = 3;
+    BoardChunk[][] solved = new BoardChunk[span][span];
+
+    for (int c = 0; c < span; c++) {
+      for (int r = 0; r < span; r++) {
+        solved[c][r] = new BoardChunk(c, r, 16);
+        board.lay(solved[c][r]);
+      }
+    }
+    // breadth first over the 12 by 12 cells of the region, along wires that meet
+    boolean[][] reached = new boolean[12][12];
+    int[] queue = new int[144];
+    int tail = 1;
+    int crossings = 0;
+    reached[0][0] = true;
+
+    for (int head = 0; head < tail; head++) {
+      int col = queue[head] / 12;
+      int row = queue[head] % 12;
+
+      for (int side = 0; side < 4; side++) {
+        int toCol = col + GridTopology.SQUARE_COLS[side];
+        int toRow = row + GridTopology.SQUARE_ROWS[side];
+
+        if (toCol >= 0 && toCol < 12 && toRow >= 0 && toRow < 12
+            && (solved[col / 4][row / 4].links[col % 4 * 4 + row % 4] & (1 << side)) != 0
+            && (solved[toCol / 4][toRow / 4].links[toCol % 4 * 4 + toRow % 4]
+                & (1 << ((side + 2) % 4))) != 0
+            && !reached[toCol][toRow]) {
+          reached[toCol][toRow] = true;
+          queue[tail++] = toCol * 12 + toRow;
+        }
+        // each wire across a border is counted from its top or left end
+        if ((side == IUtils.RIGHT || side == IUtils.BOTTOM) && toCol < 12 && toRow < 12
+            && (col / 4 != toCol / 4 || row / 4 != toRow / 4)
+            && (solved[col / 4][row / 4].links[col % 4 * 4 + row % 4] & (1 << side)) != 0) {
+          crossings++;
+        }
+      }
+    }
+    t.checkExpect(tail, 144);
+    // one wire across each of the 12 borders between the 9 chunks
+    t.checkExpect(crossings, 12);
+
+    int across = 0;
+    for (int row = 0; row < 4; row++) {
+      across += (solved[0][0].links[3 * 4 + row] & (1 << IUtils.RIGHT)) != 0 ? 1 : 0;
+      across += (solved[1][0].links[row] & (1 << IUtils.LEFT)) != 0 ? 2 : 0;
+    }
+    t.checkExpect(across, 3);
+  }
+
+  // tests turning cells, and that turns outlive the chunk being dropped
+  void testEviction(Tester t) {
+    ChunkedBoard board = new ChunkedBoard(3, 8, 4 * (3 * 64 + 96));
+
+    int before = board.links(1, 1);
+    board.rotate(1, 1);
+    int after = board.links(1, 1);
+    t.checkExpect(after, (int) GridTopology.SQUARE_TURNS[1 << 4 | before]);
+
+    // move the station far away so the first chunk has no power to keep it
+    board.stationCol = 400;
+    board.stationRow = 400;
+    for (int c = 10; c < 20; c++) {
+      board.links(c * 8, 0);
+    }
+    t.checkExpect(board.chunks.size() <= 4, true);
+    t.checkExpect(board.chunks.containsKey(ChunkedBoard.key(0, 0)), false);
+    t.checkExpect(board.savedTurns.size(), 1);
+    t.checkRange(board.evictions, 7L, 12L);
+
+    t.checkExpect(board.links(1, 1), after);
+    t.checkExpect(board.savedTurns.size(), 0);
+    board.rotate(1, 1);
+    board.rotate(1, 1);
+    board.rotate(1, 1);
+    t.checkExpect(board.links(1, 1), before);
+
+    t.checkConstructorException(
+        new IllegalArgumentException("A chunk needs at least two cells on each side"),
+        "ChunkedBoard", 1L, 1, 100L);
+  }
+
+  // tests that power crosses chunk borders and only brings in the chunks it
+  // reaches
+  void testPropagate(Tester t) {
+    ChunkedBoard board = new ChunkedBoard(11, 4, 1 << 20);
+
+    // solve the four chunks around the origin
+    for (int c = -1; c < 1; c++) {
+      for (int r = -1; r < 1; r++) {
+        board.lay(board.chunk(c, r));
+      }
+    }
+    t.checkRange(board.poweredCount(), 64L, 100_000L);
+    boolean all = true;
+    for (int col = -4; col < 4; col++) {
+      for (int row = -4; row < 4; row++) {
+        all &= board.powered(col, row);
+      }
+    }
+    t.checkExpect(all, true);
+
+    long reached = 0;
+    for (BoardChunk chunk : board.chunks.values()) {
+      reached += chunk.poweredCells;
+    }
+    t.checkExpect(reached, board.poweredCount());
+
+    // after each turn of the station's cell, power is worked out again: every
+    // cell wired to a powered cell is powered too
+    long count = board.poweredCount();
+    boolean closed = true;
+    for (int turn = 0; turn < 4; turn++) {
+      board.rotate(0, 0);
+      t.checkExpect(board.stale, true);
+      for (int col = -8; col < 8; col++) {
+        for (int row = -8; row < 8; row++) {
+          for (int side = 0; side < 4; side++) {
+            int toCol = col + GridTopology.SQUARE_COLS[side];
+            int toRow = row + GridTopology.SQUARE_ROWS[side];
+            boolean wired = (board.links(col, row) & (1 << side)) != 0
+                && (board.links(toCol, toRow) & (1 << ((side + 2) % 4))) != 0;
+
+            closed &= !wired || board.powered(col, row) == board.powered(toCol, toRow);
+          }
+        }
+      }
+    }
+    t.checkExpect(closed, true);
+    t.checkExpect(board.poweredCount(), count);
+
+    // the station moves along wires onto powered cells
+    int side = Integer.numberOfTrailingZeros(board.links(0, 0));
+    t.checkExpect(board.moveStation(side), true);
+    t.checkExpect(board.stationCol, GridTopology.SQUARE_COLS[side]);
+    t.checkExpect(board.stationRow, GridTopology.SQUARE_ROWS[side]);
+  }
+
+  // tests that a region solved by turns stays powered on a board whose budget
+  // is smaller than the region
+  void testPoweredKept(Tester t) {
+    ChunkedBoard board = new ChunkedBoard(13, 4, 4 * (3 * 16 + 96));
+    ChunkedBoard unlimited = new ChunkedBoard(13, 4, 1 << 20);
+
+    // turn every cell of the 3 by 3 chunks from the origin into its solved place
+    for (int c = 0; c < 3; c++) {
+      for (int r = 0; r < 3; r++) {
+        BoardChunk solved = new BoardChunk(c, r, 16);
+        board.lay(solved);
+        for (int cell = 0; cell < 16; cell++) {
+          int col = c * 4 + cell / 4;
+          int row = r * 4 + cell % 4;
+
+          for (int turn = 0; turn < 4 && board.links(col, row) != solved.links[cell]; turn++) {
+            board.rotate(col, row);
+            unlimited.rotate(col, row);
+          }
+        }
+      }
+    }
+    int wrong = 0;
+    for (int col = 0; col < 12; col++) {
+      for (int row = 0; row < 12; row++) {
+        wrong += board.powered(col, row) == unlimited.powered(col, row) ? 0 : 1;
+        wrong += board.powered(col, row) ? 0 : 1;
+      }
+    }
+    t.checkExpect(wrong, 0);
+    t.checkExpect(board.poweredCount(), unlimited.poweredCount());
+    t.checkExpect(board.stale, false);
+    // the chunks over the budget all hold power
+    boolean pinned = true;
+    for (BoardChunk chunk : board.chunks.values()) {
+      pinned &= chunk.poweredCells > 0;
+    }
+    t.checkExpect(board.chunks.size() > 4, true);
+    t.checkExpect(pinned, true);
+  }
+}
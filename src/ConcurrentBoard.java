@@ -0,0 +1,467 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import tester.Tester;
+
+//Represents a board shared by several players rotating cells at the same time,
+//without locks. Every cell is one int updated with compare-and-set: the low byte
+//holds its wires and the rest counts the turns it has made. Every change is
+//counted when it starts and when it is done, on one of several stripes of cells
+//so writers to different cells rarely touch the same counter, and a reader that
+//copies the board between equal counts on every stripe knows no change happened
+//while it copied. A reader that keeps failing to find such a moment asks new
+//changes to wait until it has copied. Powered cells are worked out from such a
+//copy, and the newest snapshot is shared. Moving the station briefly holds the
+//station's cell and the one it moves onto, so no turn can cut the wire between
+//them while it moves.
+class ConcurrentBoard {
+  // the stripes changes are counted on, and the longs between two counters, so
+  // that each sits on its own cache line
+  static final int STRIPES = 16;
+  static final int PAD = 8;
+
+  // the tries a copy makes before asking changes to wait
+  static final int ATTEMPTS = 256;
+
+  // the bit of a cell held by a moving station, and the largest turn count the
+  // bits below it and above the wires hold
+  static final int HELD = 1 << 31;
+  static final int TURNS = 0x7FFFFF;
+
+  GridTopology topology;
+  AtomicIntegerArray cells;
+  AtomicInteger station;
+
+  // changes started and finished on each stripe, at 2 * PAD * stripe and PAD
+  // after it; the board is still when the two are equal on every stripe
+  AtomicLongArray counts;
+
+  // the readers waiting for the board to be still
+  AtomicInteger waiting;
+
+  // the newest powered snapshot
+  AtomicReference<PowerSnapshot> latest;
+
+  ConcurrentBoard(PackedBoard board) {
+    this.topology = board.topology;
+    this.cells = new AtomicIntegerArray(board.topology.cells);
+    this.station = new AtomicInteger(board.station);
+    this.counts = new AtomicLongArray(2 * PAD * STRIPES);
+    this.waiting = new AtomicInteger(0);
+
+    for (int cell = 0; cell < board.topology.cells; cell++) {
+      this.cells.set(cell, board.links[cell]);
+    }
+    this.latest = new AtomicReference<PowerSnapshot>(this.copy());
+  }
+
+  // the wires of a packed cell
+  static int links(int packed) {
+    return packed & 0xFF;
+  }
+
+  // the turns a packed cell has made
+  static int turns(int packed) {
+    return (packed & ~HELD) >>> 8;
+  }
+
+  // the index of the started count of the stripe of a cell
+  static int stripe(int cell) {
+    return 2 * PAD * (cell & (STRIPES - 1));
+  }
+
+  // counts a change to the given cell as started, once no reader is waiting
+  void start(int cell) {
+    while (this.waiting.get() > 0) {
+      Thread.yield();
+    }
+    this.counts.incrementAndGet(stripe(cell));
+  }
+
+  // counts a change to the given cell as done
+  void finish(int cell) {
+    this.counts.incrementAndGet(stripe(cell) + PAD);
+  }
+
+  // rotates the given cell clockwise once, returning its new wires
+  int rotate(int cell) {
+    this.start(cell);
+    try {
+      while (true) {
+        int packed = this.cells.get(cell);
+        int links = this.topology.rotate(links(packed));
+        // the count wraps before it can reach the held bit
+        int next = ((turns(packed) + 1) & TURNS) << 8 | links;
+
+        if ((packed & HELD) != 0) {
+          Thread.onSpinWait();
+        }
+        else if (this.cells.compareAndSet(cell, packed, next)) {
+          return links;
+        }
+      }
+    }
+    finally {
+      this.finish(cell);
+    }
+  }
+
+  // holds the given cell, waiting while another station move holds it, and
+  // returns it as it was
+  int hold(int cell) {
+    while (true) {
+      int packed = this.cells.get(cell);
+
+      if ((packed & HELD) != 0) {
+        Thread.onSpinWait();
+      }
+      else if (this.cells.compareAndSet(cell, packed, packed | HELD)) {
+        return packed;
+      }
+    }
+  }
+
+  // lets go of a held cell
+  void release(int cell) {
+    this.cells.getAndUpdate(cell, packed -> packed & ~HELD);
+  }
+
+  // moves the power station through the given side onto a neighbor wired to it,
+  // which is powered since the station is, determining if it moved. The
+  // station's cell is held first, so only one move can start from it, and the
+  // other cell is held while the wire between them is checked.
+  boolean moveStation(int side) {
+    while (true) {
+      int from = this.station.get();
+      int to = this.topology.neighbor(from, side);
+
+      if (to < 0) {
+        return false;
+      }
+      this.start(from);
+      int fromPacked = this.hold(from);
+      try {
+        if (this.station.get() != from) {
+          continue;
+        }
+        // a wraparound board one cell across is its own neighbor
+        int toPacked = to == from ? fromPacked : this.hold(to);
+        try {
+          if ((links(fromPacked) & (1 << side)) == 0
+              || (links(toPacked) & (1 << this.topology.opposite(side))) == 0) {
+            return false;
+          }
+          this.station.set(to);
+          return true;
+        }
+        finally {
+          if (to != from) {
+            this.release(to);
+          }
+        }
+      }
+      finally {
+        this.release(from);
+        this.finish(from);
+      }
+    }
+  }
+
+  // the number of changes started, or finished, over every stripe
+  long total(int offset) {
+    long total = 0;
+
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      total += this.counts.get(2 * PAD * stripe + offset);
+    }
+    return total;
+  }
+
+  // the powered state of the board as of some moment during this call
+  PowerSnapshot snapshot() {
+    PowerSnapshot newest = this.latest.get();
+
+    if (newest.version == this.total(PAD) && newest.version == this.total(0)) {
+      return newest;
+    }
+    PowerSnapshot made = this.copy();
+
+    // publish it unless someone published a newer one meanwhile
+    while (newest.version < made.version && !this.latest.compareAndSet(newest, made)) {
+      newest = this.latest.get();
+    }
+    return made;
+  }
+
+  // copies the board while no change is under way and powers the copy, asking
+  // changes to wait if that takes too many tries
+  PowerSnapshot copy() {
+    int attempts = 0;
+    boolean asked = false;
+    long[] started = new long[STRIPES];
+
+    try {
+      while (true) {
+        // every change started on a stripe before it was still has finished
+        boolean still = true;
+        long version = 0;
+
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+          long done = this.counts.get(2 * PAD * stripe + PAD);
+
+          started[stripe] = this.counts.get(2 * PAD * stripe);
+          still &= done == started[stripe];
+          version += started[stripe];
+        }
+        if (still) {
+          PackedBoard board = new PackedBoard(this.topology);
+          int[] turns = new int[this.topology.cells];
+
+          for (int cell = 0; cell < this.topology.cells; cell++) {
+            int packed = this.cells.get(cell);
+            board.links[cell] = (byte) links(packed);
+            turns[cell] = turns(packed);
+          }
+          board.station = this.station.get();
+
+          // and no change started while copying
+          for (int stripe = 0; stripe < STRIPES; stripe++) {
+            still &= this.counts.get(2 * PAD * stripe) == started[stripe];
+          }
+          if (still) {
+            board.propagate();
+            return new PowerSnapshot(version, board, turns);
+          }
+        }
+        attempts++;
+        if (attempts == ATTEMPTS) {
+          // the changes under way finish, and new ones wait until this copy is done
+          this.waiting.incrementAndGet();
+          asked = true;
+        }
+        if (attempts % 64 == 0) {
+          Thread.yield();
+        }
+      }
+    }
+    finally {
+      if (asked) {
+        this.waiting.decrementAndGet();
+      }
+    }
+  }
+}
+
+//Represents the board at one moment: its wires, power and the turns every cell
+//had made, after the given number of changes
+class PowerSnapshot {
+  long version;
+  PackedBoard board;
+  int[] turns;
+
+  PowerSnapshot(long version, PackedBoard board, int[] turns) {
+    this.version = version;
+    this.board = board;
+    this.turns = turns;
+  }
+}
+
+//Examples and tests for the shared board
+class ExamplesConcurrentBoard {
+
+  // makes a shared board over a fresh Kruskal game
+  ConcurrentBoard board(int width, int height, int seed) {
+    PackedBoard packed = new PackedBoard(new GridTopology(width, height, GridTopology.SQUARE));
+
+    packed.generate(new KruskalGenerator(), new Random(seed));
+    return new ConcurrentBoard(packed);
+  }
+
+  // tests rotating and reading on one thread
+  void testSingleThread(Tester t) {
+    PackedBoard packed = new PackedBoard(new GridTopology(4, 4, GridTopology.SQUARE));
+    packed.generate(new KruskalGenerator(), new Random(3));
+    ConcurrentBoard shared = new ConcurrentBoard(packed);
+
+    t.checkExpect(shared.snapshot().board.links, packed.links);
+    t.checkExpect(shared.snapshot().board.powered, packed.powered);
+    t.checkExpect(shared.snapshot() == shared.snapshot(), true);
+
+    packed.rotate(5);
+    packed.propagate();
+    t.checkExpect(shared.rotate(5), (int) packed.links[5]);
+
+    PowerSnapshot after = shared.snapshot();
+    t.checkExpect(after.version, 1L);
+    t.checkExpect(after.turns[5], 1);
+    t.checkExpect(after.board.powered, packed.powered);
+
+    t.checkExpect(shared.moveStation(IUtils.TOP), false);
+    t.checkExpect(shared.moveStation(IUtils.LEFT), false);
+  }
+
+  // tests that under many threads no turn is lost and no snapshot mixes old and
+  // new cells: each writer turns its own cells in a fixed order, so in any real
+  // moment its cells have made k + 1 turns up to some point and k turns after it
+  void testStress(Tester t) throws InterruptedException {
+    ConcurrentBoard shared = this.board(16, 16, 7);
+    int writers = 4;
+    int rounds = 300;
+    AtomicInteger torn = new AtomicInteger(0);
+    AtomicInteger wrongPower = new AtomicInteger(0);
+    AtomicInteger busy = new AtomicInteger(writers + 2);
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+
+    // writer w owns cells w, w + writers, w + 2 * writers, ... except cell 0,
+    // which every writer also turns once per round to fight over it
+    for (int w = 0; w < writers; w++) {
+      int writer = w;
+      threads.add(new Thread(() -> {
+        for (int r = 0; r < rounds; r++) {
+          for (int cell = writer + writers; cell < 256; cell += writers) {
+            shared.rotate(cell);
+          }
+          shared.rotate(0);
+        }
+        busy.decrementAndGet();
+      }));
+    }
+    for (int reader = 0; reader < 2; reader++) {
+      threads.add(new Thread(() -> {
+        while (busy.get() > 2) {
+          PowerSnapshot snap = shared.snapshot();
+
+          for (int w = 0; w < writers; w++) {
+            for (int cell = w + 2 * writers; cell < 256; cell += writers) {
+              int before = snap.turns[cell - writers];
+              if (snap.turns[cell] > before || snap.turns[cell] < before - 1) {
+                torn.incrementAndGet();
+              }
+            }
+          }
+          PackedBoard check = new PackedBoard(snap.board.topology);
+          System.arraycopy(snap.board.links, 0, check.links, 0, check.links.length);
+          check.station = snap.board.station;
+          check.propagate();
+          for (int cell = 0; cell < 256; cell++) {
+            if (check.powered[cell] != snap.board.powered[cell]) {
+              wrongPower.incrementAndGet();
+            }
+          }
+        }
+        busy.decrementAndGet();
+      }));
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    PowerSnapshot last = shared.snapshot();
+    boolean allTurns = true;
+    for (int cell = 1; cell < 256; cell++) {
+      allTurns &= last.turns[cell] == (cell < writers ? 0 : rounds);
+    }
+
+    t.checkExpect(torn.get(), 0);
+    t.checkExpect(wrongPower.get(), 0);
+    t.checkExpect(allTurns, true);
+    t.checkExpect(last.turns[0], writers * rounds);
+    t.checkExpect(last.version, (long) writers * rounds * 64);
+  }
+
+  // tests that a cell's turn count wraps around instead of running into the bit
+  // a moving station holds
+  void testTurnsWrap(Tester t) {
+    PackedBoard packed = new PackedBoard(new GridTopology(2, 1, GridTopology.SQUARE));
+    packed.connect(0);
+    ConcurrentBoard shared = new ConcurrentBoard(packed);
+
+    shared.cells.set(1, ConcurrentBoard.TURNS << 8 | packed.links[1]);
+    shared.rotate(1);
+    t.checkExpect(shared.cells.get(1) & ConcurrentBoard.HELD, 0);
+    t.checkExpect(ConcurrentBoard.turns(shared.cells.get(1)), 0);
+    shared.rotate(1);
+    shared.rotate(1);
+    shared.rotate(1);
+    t.checkExpect(ConcurrentBoard.turns(shared.cells.get(1)), 3);
+    t.checkExpect(ConcurrentBoard.links(shared.cells.get(1)), (int) packed.links[1]);
+    t.checkExpect(shared.moveStation(IUtils.RIGHT), true);
+    t.checkExpect(shared.total(0), shared.total(ConcurrentBoard.PAD));
+  }
+
+  // tests moving the station along a wire, and that a turn waits while the
+  // station holds its cell
+  void testMoveStation(Tester t) throws InterruptedException {
+    PackedBoard packed = new PackedBoard(new GridTopology(3, 1, GridTopology.SQUARE));
+    packed.connect(0);
+    packed.connect(1);
+    ConcurrentBoard shared = new ConcurrentBoard(packed);
+
+    t.checkExpect(shared.moveStation(IUtils.RIGHT), true);
+    t.checkExpect(shared.station.get(), 1);
+    t.checkExpect(shared.snapshot().board.station, 1);
+    shared.rotate(2);
+    t.checkExpect(shared.moveStation(IUtils.RIGHT), false);
+    t.checkExpect(shared.moveStation(IUtils.LEFT), true);
+
+    int held = shared.hold(0);
+    Thread turner = new Thread(() -> shared.rotate(0));
+    turner.start();
+    turner.join(50);
+    t.checkExpect(turner.isAlive(), true);
+    t.checkExpect(ConcurrentBoard.turns(shared.cells.get(0)), 0);
+    shared.release(0);
+    turner.join();
+    t.checkExpect(shared.cells.get(0), 1 << 8 | packed.topology.rotate(ConcurrentBoard.links(
+        held)));
+    t.checkExpect(shared.total(0), 5L);
+    t.checkExpect(shared.total(ConcurrentBoard.PAD), 5L);
+  }
+
+  // tests that readers get snapshots while writers never stop turning cells,
+  // and that the station only moves along wires as they turn
+  void testBusyWriters(Tester t) throws InterruptedException {
+    ConcurrentBoard shared = this.board(8, 8, 2);
+    AtomicInteger running = new AtomicInteger(1);
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+
+    for (int w = 0; w < 4; w++) {
+      int writer = w;
+      threads.add(new Thread(() -> {
+        Random rand = new Random(writer);
+        while (running.get() > 0) {
+          if (writer == 0) {
+            shared.moveStation(rand.nextInt(4));
+          }
+          shared.rotate(rand.nextInt(64));
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    boolean powered = true;
+    long version = 0;
+    for (int i = 0; i < 200; i++) {
+      PowerSnapshot snap = shared.snapshot();
+
+      powered &= snap.board.powered[snap.board.station] && snap.version >= version;
+      version = snap.version;
+    }
+    running.set(0);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    t.checkExpect(powered, true);
+    t.checkExpect(shared.waiting.get(), 0);
+    t.checkExpect(shared.snapshot().version, shared.total(ConcurrentBoard.PAD));
+  }
+}
@@ -0,0 +1,299 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents something told about every move on a board, such as a remote front
+//end, as a compact diff it can apply to its own copy
+interface IDiffListener {
+
+  // receives the diff of the move with the given number, counting from 1
+  void onDiff(long sequence, byte[] diff);
+}
+
+//Turns the moves on a packed board into diffs for listeners. A diff holds the
+//new wires of the cells that were turned, the station, and the cells whose power
+//flipped as runs of consecutive cells, all as unsigned varints: the number of
+//turned cells, then for each the gap from the last one and its wires; the
+//station; the number of runs, then for each the gap from the end of the last
+//one and its length. Power flips are found from the cells powered before and
+//after the move, which propagate leaves at the front of the board's worklist,
+//so a move costs in the size of the powered part, not the board.
+class DiffStream {
+  PackedBoard board;
+  ArrayList<IDiffListener> listeners;
+  long sequence;
+  long dropped; // the listeners that failed on a diff and were let go
+
+  // the cells powered when the last diff was made, as flags and as a list
+  boolean[] was;
+  int[] wasCells;
+  int wasCount;
+
+  // the cells whose power flipped in this move, and the bytes of its diff
+  int[] flips;
+  byte[] out;
+  int length;
+
+  DiffStream(PackedBoard board) {
+    int cells = board.topology.cells;
+
+    this.board = board;
+    this.listeners = new ArrayList<IDiffListener>();
+    this.was = board.powered.clone();
+    this.wasCells = new int[cells];
+    this.flips = new int[cells];
+    this.out = new byte[64];
+    for (int cell = 0; cell < cells; cell++) {
+      if (board.powered[cell]) {
+        this.wasCells[this.wasCount++] = cell;
+      }
+    }
+  }
+
+  // makes the diff of a move that turned the given cells, after the board has
+  // been powered again, and sends it to every listener
+  void moved(int... turned) {
+    int flipped = 0;
+    int[] reached = this.board.queue;
+
+    for (int i = 0; i < this.wasCount; i++) {
+      if (!this.board.powered[this.wasCells[i]]) {
+        this.flips[flipped++] = this.wasCells[i];
+      }
+    }
+    for (int i = 0; i < this.board.reached; i++) {
+      if (!this.was[reached[i]]) {
+        this.flips[flipped++] = reached[i];
+      }
+    }
+    for (int i = 0; i < flipped; i++) {
+      this.was[this.flips[i]] = !this.was[this.flips[i]];
+    }
+    System.arraycopy(reached, 0, this.wasCells, 0, this.board.reached);
+    this.wasCount = this.board.reached;
+    Arrays.sort(this.flips, 0, flipped);
+
+    this.length = 0;
+    int[] cells = turned.clone();
+    Arrays.sort(cells);
+    this.writeVarint(cells.length);
+    for (int i = 0; i < cells.length; i++) {
+      this.writeVarint(i == 0 ? cells[0] : cells[i] - cells[i - 1]);
+      this.writeByte(this.board.links[cells[i]]);
+    }
+    this.writeVarint(this.board.station);
+    this.writeRuns(flipped);
+
+    byte[] diff = Arrays.copyOf(this.out, this.length);
+    this.sequence++;
+    // the move has been made, so a listener that fails is let go rather than
+    // keeping the rest from hearing of it
+    for (int i = 0; i < this.listeners.size();) {
+      try {
+        this.listeners.get(i).onDiff(this.sequence, diff);
+        i++;
+      }
+      catch (RuntimeException e) {
+        this.listeners.remove(i);
+        this.dropped++;
+      }
+    }
+  }
+
+  // writes the sorted flips as runs of consecutive cells
+  void writeRuns(int flipped) {
+    int runs = 0;
+
+    for (int i = 0; i < flipped; i++) {
+      if (i == 0 || this.flips[i] != this.flips[i - 1] + 1) {
+        runs++;
+      }
+    }
+    this.writeVarint(runs);
+
+    int end = 0;
+    for (int i = 0; i < flipped;) {
+      int first = i;
+
+      while (i + 1 < flipped && this.flips[i + 1] == this.flips[i] + 1) {
+        i++;
+      }
+      i++;
+      this.writeVarint(this.flips[first] - end);
+      this.writeVarint(i - first);
+      end = this.flips[i - 1] + 1;
+    }
+  }
+
+  // writes a non-negative int in seven bit groups, lowest first
+  void writeVarint(int value) {
+    while ((value & ~0x7F) != 0) {
+      this.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    this.writeByte(value);
+  }
+
+  // writes one byte, making room if need be
+  void writeByte(int value) {
+    if (this.length == this.out.length) {
+      this.out = Arrays.copyOf(this.out, this.length * 2);
+    }
+    this.out[this.length++] = (byte) value;
+  }
+}
+
+//Represents a client's copy of a board, kept up to date by applying the diffs of
+//each move, at a cost in the size of the diff
+class BoardMirror implements IDiffListener {
+  byte[] links;
+  boolean[] powered;
+  int station;
+  long sequence; // the last move applied
+
+  // starts from a full copy of the board as it is after the given move
+  BoardMirror(PackedBoard board, long sequence) {
+    this.links = board.links.clone();
+    this.powered = board.powered.clone();
+    this.station = board.station;
+    this.sequence = sequence;
+  }
+
+  // applies the diff of the next move
+  public void onDiff(long sequence, byte[] diff) {
+    if (sequence != this.sequence + 1) {
+      throw new IllegalArgumentException("Expected move " + (this.sequence + 1) + " but got "
+          + sequence);
+    }
+    int[] at = { 0 };
+    int turned = readVarint(diff, at);
+    int cell = 0;
+
+    for (int i = 0; i < turned; i++) {
+      cell += readVarint(diff, at);
+      this.links[cell] = diff[at[0]++];
+    }
+    this.station = readVarint(diff, at);
+
+    int runs = readVarint(diff, at);
+    int end = 0;
+    for (int i = 0; i < runs; i++) {
+      int first = end + readVarint(diff, at);
+
+      end = first + readVarint(diff, at);
+      for (int c = first; c < end; c++) {
+        this.powered[c] = !this.powered[c];
+      }
+    }
+    this.sequence = sequence;
+  }
+
+  // reads a varint at the given index, moving the index past it
+  static int readVarint(byte[] diff, int[] at) {
+    int value = 0;
+
+    for (int shift = 0;; shift += 7) {
+      int b = diff[at[0]++];
+
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+}
+
+//Examples and tests for diffs of moves
+class ExamplesDiffStream {
+
+  // tests the diff of a move on a tiny board
+  void testEncoding(Tester t) {
+    PackedBoard line = new PackedBoard(new GridTopology(3, 1, GridTopology.SQUARE));
+    line.connect(0);
+    line.connect(1);
+    line.propagate();
+    DiffStream diffs = new DiffStream(line);
+    ArrayList<byte[]> sent = new ArrayList<byte[]>();
+    diffs.listeners.add((sequence, diff) -> sent.add(diff));
+
+    // turning the middle cuts off the last two cells
+    line.rotate(1);
+    line.propagate();
+    diffs.moved(1);
+    t.checkExpect(sent.get(0), new byte[] { 1, 1, 5, 0, 1, 1, 2 });
+
+    // a move that changes nothing is a few bytes
+    line.propagate();
+    diffs.moved();
+    t.checkExpect(sent.get(1), new byte[] { 0, 0, 0 });
+    t.checkExpect(diffs.sequence, 2L);
+
+    diffs.length = 0;
+    diffs.writeVarint(300);
+    t.checkExpect(Arrays.copyOf(diffs.out, diffs.length), new byte[] { (byte) 0xAC, 0x02 });
+    t.checkExpect(BoardMirror.readVarint(new byte[] { (byte) 0xAC, 0x02 }, new int[] { 0 }),
+        300);
+  }
+
+  // tests that a mirror kept by diffs matches a game played on a server
+  void testMirror(Tester t) {
+    GameSession session = new GameSession(1, new GridTopology(30, 20, GridTopology.SQUARE),
+        new KruskalGenerator(), new Random(6));
+    BoardMirror mirror = session.mirror();
+    long[] bytes = { 0 };
+    session.listen((sequence, diff) -> bytes[0] += diff.length);
+
+    Random rand = new Random(2);
+    boolean same = true;
+    for (int move = 0; move < 500; move++) {
+      if (move % 10 == 9) {
+        session.moveStation(rand.nextInt(4));
+      }
+      else {
+        session.rotate(rand.nextInt(30), rand.nextInt(20));
+      }
+      same &= Arrays.equals(mirror.links, session.board.links)
+          && Arrays.equals(mirror.powered, session.board.powered)
+          && mirror.station == session.board.station;
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(mirror.sequence, session.diffs.sequence);
+    // far less than resending the 600 cells of the board each move
+    t.checkExpect(bytes[0] < 500L * 30, true);
+
+    // a station that could not move sends nothing
+    t.checkRange(mirror.sequence, 450L, 501L);
+    t.checkException(new IllegalArgumentException("Expected move " + (mirror.sequence + 1)
+        + " but got 7"), mirror, "onDiff", 7L, new byte[] { 0, 0, 0 });
+  }
+
+  // tests that a mirror made after some moves picks up from there, and that a
+  // failing listener neither stops the move nor the listeners after it
+  void testLateListener(Tester t) {
+    GameSession session = new GameSession(1, new GridTopology(8, 6, GridTopology.SQUARE),
+        new KruskalGenerator(), new Random(3));
+    session.mirror();
+    session.rotate(1, 1);
+    session.rotate(2, 1);
+
+    ArrayList<Long> heard = new ArrayList<Long>();
+    session.listen((sequence, diff) -> {
+      throw new IllegalStateException("listener broke");
+    });
+    BoardMirror late = session.mirror();
+    session.listen((sequence, diff) -> heard.add(sequence));
+    t.checkExpect(late.sequence, 2L);
+
+    session.rotate(3, 4);
+    session.rotate(3, 4);
+    t.checkExpect(session.moves, 4);
+    t.checkExpect(late.sequence, 4L);
+    t.checkExpect(late.links, session.board.links);
+    t.checkExpect(late.powered, session.board.powered);
+    t.checkExpect(heard.size(), 2);
+    t.checkExpect(session.diffs.dropped, 1L);
+    t.checkExpect(session.diffs.listeners.size(), 3);
+  }
+}
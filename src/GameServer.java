@@ -0,0 +1,530 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+//Represents one headless game hosted by a server: a packed board generated and
+//powered like a LightEmAll game, and the number of moves made on it
+class GameSession {
+  long id;
+  PackedBoard board;
+  int moves;
+
+  // the diffs of each move sent to listeners, or null until one listens
+  DiffStream diffs;
+
+  GameSession(long id, GridTopology topology, ITreeGenerator generator, Random rand) {
+    this.id = id;
+    this.board = new PackedBoard(topology);
+    this.board.generate(generator, rand);
+    this.moves = 0;
+  }
+
+  // hosts a game on a board that is already generated
+  GameSession(long id, PackedBoard board) {
+    this.id = id;
+    this.board = board;
+    this.moves = 0;
+  }
+
+  // rotates the cell at the given column and row and powers the board again
+  synchronized void rotate(int col, int row) {
+    GridTopology t = this.board.topology;
+
+    if (col < 0 || col >= t.width || row < 0 || row >= t.height) {
+      throw new IllegalArgumentException("There is no cell at " + col + " " + row);
+    }
+    this.board.rotate(t.cell(col, row));
+    this.moves++;
+    this.board.propagate();
+    if (this.diffs != null) {
+      this.diffs.moved(t.cell(col, row));
+    }
+  }
+
+  // moves the power station through the given side, if it is wired to a powered
+  // neighbor there
+  synchronized boolean moveStation(int side) {
+    if (side < 0 || side >= this.board.topology.sides) {
+      throw new IllegalArgumentException("There is no side " + side);
+    }
+    boolean moved = this.board.moveStation(side);
+
+    if (moved && this.diffs != null) {
+      this.diffs.moved();
+    }
+    return moved;
+  }
+
+  // sends the diff of every later move to the given listener, which should start
+  // from the board as it is now, returning the number of the last move sent so the
+  // next diff it gets is numbered one more
+  synchronized long listen(IDiffListener listener) {
+    if (this.diffs == null) {
+      this.diffs = new DiffStream(this.board);
+    }
+    this.diffs.listeners.add(listener);
+    return this.diffs.sequence;
+  }
+
+  // a copy of the board as it is now, kept up to date with the diff of every
+  // later move
+  synchronized BoardMirror mirror() {
+    BoardMirror mirror = new BoardMirror(this.board, 0);
+
+    mirror.sequence = this.listen(mirror);
+    return mirror;
+  }
+
+  // describes this game as the protocol's state line: size, kind, station,
+  // moves, powered cells, whether it is won, and the wires of every cell in cell
+  // order as hex digits
+  synchronized String state() {
+    GridTopology t = this.board.topology;
+    StringBuilder links = new StringBuilder();
+
+    for (int cell = 0; cell < t.cells; cell++) {
+      if (t.sides > 4) {
+        links.append(Character.forDigit(this.board.links[cell] >>> 4, 16));
+      }
+      links.append(Character.forDigit(this.board.links[cell] & 0xF, 16));
+    }
+    return t.width + " " + t.height + " " + t.kind + " " + t.col(this.board.station) + " "
+        + t.row(this.board.station) + " " + this.moves + " " + this.board.poweredCount() + " "
+        + this.board.allPowered() + " " + links;
+  }
+}
+
+//Represents the sessions of a server spread over shards with a lock each, so
+//that clients working on different sessions rarely wait for each other
+class SessionStore {
+  ArrayList<HashMap<Long, GameSession>> shards;
+  AtomicLong nextId;
+
+  // topologies are never changed, so every session of the same shape shares one,
+  // kept with the number of sessions using it and dropped with the last of them
+  HashMap<String, GridTopology> topologies;
+  HashMap<String, Integer> uses;
+
+  SessionStore(int shards) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("A store needs at least one shard");
+    }
+    this.shards = new ArrayList<HashMap<Long, GameSession>>();
+    for (int i = 0; i < shards; i++) {
+      this.shards.add(new HashMap<Long, GameSession>());
+    }
+    this.nextId = new AtomicLong(1);
+    this.topologies = new HashMap<String, GridTopology>();
+    this.uses = new HashMap<String, Integer>();
+  }
+
+  // the shard holding the session with the given id
+  HashMap<Long, GameSession> shard(long id) {
+    return this.shards.get((int) Math.floorMod(id, (long) this.shards.size()));
+  }
+
+  // starts a new game and stores it under a fresh id
+  GameSession create(int width, int height, int kind, ITreeGenerator generator,
+      Random rand) {
+    String shape = width + " " + height + " " + kind;
+    GridTopology topology;
+
+    synchronized (this.topologies) {
+      topology = this.topologies.get(shape);
+    }
+    if (topology == null) {
+      topology = new GridTopology(width, height, kind);
+    }
+    GameSession session = new GameSession(this.nextId.getAndIncrement(), topology, generator,
+        rand);
+
+    synchronized (this.topologies) {
+      // another thread may have made the topology of this shape meanwhile, and
+      // then this session keeps its own, still counted under the shape
+      this.topologies.putIfAbsent(shape, topology);
+      this.uses.merge(shape, 1, Integer::sum);
+    }
+    HashMap<Long, GameSession> shard = this.shard(session.id);
+
+    synchronized (shard) {
+      shard.put(session.id, session);
+    }
+    return session;
+  }
+
+  // the session with the given id
+  GameSession get(long id) {
+    HashMap<Long, GameSession> shard = this.shard(id);
+    GameSession session;
+
+    synchronized (shard) {
+      session = shard.get(id);
+    }
+    if (session == null) {
+      throw new IllegalArgumentException("There is no game " + id);
+    }
+    return session;
+  }
+
+  // removes the session with the given id, determining if there was one
+  boolean remove(long id) {
+    HashMap<Long, GameSession> shard = this.shard(id);
+    GameSession session;
+
+    synchronized (shard) {
+      session = shard.remove(id);
+    }
+    if (session == null) {
+      return false;
+    }
+    GridTopology t = session.board.topology;
+    String shape = t.width + " " + t.height + " " + t.kind;
+
+    synchronized (this.topologies) {
+      if (this.uses.merge(shape, -1, Integer::sum) == 0) {
+        this.uses.remove(shape);
+        this.topologies.remove(shape);
+      }
+    }
+    return true;
+  }
+
+  // counts the stored sessions
+  int size() {
+    int size = 0;
+
+    for (HashMap<Long, GameSession> shard : this.shards) {
+      synchronized (shard) {
+        size += shard.size();
+      }
+    }
+    return size;
+  }
+}
+
+//Answers the lines of the game protocol, one command per line:
+//
+//  NEW width height [kind [generator [seed]]]   OK id
+//  ROTATE id col row                            OK powered won
+//  MOVE id up|down|left|right|side              OK moved col row
+//  STATE id                                     OK the session's state line
+//  CLOSE id                                     OK
+//
+//where kind is square, torus or hex and generator is kruskal, prim or wilson.
+//Anything that goes wrong is answered with ERR and a message.
+class GameProtocol {
+  SessionStore sessions;
+
+  GameProtocol(SessionStore sessions) {
+    this.sessions = sessions;
+  }
+
+  // answers a single line of the protocol
+  String answer(String line) {
+    String[] words = line.trim().split("\\s+");
+
+    try {
+      String command = words[0].toUpperCase();
+
+      if (command.equals("NEW")) {
+        return this.newGame(words);
+      }
+      if (command.equals("ROTATE") && words.length == 4) {
+        GameSession session = this.sessions.get(Long.parseLong(words[1]));
+
+        synchronized (session) {
+          session.rotate(Integer.parseInt(words[2]), Integer.parseInt(words[3]));
+          return "OK " + session.board.poweredCount() + " " + session.board.allPowered();
+        }
+      }
+      if (command.equals("MOVE") && words.length == 3) {
+        GameSession session = this.sessions.get(Long.parseLong(words[1]));
+
+        synchronized (session) {
+          boolean moved = session.moveStation(this.side(words[2]));
+          GridTopology t = session.board.topology;
+          return "OK " + moved + " " + t.col(session.board.station) + " "
+              + t.row(session.board.station);
+        }
+      }
+      if (command.equals("STATE") && words.length == 2) {
+        return "OK " + this.sessions.get(Long.parseLong(words[1])).state();
+      }
+      if (command.equals("CLOSE") && words.length == 2) {
+        if (!this.sessions.remove(Long.parseLong(words[1]))) {
+          return "ERR There is no game " + words[1];
+        }
+        return "OK";
+      }
+      return "ERR Unknown command: " + line.trim();
+    }
+    catch (NumberFormatException e) {
+      return "ERR Not a number: " + line.trim();
+    }
+    catch (IllegalArgumentException e) {
+      return "ERR " + e.getMessage();
+    }
+  }
+
+  // starts a new game from the words of a NEW command
+  String newGame(String[] words) {
+    if (words.length < 3 || words.length > 6) {
+      return "ERR Usage: NEW width height [kind [generator [seed]]]";
+    }
+    int width = Integer.parseInt(words[1]);
+    int height = Integer.parseInt(words[2]);
+    int kind = words.length > 3 ? this.kind(words[3]) : GridTopology.SQUARE;
+    ITreeGenerator generator = words.length > 4 ? this.generator(words[4])
+        : new KruskalGenerator();
+    long seed = words.length > 5 ? Long.parseLong(words[5])
+        : ThreadLocalRandom.current().nextLong();
+
+    if (width < 1 || height < 1 || (long) width * height > 1_000_000) {
+      return "ERR A game must have between 1 and 1000000 cells";
+    }
+    return "OK " + this.sessions.create(width, height, kind, generator, new Random(seed)).id;
+  }
+
+  // the kind of grid with the given name
+  int kind(String name) {
+    if (name.equalsIgnoreCase("square")) {
+      return GridTopology.SQUARE;
+    }
+    if (name.equalsIgnoreCase("torus")) {
+      return GridTopology.TORUS;
+    }
+    if (name.equalsIgnoreCase("hex")) {
+      return GridTopology.HEX;
+    }
+    throw new IllegalArgumentException("Unknown kind of grid: " + name);
+  }
+
+  // a new generator with the given name
+  ITreeGenerator generator(String name) {
+    if (name.equalsIgnoreCase("kruskal")) {
+      return new KruskalGenerator();
+    }
+    if (name.equalsIgnoreCase("prim")) {
+      return new PrimGenerator();
+    }
+    if (name.equalsIgnoreCase("wilson")) {
+      return new WilsonGenerator();
+    }
+    throw new IllegalArgumentException("Unknown generator: " + name);
+  }
+
+  // the side named by an arrow key, or given as a number
+  int side(String name) {
+    if (name.equalsIgnoreCase("up")) {
+      return IUtils.TOP;
+    }
+    if (name.equalsIgnoreCase("right")) {
+      return IUtils.RIGHT;
+    }
+    if (name.equalsIgnoreCase("down")) {
+      return IUtils.BOTTOM;
+    }
+    if (name.equalsIgnoreCase("left")) {
+      return IUtils.LEFT;
+    }
+    return Integer.parseInt(name);
+  }
+}
+
+//Serves the game protocol to local clients over TCP, running every client as its
+//own task. Sessions are not tied to connections, so a client may reconnect and
+//keep playing, and a single server holds as many games as fit in memory. The
+//client executor is given to the constructor; on a JVM with virtual threads,
+//Executors.newVirtualThreadPerTaskExecutor() gives each client a cheap thread.
+class GameServer {
+  ServerSocket server;
+  ExecutorService clients;
+  GameProtocol protocol;
+  Thread acceptor;
+
+  GameServer(int port, ExecutorService clients, SessionStore sessions) throws IOException {
+    this.server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    this.clients = clients;
+    this.protocol = new GameProtocol(sessions);
+  }
+
+  // the port the server listens on
+  int port() {
+    return this.server.getLocalPort();
+  }
+
+  // starts accepting clients on a background thread
+  void start() {
+    this.acceptor = new Thread(() -> {
+      while (!this.server.isClosed()) {
+        try {
+          Socket client = this.server.accept();
+          this.clients.execute(() -> this.serve(client));
+        }
+        catch (IOException e) {
+          // the server socket was closed
+        }
+      }
+    }, "game-server-acceptor");
+    this.acceptor.start();
+  }
+
+  // answers the lines of one client until it sends QUIT or hangs up
+  void serve(Socket client) {
+    try (Socket socket = client;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true,
+            StandardCharsets.UTF_8)) {
+      String line = in.readLine();
+
+      while (line != null && !line.trim().equalsIgnoreCase("QUIT")) {
+        if (!line.trim().isEmpty()) {
+          out.println(this.protocol.answer(line));
+        }
+        line = in.readLine();
+      }
+    }
+    catch (IOException e) {
+      // the client hung up
+    }
+  }
+
+  // stops accepting clients and lets the connected ones finish
+  void close() throws IOException {
+    this.server.close();
+    this.clients.shutdown();
+  }
+
+  // runs a server on the given port, 7510 by default
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 7510;
+    GameServer server = new GameServer(port, Executors.newCachedThreadPool(),
+        new SessionStore(64));
+
+    server.start();
+    System.out.println("LightEmAll server on port " + server.port());
+  }
+}
+
+//Examples and tests for the game server
+class ExamplesGameServer {
+
+  // tests starting and playing a game through the protocol
+  void testProtocol(Tester t) {
+    GameProtocol protocol = new GameProtocol(new SessionStore(4));
+
+    t.checkExpect(protocol.answer("NEW 3 3 square kruskal 5"), "OK 1");
+    t.checkExpect(protocol.answer("new 4 2 hex wilson 5"), "OK 2");
+    t.checkExpect(protocol.sessions.size(), 2);
+
+    String[] square = protocol.answer("STATE 1").split(" ");
+    String[] hex = protocol.answer("STATE 2").split(" ");
+    t.checkExpect(square.length, 10);
+    t.checkExpect(protocol.answer("STATE 1").startsWith("OK 3 3 0 0 0 0 "), true);
+    t.checkExpect(square[9].length(), 9);
+    t.checkExpect(hex[3], "2");
+    t.checkExpect(hex[9].length(), 16);
+
+    t.checkExpect(protocol.answer("ROTATE 1 2 2").startsWith("OK "), true);
+    t.checkExpect(protocol.answer("STATE 1").startsWith("OK 3 3 0 0 0 1 "), true);
+    t.checkExpect(protocol.answer("MOVE 1 up"), "OK false 0 0");
+
+    t.checkExpect(protocol.answer("CLOSE 2"), "OK");
+    t.checkExpect(protocol.answer("CLOSE 2"), "ERR There is no game 2");
+    t.checkExpect(protocol.sessions.size(), 1);
+  }
+
+  // tests that sessions of one shape share a topology, dropped with the last of them
+  void testSharedTopologies(Tester t) {
+    SessionStore store = new SessionStore(2);
+    GameSession a = store.create(5, 4, GridTopology.SQUARE, new KruskalGenerator(),
+        new Random(1));
+    GameSession b = store.create(5, 4, GridTopology.SQUARE, new PrimGenerator(), new Random(2));
+    GameSession hex = store.create(5, 4, GridTopology.HEX, new KruskalGenerator(),
+        new Random(3));
+
+    t.checkExpect(a.board.topology == b.board.topology, true);
+    t.checkExpect(store.topologies.size(), 2);
+    t.checkExpect(store.uses.get("5 4 0"), 2);
+
+    t.checkExpect(store.remove(a.id), true);
+    t.checkExpect(store.topologies.get("5 4 0") == b.board.topology, true);
+    t.checkExpect(store.remove(hex.id), true);
+    t.checkExpect(store.remove(b.id), true);
+    t.checkExpect(store.remove(b.id), false);
+    t.checkExpect(store.topologies.size(), 0);
+    t.checkExpect(store.uses.size(), 0);
+  }
+
+  // tests the answers to bad commands
+  void testProtocolErrors(Tester t) {
+    GameProtocol protocol = new GameProtocol(new SessionStore(2));
+
+    t.checkExpect(protocol.answer("FLY 1"), "ERR Unknown command: FLY 1");
+    t.checkExpect(protocol.answer("NEW 3"),
+        "ERR Usage: NEW width height [kind [generator [seed]]]");
+    t.checkExpect(protocol.answer("NEW 0 3"), "ERR A game must have between 1 and 1000000 cells");
+    t.checkExpect(protocol.answer("NEW 3 3 cube"), "ERR Unknown kind of grid: cube");
+    t.checkExpect(protocol.answer("NEW 3 3 square dfs"), "ERR Unknown generator: dfs");
+    t.checkExpect(protocol.answer("STATE x"), "ERR Not a number: STATE x");
+    t.checkExpect(protocol.answer("STATE 9"), "ERR There is no game 9");
+
+    protocol.answer("NEW 3 3");
+    t.checkExpect(protocol.answer("ROTATE 1 3 0"), "ERR There is no cell at 3 0");
+    t.checkExpect(protocol.answer("MOVE 1 7"), "ERR There is no side 7");
+  }
+
+  // tests that a session plays like the game from the same seed
+  void testSessionMatchesGame(Tester t) {
+    SessionStore store = new SessionStore(1);
+    GameSession session = store.create(4, 4, GridTopology.SQUARE, new KruskalGenerator(),
+        new Random(12));
+    LightEmAll game = new LightEmAll(4, 4, true, new Random(12));
+
+    game.initializeGame();
+    game.onMouseClicked(new Posn(75, 125), "LeftButton");
+    session.rotate(1, 2);
+
+    t.checkExpect(session.board.links, PackedBoard.of(game).links);
+    t.checkExpect(session.board.powered, PackedBoard.of(game).powered);
+    t.checkExpect(session.moves, game.score);
+  }
+
+  // tests playing over a socket
+  void testServer(Tester t) throws IOException {
+    GameServer server = new GameServer(0, Executors.newCachedThreadPool(), new SessionStore(8));
+    server.start();
+
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port());
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true,
+            StandardCharsets.UTF_8)) {
+      out.println("NEW 5 5 torus prim 3");
+      t.checkExpect(in.readLine(), "OK 1");
+      out.println("STATE 1");
+      t.checkExpect(in.readLine().startsWith("OK 5 5 1 0 0 0 "), true);
+      out.println("QUIT");
+      t.checkExpect(in.readLine(), null);
+    }
+    finally {
+      server.close();
+    }
+  }
+}
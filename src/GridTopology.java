@@ -0,0 +1,376 @@
+import tester.Tester;
+
+//Represents the shape of a board: which cells neighbor each other, and through
+//which side of the cell. Cells are numbered col * height + row, i.e., in the
+//same column-major order as the nodes of a LightEmAll game, unless another
+//CellLayout is asked for, in which case col, row and cell look the numbering up
+//in tables. Sides are numbered clockwise starting at the top, so rotating a cell
+//moves side s to side s + 1.
+class GridTopology {
+  // a bounded grid of square cells
+  static final int SQUARE = 0;
+  // a grid of square cells whose opposite borders are joined
+  static final int TORUS = 1;
+  // a bounded grid of hexagons in columns, with odd columns shifted half a cell down
+  static final int HEX = 2;
+
+  // the column and row steps through each side, for square cells and for the even
+  // and odd columns of hexagons
+  static final int[] SQUARE_COLS = { 0, 1, 0, -1 };
+  static final int[] SQUARE_ROWS = { -1, 0, 1, 0 };
+  static final int[] HEX_COLS = { 0, 1, 1, 0, -1, -1 };
+  static final int[] HEX_EVEN_ROWS = { -1, -1, 0, 1, 0, -1 };
+  static final int[] HEX_ODD_ROWS = { -1, 0, 1, 1, 1, 0 };
+
+  // the masks of square and hexagonal cells after each number of clockwise turns,
+  // as TURNS[turns << sides | links]
+  static final byte[] SQUARE_TURNS = turnTable(4);
+  static final byte[] HEX_TURNS = turnTable(6);
+
+  int width; // columns
+  int height; // rows
+  int kind;
+  int sides; // sides per cell, 4 or 6
+  int cells;
+
+  // the order cells are numbered in, and for any layout but column-major the
+  // column and row of each cell, and the cell at col * height + row
+  int layout;
+  int[] colOf;
+  int[] rowOf;
+  int[] cellAt;
+
+  // the neighbor through each side of each cell, as next[cell * sides + side],
+  // or -1 on a border
+  int[] next;
+
+  // the neighbors of each cell, in compressed rows: the neighbors of a cell are
+  // neighbors[start[cell]] up to neighbors[start[cell + 1]], left through the
+  // side in sideOf and along the edge in edgeOf at the same position
+  int[] start;
+  int[] neighbors;
+  byte[] sideOf;
+  int[] edgeOf;
+
+  // every edge of the grid once, in cell order, as the cell it starts from,
+  // the side it leaves through and the cell it ends at
+  int edges;
+  int[] edgeFrom;
+  int[] edgeSide;
+  int[] edgeTo;
+
+  GridTopology(int width, int height, int kind) {
+    this(width, height, kind, CellLayout.COLUMN_MAJOR);
+  }
+
+  // constructor for a grid whose cells are numbered in the given layout
+  GridTopology(int width, int height, int kind, int layout) {
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException("A board cannot have a negative size");
+    }
+    if (kind != SQUARE && kind != TORUS && kind != HEX) {
+      throw new IllegalArgumentException("Unknown kind of grid: " + kind);
+    }
+    this.width = width;
+    this.height = height;
+    this.kind = kind;
+    this.sides = kind == HEX ? 6 : 4;
+    this.cells = width * height;
+    this.layout = layout;
+
+    if (layout != CellLayout.COLUMN_MAJOR) {
+      this.cellAt = CellLayout.order(width, height, layout);
+      this.colOf = new int[this.cells];
+      this.rowOf = new int[this.cells];
+      for (int i = 0; i < this.cells; i++) {
+        this.colOf[this.cellAt[i]] = i / height;
+        this.rowOf[this.cellAt[i]] = i % height;
+      }
+    }
+    this.makeNext();
+    this.makeEdges();
+    this.makeNeighbors();
+  }
+
+  // fills in the neighbor through every side of every cell
+  void makeNext() {
+    this.next = new int[this.cells * this.sides];
+
+    for (int cell = 0; cell < this.cells; cell++) {
+      for (int side = 0; side < this.sides; side++) {
+        this.next[cell * this.sides + side] = this.findNeighbor(cell, side);
+      }
+    }
+  }
+
+  // computes the neighbor through the given side of a cell, or -1 if there is none
+  int findNeighbor(int cell, int side) {
+    int to = neighborOf(this.width, this.height, this.kind, this.col(cell), this.row(cell), side);
+
+    return to < 0 ? -1 : this.cell(to / this.height, to % this.height);
+  }
+
+  // computes the neighbor through the given side of the cell at a column and row
+  // of a grid of the given shape, numbered column-major, or -1 if there is none
+  static int neighborOf(int width, int height, int kind, int col, int row, int side) {
+    int dc = SQUARE_COLS[side % 4];
+    int dr = SQUARE_ROWS[side % 4];
+
+    if (kind == HEX) {
+      // odd columns sit half a cell lower, so their diagonal neighbors are a row down
+      dc = HEX_COLS[side];
+      dr = col % 2 == 0 ? HEX_EVEN_ROWS[side] : HEX_ODD_ROWS[side];
+    }
+
+    int toCol = col + dc;
+    int toRow = row + dr;
+
+    if (kind == TORUS) {
+      // a grid one cell across would wrap onto the cell itself
+      if ((dc != 0 && width == 1) || (dr != 0 && height == 1)) {
+        return -1;
+      }
+      toCol = Math.floorMod(toCol, width);
+      toRow = Math.floorMod(toRow, height);
+    }
+    if (toCol < 0 || toCol >= width || toRow < 0 || toRow >= height) {
+      return -1;
+    }
+    return toCol * height + toRow;
+  }
+
+  // lists every edge once, from the cell where it leaves through a forward side
+  void makeEdges() {
+    int[] forward = this.forwardSides();
+    int count = 0;
+
+    this.edgeFrom = new int[this.cells * forward.length];
+    this.edgeSide = new int[this.cells * forward.length];
+    this.edgeTo = new int[this.cells * forward.length];
+
+    for (int cell = 0; cell < this.cells; cell++) {
+      for (int side : forward) {
+        int to = this.next[cell * this.sides + side];
+
+        if (to >= 0) {
+          this.edgeFrom[count] = cell;
+          this.edgeSide[count] = side;
+          this.edgeTo[count] = to;
+          count++;
+        }
+      }
+    }
+    this.edges = count;
+  }
+
+  // the sides every edge is listed from, in the order LightEmAll has always made
+  // its edges: down before right
+  int[] forwardSides() {
+    if (this.kind == HEX) {
+      return new int[] { 3, 1, 2 };
+    }
+    return new int[] { IUtils.BOTTOM, IUtils.RIGHT };
+  }
+
+  // builds the compressed neighbor rows from the edge list
+  void makeNeighbors() {
+    int[] fill = new int[this.cells];
+
+    this.start = new int[this.cells + 1];
+    this.neighbors = new int[this.edges * 2];
+    this.sideOf = new byte[this.edges * 2];
+    this.edgeOf = new int[this.edges * 2];
+
+    for (int e = 0; e < this.edges; e++) {
+      this.start[this.edgeFrom[e] + 1]++;
+      this.start[this.edgeTo[e] + 1]++;
+    }
+    for (int cell = 0; cell < this.cells; cell++) {
+      this.start[cell + 1] += this.start[cell];
+    }
+    for (int e = 0; e < this.edges; e++) {
+      int from = this.start[this.edgeFrom[e]] + fill[this.edgeFrom[e]]++;
+      int to = this.start[this.edgeTo[e]] + fill[this.edgeTo[e]]++;
+
+      this.neighbors[from] = this.edgeTo[e];
+      this.sideOf[from] = (byte) this.edgeSide[e];
+      this.edgeOf[from] = e;
+      this.neighbors[to] = this.edgeFrom[e];
+      this.sideOf[to] = (byte) this.opposite(this.edgeSide[e]);
+      this.edgeOf[to] = e;
+    }
+  }
+
+  // the neighbor through the given side of a cell, or -1 if there is none
+  int neighbor(int cell, int side) {
+    return this.next[cell * this.sides + side];
+  }
+
+  // the side facing the given side on the neighboring cell
+  int opposite(int side) {
+    return (side + this.sides / 2) % this.sides;
+  }
+
+  // the link mask of a cell rotated clockwise once
+  int rotate(int links) {
+    return ((links << 1) | (links >>> (this.sides - 1))) & ((1 << this.sides) - 1);
+  }
+
+  // the column of a cell
+  int col(int cell) {
+    return this.colOf == null ? cell / this.height : this.colOf[cell];
+  }
+
+  // the row of a cell
+  int row(int cell) {
+    return this.rowOf == null ? cell % this.height : this.rowOf[cell];
+  }
+
+  // the cell at the given column and row
+  int cell(int col, int row) {
+    return this.cellAt == null ? col * this.height + row : this.cellAt[col * this.height + row];
+  }
+
+  // builds the table of turned masks for cells with the given number of sides
+  static byte[] turnTable(int sides) {
+    int masks = 1 << sides;
+    byte[] table = new byte[sides * masks];
+
+    for (int turns = 0; turns < sides; turns++) {
+      for (int links = 0; links < masks; links++) {
+        int turned = ((links << turns) | (links >>> (sides - turns))) & (masks - 1);
+        table[turns << sides | links] = (byte) turned;
+      }
+    }
+    return table;
+  }
+
+  // determines if this topology has the same shape and numbering as that one
+  boolean sameShape(GridTopology that) {
+    return this.width == that.width && this.height == that.height && this.kind == that.kind
+        && this.layout == that.layout;
+  }
+
+  // roughly the bytes this topology takes up on the heap: its tables and the
+  // objects around them
+  long bytes() {
+    long ints = (long) this.next.length + this.start.length + this.neighbors.length
+        + this.edgeOf.length + this.edgeFrom.length + this.edgeSide.length + this.edgeTo.length;
+
+    if (this.cellAt != null) {
+      ints += this.colOf.length + this.rowOf.length + this.cellAt.length;
+    }
+    return 4 * ints + this.sideOf.length + 16 * 11 + 96;
+  }
+
+  // at least the bytes of a column-major topology of the given shape, found
+  // without building it by counting an edge through every forward side
+  static long bytes(int width, int height, int kind) {
+    long cells = (long) width * height;
+    int sides = kind == HEX ? 6 : 4;
+    long edges = cells * (sides / 2);
+
+    return 4 * (cells * sides + cells + 1 + 7 * edges) + 2 * edges + 16 * 11 + 96;
+  }
+}
+
+//Examples and tests for grid topologies
+class ExamplesGridTopology {
+  GridTopology square = new GridTopology(3, 2, GridTopology.SQUARE);
+  GridTopology torus = new GridTopology(3, 2, GridTopology.TORUS);
+  GridTopology hex = new GridTopology(3, 3, GridTopology.HEX);
+
+  // tests the neighbor tables of every kind of grid
+  void testNeighbors(Tester t) {
+    // cell 2 is column 1, row 0 of the 3 x 2 grids
+    t.checkExpect(this.square.neighbor(2, IUtils.TOP), -1);
+    t.checkExpect(this.square.neighbor(2, IUtils.RIGHT), 4);
+    t.checkExpect(this.square.neighbor(2, IUtils.BOTTOM), 3);
+    t.checkExpect(this.square.neighbor(2, IUtils.LEFT), 0);
+    t.checkExpect(this.square.neighbor(4, IUtils.RIGHT), -1);
+
+    t.checkExpect(this.torus.neighbor(2, IUtils.TOP), 3);
+    t.checkExpect(this.torus.neighbor(4, IUtils.RIGHT), 0);
+    t.checkExpect(this.torus.neighbor(0, IUtils.LEFT), 4);
+
+    // column 1 is shifted down, so its diagonal neighbors are a row lower
+    t.checkExpect(this.hex.neighbor(this.hex.cell(0, 1), 1), this.hex.cell(1, 0));
+    t.checkExpect(this.hex.neighbor(this.hex.cell(0, 1), 2), this.hex.cell(1, 1));
+    t.checkExpect(this.hex.neighbor(this.hex.cell(1, 1), 1), this.hex.cell(2, 1));
+    t.checkExpect(this.hex.neighbor(this.hex.cell(1, 1), 2), this.hex.cell(2, 2));
+    t.checkExpect(this.hex.neighbor(this.hex.cell(1, 1), 5), this.hex.cell(0, 1));
+    t.checkExpect(this.hex.neighbor(this.hex.cell(0, 0), 5), -1);
+
+    // a torus one cell high does not wrap onto itself
+    t.checkExpect(new GridTopology(3, 1, GridTopology.TORUS).neighbor(0, IUtils.TOP), -1);
+  }
+
+  // tests the edge list and compressed neighbor rows
+  void testEdges(Tester t) {
+    t.checkExpect(this.square.edges, 7);
+    t.checkExpect(this.torus.edges, 12);
+    t.checkExpect(this.hex.edges, 16);
+
+    // the first edges go down then right, like makeEdges
+    t.checkExpect(this.square.edgeTo[0], 1);
+    t.checkExpect(this.square.edgeTo[1], 2);
+
+    for (GridTopology g : new GridTopology[] { this.square, this.torus, this.hex }) {
+      for (int cell = 0; cell < g.cells; cell++) {
+        for (int i = g.start[cell]; i < g.start[cell + 1]; i++) {
+          t.checkExpect(g.neighbor(cell, g.sideOf[i]), g.neighbors[i]);
+        }
+      }
+    }
+  }
+
+  // tests rotating link masks
+  void testRotate(Tester t) {
+    t.checkExpect(this.square.rotate(0b0001), 0b0010);
+    t.checkExpect(this.square.rotate(0b1001), 0b0011);
+    t.checkExpect(this.hex.rotate(0b100001), 0b000011);
+    t.checkExpect(this.hex.opposite(1), 4);
+    t.checkExpect(this.square.opposite(IUtils.LEFT), IUtils.RIGHT);
+  }
+
+  // tests the tables of turned masks
+  void testTurnTables(Tester t) {
+    t.checkExpect(GridTopology.SQUARE_TURNS[0 << 4 | 0b0011], (byte) 0b0011);
+    t.checkExpect(GridTopology.SQUARE_TURNS[1 << 4 | 0b0011], (byte) 0b0110);
+    t.checkExpect(GridTopology.SQUARE_TURNS[3 << 4 | 0b0011], (byte) 0b1001);
+    t.checkExpect(GridTopology.HEX_TURNS[5 << 6 | 0b000011], (byte) 0b100001);
+
+    GridTopology square = new GridTopology(1, 1, GridTopology.SQUARE);
+    for (int links = 0; links < 16; links++) {
+      t.checkExpect(GridTopology.SQUARE_TURNS[2 << 4 | links],
+          (byte) square.rotate(square.rotate(links)));
+    }
+  }
+
+  // tests that bad grids are rejected
+  void testBadGrids(Tester t) {
+    t.checkConstructorException(new IllegalArgumentException("Unknown kind of grid: 7"),
+        "GridTopology", 2, 2, 7);
+    t.checkConstructorException(
+        new IllegalArgumentException("A board cannot have a negative size"), "GridTopology", -1,
+        2, GridTopology.SQUARE);
+  }
+
+  // tests that the bytes of a shape found before building it are never too few
+  void testShapeBytes(Tester t) {
+    boolean enough = true;
+
+    for (int kind = 0; kind < 3; kind++) {
+      for (int width = 0; width < 6; width++) {
+        for (int height = 0; height < 6; height++) {
+          GridTopology grid = new GridTopology(width, height, kind);
+
+          enough &= GridTopology.bytes(width, height, kind) >= grid.bytes();
+        }
+      }
+    }
+    t.checkExpect(enough, true);
+    t.checkExpect(GridTopology.bytes(100, 100, GridTopology.SQUARE)
+        < 2 * new GridTopology(100, 100, GridTopology.SQUARE).bytes(), true);
+  }
+}
@@ -0,0 +1,284 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents a set of cells that can add, remove and pick a member in constant
+//time: the members are packed at the front of an array, and each cell knows
+//where it sits in it, or -1
+class IndexedCellSet {
+  int[] members;
+  int[] where;
+  int size;
+
+  IndexedCellSet(int cells) {
+    this.members = new int[cells];
+    this.where = new int[cells];
+    Arrays.fill(this.where, -1);
+    this.size = 0;
+  }
+
+  // determines if the given cell is in this set
+  boolean contains(int cell) {
+    return this.where[cell] >= 0;
+  }
+
+  // adds the given cell, if it is not in this set already
+  void add(int cell) {
+    if (this.where[cell] < 0) {
+      this.where[cell] = this.size;
+      this.members[this.size++] = cell;
+    }
+  }
+
+  // removes the given cell, moving the last member into its place
+  void remove(int cell) {
+    int at = this.where[cell];
+
+    if (at >= 0) {
+      int last = this.members[--this.size];
+
+      this.members[at] = last;
+      this.where[last] = at;
+      this.where[cell] = -1;
+    }
+  }
+
+  // adds or removes the given cell
+  void set(int cell, boolean member) {
+    if (member) {
+      this.add(cell);
+    }
+    else {
+      this.remove(cell);
+    }
+  }
+
+  // removes every member
+  void clear() {
+    Arrays.fill(this.where, -1);
+    this.size = 0;
+  }
+
+  // some member of this set, or -1 if it is empty
+  int any() {
+    return this.size == 0 ? -1 : this.members[0];
+  }
+}
+
+//Gives hints toward the solution a board was generated from, which is kept as
+//the wires of each cell before the board was scrambled. The cells whose wires
+//differ from it are kept as a set, updated as cells are turned and as cells gain
+//or lose power, so a hint never searches the board: it is a cell that needs
+//turning, one in or next to the powered part of the board if there is any, and
+//how many clockwise turns it needs.
+class HintEngine {
+  GridTopology topology;
+  byte[] solution;
+  byte[] links; // the wires of each cell now
+  boolean[] powered;
+
+  // the number of each cell's neighbors that are powered, and one more if it is
+  int[] nearPower;
+
+  IndexedCellSet wrong; // the cells whose wires are not as in the solution
+  IndexedCellSet preferred; // the wrong cells that are powered or next to power
+
+  // starts giving hints toward the given solution, from the given wires with no
+  // cell powered
+  HintEngine(GridTopology topology, byte[] solution, byte[] links) {
+    if (solution.length != topology.cells || links.length != topology.cells) {
+      throw new IllegalArgumentException("A hint engine needs wires for every cell");
+    }
+    this.topology = topology;
+    this.solution = new byte[topology.cells];
+    this.links = new byte[topology.cells];
+    this.powered = new boolean[topology.cells];
+    this.nearPower = new int[topology.cells];
+    this.wrong = new IndexedCellSet(topology.cells);
+    this.preferred = new IndexedCellSet(topology.cells);
+    this.reset(solution, links);
+  }
+
+  // starts over toward another solution of a board of the same topology, from
+  // the given wires with no cell powered, reusing every array
+  void reset(byte[] solution, byte[] links) {
+    System.arraycopy(solution, 0, this.solution, 0, this.topology.cells);
+    System.arraycopy(links, 0, this.links, 0, this.topology.cells);
+    Arrays.fill(this.powered, false);
+    Arrays.fill(this.nearPower, 0);
+    this.wrong.clear();
+    this.preferred.clear();
+
+    for (int cell = 0; cell < this.topology.cells; cell++) {
+      this.wrong.set(cell, this.links[cell] != this.solution[cell]);
+    }
+  }
+
+  // starts giving hints for a packed board toward the given solution
+  static HintEngine of(PackedBoard board, byte[] solution) {
+    HintEngine hints = new HintEngine(board.topology, solution, board.links);
+
+    for (int cell = 0; cell < board.topology.cells; cell++) {
+      hints.setPowered(cell, board.powered[cell]);
+    }
+    return hints;
+  }
+
+  // records the new wires of a cell that was turned
+  void setLinks(int cell, int links) {
+    this.links[cell] = (byte) links;
+    this.wrong.set(cell, links != this.solution[cell]);
+    this.preferred.set(cell, this.wrong.contains(cell) && this.nearPower[cell] > 0);
+  }
+
+  // records whether a cell is powered, updating it and its neighbors
+  void setPowered(int cell, boolean powered) {
+    if (this.powered[cell] == powered) {
+      return;
+    }
+    int change = powered ? 1 : -1;
+
+    this.powered[cell] = powered;
+    this.near(cell, change);
+    for (int i = this.topology.start[cell]; i < this.topology.start[cell + 1]; i++) {
+      this.near(this.topology.neighbors[i], change);
+    }
+  }
+
+  // adds to the count of power in or next to a cell
+  void near(int cell, int change) {
+    this.nearPower[cell] += change;
+    this.preferred.set(cell, this.wrong.contains(cell) && this.nearPower[cell] > 0);
+  }
+
+  // the cell to turn next, or -1 if every cell is as in the solution
+  int hint() {
+    return this.preferred.size > 0 ? this.preferred.any() : this.wrong.any();
+  }
+
+  // the fewest clockwise turns that bring a cell to its solution, or -1 if no
+  // number of turns does
+  int turns(int cell) {
+    int links = this.links[cell];
+
+    for (int turns = 0; turns < this.topology.sides; turns++) {
+      if (links == this.solution[cell]) {
+        return turns;
+      }
+      links = this.topology.rotate(links);
+    }
+    return -1;
+  }
+}
+
+//Examples and tests for hints
+class ExamplesHintEngine {
+
+  // a scrambled packed board from the given seed, with its solution
+  PackedBoard board(GridTopology topology, long seed, byte[][] solution) {
+    PackedBoard board = new PackedBoard(topology);
+    Random rand = new Random(seed);
+    int[] tree = new KruskalGenerator().spanningTree(topology, rand);
+
+    for (int i = 0; i < topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    solution[0] = board.links.clone();
+    board.scramble(rand);
+    board.propagate();
+    return board;
+  }
+
+  // tests the indexed set of cells
+  void testIndexedCellSet(Tester t) {
+    IndexedCellSet set = new IndexedCellSet(5);
+
+    t.checkExpect(set.any(), -1);
+    set.add(3);
+    set.add(1);
+    set.add(3);
+    t.checkExpect(set.size, 2);
+    set.remove(3);
+    t.checkExpect(set.any(), 1);
+    t.checkExpect(set.contains(3), false);
+    set.remove(3);
+    set.set(4, true);
+    set.set(1, false);
+    t.checkExpect(set.size, 1);
+    t.checkExpect(set.any(), 4);
+  }
+
+  // tests that following hints solves boards, with each hint next to power
+  // whenever any wrong cell is
+  void testFollowHints(Tester t) {
+    int[] kinds = { GridTopology.SQUARE, GridTopology.TORUS, GridTopology.HEX };
+    boolean solved = true;
+    boolean nearPower = true;
+
+    for (int kind : kinds) {
+      GridTopology grid = new GridTopology(9, 7, kind);
+
+      for (int seed = 0; seed < 5; seed++) {
+        byte[][] solution = new byte[1][];
+        PackedBoard board = this.board(grid, seed, solution);
+        HintEngine hints = HintEngine.of(board, solution[0]);
+        int steps = 0;
+
+        while (hints.hint() >= 0 && steps++ < grid.cells) {
+          int cell = hints.hint();
+          boolean anyNear = false;
+
+          for (int c = 0; c < grid.cells; c++) {
+            anyNear |= hints.wrong.contains(c) && hints.nearPower[c] > 0;
+          }
+          nearPower &= !anyNear || hints.nearPower[cell] > 0;
+
+          for (int turn = hints.turns(cell); turn > 0; turn--) {
+            board.rotate(cell);
+          }
+          board.propagate();
+          hints.setLinks(cell, board.links[cell]);
+          for (int c = 0; c < grid.cells; c++) {
+            hints.setPowered(c, board.powered[c]);
+          }
+        }
+        solved &= board.allPowered() && hints.wrong.size == 0;
+      }
+    }
+    t.checkExpect(solved, true);
+    t.checkExpect(nearPower, true);
+  }
+
+  // tests turns, including symmetric pieces, and bad input
+  void testTurns(Tester t) {
+    GridTopology grid = new GridTopology(2, 1, GridTopology.SQUARE);
+    HintEngine hints = new HintEngine(grid, new byte[] { 0b0010, 0b1010 },
+        new byte[] { 0b0001, 0b0101 });
+
+    t.checkExpect(hints.turns(0), 1);
+    // a straight wire is in place after one turn, not three
+    t.checkExpect(hints.turns(1), 1);
+    hints.setLinks(1, 0b0011);
+    t.checkExpect(hints.turns(1), -1);
+    hints.setLinks(1, 0b1010);
+    t.checkExpect(hints.turns(1), 0);
+    t.checkExpect(hints.hint(), 0);
+
+    hints.setPowered(1, true);
+    t.checkExpect(hints.preferred.contains(0), true);
+    hints.setPowered(1, false);
+    t.checkExpect(hints.preferred.size, 0);
+
+    hints.setPowered(1, true);
+    hints.reset(new byte[] { 0b0010, 0b1000 }, new byte[] { 0b0010, 0b0001 });
+    t.checkExpect(hints.hint(), 1);
+    t.checkExpect(hints.turns(1), 3);
+    t.checkExpect(hints.powered[1], false);
+    t.checkExpect(hints.preferred.size, 0);
+
+    t.checkConstructorException(
+        new IllegalArgumentException("A hint engine needs wires for every cell"), "HintEngine",
+        grid, new byte[2], new byte[1]);
+  }
+}
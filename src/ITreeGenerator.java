@@ -0,0 +1,12 @@
+import java.util.Random;
+
+//Represents a strategy that chooses the spanning tree the wires of a board follow
+interface ITreeGenerator {
+
+  // chooses the edges of a spanning tree of the topology, returning their ids in
+  // the first cells - 1 places of an array that is reused by the next call
+  int[] spanningTree(GridTopology topology, Random rand);
+
+  // the name of this strategy, as shown in benchmarks
+  String name();
+}
@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+//Represents a binary min-heap of the ints 0 until capacity, keyed by ints, that
+//knows where each element is so that its key can be decreased in place
+class IndexedMinHeap {
+  int[] heap; // elements in heap order
+  int[] position; // the position of each element in heap, or -1 if absent
+  int[] key; // the key of each element
+  int size;
+
+  IndexedMinHeap(int capacity) {
+    this.heap = new int[capacity];
+    this.position = new int[capacity];
+    this.key = new int[capacity];
+    this.size = 0;
+    Arrays.fill(this.position, -1);
+  }
+
+  // removes every element
+  void clear() {
+    for (int i = 0; i < this.size; i++) {
+      this.position[this.heap[i]] = -1;
+    }
+    this.size = 0;
+  }
+
+  // determines if this heap has no elements
+  boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  // determines if the given element is in this heap
+  boolean contains(int element) {
+    return this.position[element] >= 0;
+  }
+
+  // the key of an element in this heap
+  int keyOf(int element) {
+    return this.key[element];
+  }
+
+  // adds an element that is not in this heap yet
+  void insert(int element, int key) {
+    this.key[element] = key;
+    this.heap[this.size] = element;
+    this.position[element] = this.size;
+    this.size++;
+    this.siftUp(this.size - 1);
+  }
+
+  // lowers the key of an element in this heap
+  void decreaseKey(int element, int key) {
+    this.key[element] = key;
+    this.siftUp(this.position[element]);
+  }
+
+  // removes and returns the element with the smallest key
+  int pollMin() {
+    int min = this.heap[0];
+
+    this.size--;
+    this.position[min] = -1;
+    if (this.size > 0) {
+      this.heap[0] = this.heap[this.size];
+      this.position[this.heap[0]] = 0;
+      this.siftDown(0);
+    }
+    return min;
+  }
+
+  // moves the element at index i up until its parent's key is not larger
+  void siftUp(int i) {
+    int element = this.heap[i];
+
+    while (i > 0 && this.key[this.heap[(i - 1) / 2]] > this.key[element]) {
+      this.heap[i] = this.heap[(i - 1) / 2];
+      this.position[this.heap[i]] = i;
+      i = (i - 1) / 2;
+    }
+    this.heap[i] = element;
+    this.position[element] = i;
+  }
+
+  // moves the element at index i down until no child has a smaller key
+  void siftDown(int i) {
+    int element = this.heap[i];
+
+    while (2 * i + 1 < this.size) {
+      int child = 2 * i + 1;
+      if (child + 1 < this.size && this.key[this.heap[child + 1]] < this.key[this.heap[child]]) {
+        child++;
+      }
+      if (this.key[this.heap[child]] >= this.key[element]) {
+        break;
+      }
+      this.heap[i] = this.heap[child];
+      this.position[this.heap[i]] = i;
+      i = child;
+    }
+    this.heap[i] = element;
+    this.position[element] = i;
+  }
+}
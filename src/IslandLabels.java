@@ -0,0 +1,251 @@
+import java.util.Random;
+
+import tester.Tester;
+
+//Labels the islands of a packed board: the groups of cells joined by wires that
+//meet from both sides, so each unpowered island can be drawn in its own color.
+//The labels are a union-find over arrays, built once, whose roots are the ids of
+//the islands and keep their sizes. Each island's cells are also chained in a
+//cycle through next, which joining two islands splices in constant time. A union
+//can't be undone, so when a cell turns, its whole old island is taken apart and
+//joined up again from its wires: a turn costs O(island), not O(board), but the
+//island of a board that is nearly solved is nearly the whole board, and then a
+//turn costs about as much as labelling it again with build.
+class IslandLabels {
+  PackedBoard board;
+  int[] parent;
+  int[] size; // the cells of each island, kept at its root
+  int[] next; // the next cell of the same island
+  int islands;
+
+  // the cells of the island being joined up again
+  int[] members;
+
+  IslandLabels(PackedBoard board) {
+    int cells = board.topology.cells;
+
+    this.board = board;
+    this.parent = new int[cells];
+    this.size = new int[cells];
+    this.next = new int[cells];
+    this.members = new int[cells];
+    this.build();
+  }
+
+  // labels every island from the board's wires
+  void build() {
+    GridTopology t = this.board.topology;
+
+    for (int cell = 0; cell < t.cells; cell++) {
+      this.single(cell);
+    }
+    this.islands = t.cells;
+    for (int edge = 0; edge < t.edges; edge++) {
+      int from = t.edgeFrom[edge];
+      int side = t.edgeSide[edge];
+
+      if (this.board.hasSide(from, side)
+          && this.board.hasSide(t.edgeTo[edge], t.opposite(side))) {
+        this.union(from, t.edgeTo[edge]);
+      }
+    }
+  }
+
+  // updates the labels after the given cell has been turned
+  void rotated(int cell) {
+    GridTopology t = this.board.topology;
+    int count = 0;
+    int member = cell;
+
+    // the old island falls apart into single cells
+    do {
+      this.members[count++] = member;
+      member = this.next[member];
+    } while (member != cell);
+    for (int i = 0; i < count; i++) {
+      this.single(this.members[i]);
+    }
+    this.islands += count - 1;
+
+    // no other wires changed, so its cells only meet each other, and the turned
+    // cell may also meet other islands
+    for (int i = 0; i < count; i++) {
+      int from = this.members[i];
+
+      for (int n = t.start[from]; n < t.start[from + 1]; n++) {
+        int to = t.neighbors[n];
+        int side = t.sideOf[n];
+
+        if (this.board.hasSide(from, side) && this.board.hasSide(to, t.opposite(side))) {
+          this.union(from, to);
+        }
+      }
+    }
+  }
+
+  // makes a cell an island of its own
+  void single(int cell) {
+    this.parent[cell] = cell;
+    this.size[cell] = 1;
+    this.next[cell] = cell;
+  }
+
+  // the root of a cell's island, halving the path to it on the way
+  int find(int cell) {
+    while (this.parent[cell] != cell) {
+      this.parent[cell] = this.parent[this.parent[cell]];
+      cell = this.parent[cell];
+    }
+    return cell;
+  }
+
+  // joins the islands of two cells, the smaller under the larger
+  void union(int a, int b) {
+    int ra = this.find(a);
+    int rb = this.find(b);
+
+    if (ra == rb) {
+      return;
+    }
+    if (this.size[ra] < this.size[rb]) {
+      int swap = ra;
+      ra = rb;
+      rb = swap;
+    }
+    this.parent[rb] = ra;
+    this.size[ra] += this.size[rb];
+    int after = this.next[ra];
+    this.next[ra] = this.next[rb];
+    this.next[rb] = after;
+    this.islands--;
+  }
+
+  // the id of the island of a cell, the same for every cell of it
+  int component(int cell) {
+    return this.find(cell);
+  }
+
+  // the number of cells in the island of a cell
+  int size(int cell) {
+    return this.size[this.find(cell)];
+  }
+}
+
+//Examples and tests for labelling islands
+class ExamplesIslandLabels {
+
+  // tests the islands of a tiny board
+  void testLine(Tester t) {
+    PackedBoard line = new PackedBoard(new GridTopology(4, 1, GridTopology.SQUARE));
+    line.connect(0);
+    line.connect(1);
+    line.connect(2);
+    IslandLabels islands = new IslandLabels(line);
+
+    t.checkExpect(islands.islands, 1);
+    t.checkExpect(islands.size(3), 4);
+    t.checkExpect(islands.component(0), islands.component(3));
+
+    // a straight wire across the line cuts off the first cell and itself
+    line.rotate(1);
+    islands.rotated(1);
+    t.checkExpect(islands.islands, 3);
+    t.checkExpect(islands.size(0), 1);
+    t.checkExpect(islands.size(3), 2);
+
+    // and turning it again joins everything back up
+    line.rotate(1);
+    islands.rotated(1);
+    t.checkExpect(islands.islands, 1);
+    t.checkExpect(islands.size(1), 4);
+
+    // turning the end leaves the rest as one island
+    line.rotate(3);
+    islands.rotated(3);
+    t.checkExpect(islands.islands, 2);
+    t.checkExpect(islands.size(0), 3);
+    t.checkExpect(islands.size(3), 1);
+    t.checkExpect(islands.component(0), islands.component(2));
+    t.checkExpect(islands.component(2) == islands.component(3), false);
+  }
+
+  // tests that labels kept up through many turns match labels made from scratch
+  void testIncremental(Tester t) {
+    int[] kinds = { GridTopology.SQUARE, GridTopology.TORUS, GridTopology.HEX };
+    boolean same = true;
+
+    for (int kind : kinds) {
+      PackedBoard board = new PackedBoard(new GridTopology(17, 13, kind));
+      Random rand = new Random(kind);
+      board.generate(new KruskalGenerator(), rand);
+      IslandLabels islands = new IslandLabels(board);
+
+      for (int move = 0; move < 2000; move++) {
+        int cell = rand.nextInt(board.topology.cells);
+
+        board.rotate(cell);
+        islands.rotated(cell);
+        if (move % 100 == 0) {
+          IslandLabels fresh = new IslandLabels(board);
+
+          same &= fresh.islands == islands.islands;
+          for (int a = 0; a < board.topology.cells; a++) {
+            int b = rand.nextInt(board.topology.cells);
+
+            same &= fresh.size(a) == islands.size(a)
+                && (fresh.component(a) == fresh.component(b))
+                    == (islands.component(a) == islands.component(b));
+          }
+        }
+      }
+    }
+    t.checkExpect(same, true);
+  }
+
+  // tests turns on a board that is all one island, each of which takes the whole
+  // board apart and joins it up again
+  void testLargeIsland(Tester t) {
+    PackedBoard board = new PackedBoard(new GridTopology(120, 120, GridTopology.SQUARE));
+    int[] tree = new KruskalGenerator().spanningTree(board.topology, new Random(5));
+    for (int i = 0; i < board.topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    IslandLabels islands = new IslandLabels(board);
+    Random rand = new Random(7);
+    boolean same = true;
+
+    t.checkExpect(islands.size(0), board.topology.cells);
+    for (int move = 0; move < 20; move++) {
+      int cell = rand.nextInt(board.topology.cells);
+
+      board.rotate(cell);
+      islands.rotated(cell);
+      IslandLabels fresh = new IslandLabels(board);
+      same &= fresh.islands == islands.islands && fresh.size(cell) == islands.size(cell);
+
+      // turning it the rest of the way round puts the board back together
+      for (int turn = 1; turn < 4; turn++) {
+        board.rotate(cell);
+        islands.rotated(cell);
+      }
+      same &= islands.islands == 1 && islands.size(cell) == board.topology.cells;
+    }
+    t.checkExpect(same, true);
+  }
+
+  // tests that a powered board is one island and a station's island is powered
+  void testPowered(Tester t) {
+    PackedBoard board = new PackedBoard(new GridTopology(12, 9, GridTopology.SQUARE));
+    int[] tree = new PrimGenerator().spanningTree(board.topology, new Random(3));
+    for (int i = 0; i < board.topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    IslandLabels islands = new IslandLabels(board);
+    t.checkExpect(islands.islands, 1);
+
+    board.scramble(new Random(8));
+    board.propagate();
+    islands.build();
+    t.checkExpect(islands.size(board.station), board.poweredCount());
+  }
+}
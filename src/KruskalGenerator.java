@@ -0,0 +1,84 @@
+import java.util.Arrays;
+import java.util.Random;
+
+//Generates boards with Kruskal's algorithm over randomly weighted edges,
+//i.e., the original LightEmAll boards
+class KruskalGenerator extends AGridGenerator {
+  int[] weights; // the weight of each edge
+  int[] sorted; // edge ids sorted by weight
+  int[] weightCounts; // counting sort buckets
+  int[] parents; // union-find over cells
+
+  // resizes the buffers for the given topology
+  void resize(GridTopology topology) {
+    this.weights = new int[topology.edges];
+    this.sorted = new int[topology.edges];
+    this.parents = new int[topology.cells];
+  }
+
+  // produces the minimum spanning tree of randomly weighted edges, drawing the
+  // weights in edge order like makeEdges
+  public int[] spanningTree(GridTopology topology, Random rand) {
+    this.prepare(topology);
+    for (int e = 0; e < topology.edges; e++) {
+      this.weights[e] = rand.nextInt(25);
+    }
+    return this.minimumTree(topology, this.weights);
+  }
+
+  // produces the minimum spanning tree of the topology for the given edge weights,
+  // preferring earlier edges among edges of the same weight
+  int[] minimumTree(GridTopology topology, int[] weights) {
+    int maxWeight = 0;
+    int size = 0;
+
+    this.prepare(topology);
+    for (int e = 0; e < topology.edges; e++) {
+      maxWeight = Math.max(maxWeight, weights[e]);
+    }
+    if (this.weightCounts == null || this.weightCounts.length < maxWeight + 2) {
+      this.weightCounts = new int[maxWeight + 2];
+    }
+    Arrays.fill(this.weightCounts, 0);
+
+    // a stable counting sort gives the same order as sorting with an EdgeComparator
+    for (int e = 0; e < topology.edges; e++) {
+      this.weightCounts[weights[e] + 1]++;
+    }
+    for (int w = 1; w < this.weightCounts.length; w++) {
+      this.weightCounts[w] += this.weightCounts[w - 1];
+    }
+    for (int e = 0; e < topology.edges; e++) {
+      this.sorted[this.weightCounts[weights[e]]++] = e;
+    }
+
+    for (int cell = 0; cell < topology.cells; cell++) {
+      this.parents[cell] = cell;
+    }
+    for (int i = 0; i < topology.edges && size < topology.cells - 1; i++) {
+      int edge = this.sorted[i];
+      int from = this.find(topology.edgeFrom[edge]);
+      int to = this.find(topology.edgeTo[edge]);
+
+      if (from != to) {
+        this.tree[size++] = edge;
+        this.parents[to] = from;
+      }
+    }
+    return this.tree;
+  }
+
+  // finds the representative of the given cell, halving the path on the way up
+  int find(int cell) {
+    while (this.parents[cell] != cell) {
+      this.parents[cell] = this.parents[this.parents[cell]];
+      cell = this.parents[cell];
+    }
+    return cell;
+  }
+
+  // the name of this strategy
+  public String name() {
+    return "kruskal";
+  }
+}
@@ -0,0 +1,682 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import tester.Tester;
+
+//Represents one result on a leaderboard: the clicks and seconds a board was won
+//in, and its place in the order results were recorded
+class LeaderboardEntry {
+  int clicks;
+  int seconds;
+  long sequence;
+
+  LeaderboardEntry(int clicks, int seconds, long sequence) {
+    this.clicks = clicks;
+    this.seconds = seconds;
+    this.sequence = sequence;
+  }
+}
+
+//Represents a sorted run of results on disk, memory mapped, holding the records
+//of the log from one of its sequences up to another
+class SortedRun {
+  Path file;
+  long from;
+  long to;
+  ByteBuffer records; // the mapping, past the header
+  int count;
+
+  // maps the run in the given file
+  SortedRun(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      this.file = file;
+      this.from = mapped.getLong(0);
+      this.to = mapped.getLong(8);
+      mapped.position(Leaderboard.RUN_HEADER);
+      this.records = mapped.slice();
+      this.count = this.records.capacity() / Leaderboard.RECORD;
+    }
+  }
+}
+
+//Represents the results of won games on disk, ranked separately for each board
+//size and seed: fewer clicks first, then fewer seconds, then whoever got there
+//first. Every result is appended to a log of fixed size records, synced to disk
+//once every so many results rather than after each one. The log is also kept as
+//sorted run files that are memory mapped, plus a small sorted run in memory of
+//the results recorded since the last run was written, so top results and ranks
+//are binary searches over the runs, however many results there are. Once the run
+//in memory gets long it is written out, merged with the newest runs on disk that
+//are less than twice its size, so the runs at least double in size from newest to
+//oldest. There are then only a logarithmic number of them, and each result is
+//rewritten a logarithmic number of times rather than with every merge.
+class Leaderboard {
+  // a record: width, height, seed, clicks, seconds and sequence
+  static final int RECORD = 32;
+
+  // a run file starts with the first log record it holds and the one after its
+  // last
+  static final int RUN_HEADER = 16;
+
+  Path dir;
+  Path log; // every result, in the order recorded
+
+  FileChannel logChannel;
+  ByteBuffer unsynced; // records not yet written to the log
+  int syncEvery; // the records to buffer before writing and syncing the log
+  long logged; // the records in the log, written or not
+
+  ArrayList<SortedRun> runs; // the runs on disk, oldest first
+  long covered; // the log records the runs hold
+  int indexed; // the records in the runs
+  long written; // the records written to runs since opening
+
+  ByteBuffer recent; // the records since the last run was written, sorted
+  int recentCount;
+  int mergeEvery; // the records to collect before writing them as a run
+
+  Leaderboard(Path dir) {
+    this(dir, 64, 4096);
+  }
+
+  // opens the leaderboard kept in the given directory, making it if need be,
+  // and reads back the results logged since its last run was written
+  Leaderboard(Path dir, int syncEvery, int mergeEvery) {
+    if (syncEvery < 1 || mergeEvery < 1) {
+      throw new IllegalArgumentException("A leaderboard syncs and merges at least every result");
+    }
+    this.syncEvery = syncEvery;
+    this.mergeEvery = mergeEvery;
+    this.dir = dir;
+    this.log = dir.resolve("results.log");
+    this.unsynced = ByteBuffer.allocate(syncEvery * RECORD);
+    this.recent = ByteBuffer.allocate(Math.min(mergeEvery, 1024) * RECORD);
+
+    try {
+      Files.createDirectories(dir);
+      this.logChannel = FileChannel.open(this.log, StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+      // a crash may have cut the last record short
+      this.logged = this.logChannel.size() / RECORD;
+      this.logChannel.truncate(this.logged * RECORD);
+      this.logChannel.position(this.logged * RECORD);
+
+      this.openRuns();
+      ByteBuffer record = ByteBuffer.allocate(RECORD);
+
+      for (long r = this.covered; r < this.logged; r++) {
+        record.clear();
+        this.logChannel.read(record, r * RECORD);
+        this.addRecent(record, 0);
+      }
+      if (this.recentCount >= this.mergeEvery) {
+        this.merge();
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // the file of a run holding the given log records
+  Path runFile(long from, long to) {
+    return this.dir.resolve("results." + from + "-" + to + ".run");
+  }
+
+  // maps the runs that hold the log from its start, taking the widest run at each
+  // point, and deletes any others a crash in the middle of a merge left behind
+  void openRuns() throws IOException {
+    ArrayList<SortedRun> found = new ArrayList<SortedRun>();
+
+    this.runs = new ArrayList<SortedRun>();
+    this.covered = 0;
+    this.indexed = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir, "results.*")) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+
+        if (name.endsWith(".run")) {
+          found.add(new SortedRun(file));
+        }
+        else if (name.endsWith(".tmp")) {
+          Files.delete(file);
+        }
+      }
+    }
+    while (true) {
+      SortedRun widest = null;
+
+      for (SortedRun run : found) {
+        if (run.from == this.covered && (widest == null || run.to > widest.to)) {
+          widest = run;
+        }
+      }
+      if (widest == null) {
+        break;
+      }
+      this.runs.add(widest);
+      this.covered = widest.to;
+      this.indexed += widest.count;
+    }
+    for (SortedRun run : found) {
+      if (!this.runs.contains(run)) {
+        Files.delete(run.file);
+      }
+    }
+  }
+
+  // records a won game, giving back its rank among the results of its board
+  long record(int width, int height, long seed, int clicks, int seconds) {
+    if (clicks < 0 || seconds < 0) {
+      throw new IllegalArgumentException("A result cannot have negative clicks or seconds");
+    }
+    int at = this.unsynced.position();
+
+    this.unsynced.putInt(width).putInt(height).putLong(seed).putInt(clicks).putInt(seconds)
+        .putLong(this.logged);
+    this.logged++;
+    this.addRecent(this.unsynced, at);
+
+    if (!this.unsynced.hasRemaining()) {
+      this.sync();
+    }
+    if (this.recentCount >= this.mergeEvery) {
+      this.merge();
+    }
+    return this.rank(width, height, seed, clicks, seconds);
+  }
+
+  // adds the record at the given index of the given buffer to the recent run,
+  // keeping it sorted
+  void addRecent(ByteBuffer from, int at) {
+    if (this.recent.capacity() < (this.recentCount + 1) * RECORD) {
+      ByteBuffer larger = ByteBuffer.allocate(this.recent.capacity() * 2);
+
+      larger.put(this.recent.array(), 0, this.recentCount * RECORD);
+      this.recent = larger;
+    }
+    int place = search(this.recent, this.recentCount, from.getInt(at), from.getInt(at + 4),
+        from.getLong(at + 8), from.getInt(at + 16), from.getInt(at + 20), true);
+    byte[] run = this.recent.array();
+
+    System.arraycopy(run, place * RECORD, run, (place + 1) * RECORD,
+        (this.recentCount - place) * RECORD);
+    System.arraycopy(from.array(), at, run, place * RECORD, RECORD);
+    this.recentCount++;
+  }
+
+  // writes the buffered records to the log and syncs it to disk
+  void sync() {
+    try {
+      this.unsynced.flip();
+      while (this.unsynced.hasRemaining()) {
+        this.logChannel.write(this.unsynced);
+      }
+      this.unsynced.clear();
+      this.logChannel.force(false);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // writes the recent run out, merged with the newest runs on disk that are less
+  // than twice the size of what is being merged, into a new run that then
+  // replaces them
+  void merge() {
+    this.sync();
+    if (this.recentCount == 0) {
+      return;
+    }
+    int first = this.runs.size();
+    long merged = this.recentCount;
+
+    while (first > 0 && this.runs.get(first - 1).count < 2 * merged) {
+      first--;
+      merged += this.runs.get(first).count;
+    }
+    int ways = this.runs.size() - first + 1;
+    ByteBuffer[] sources = new ByteBuffer[ways];
+    int[] next = new int[ways];
+    int[] ends = new int[ways];
+
+    for (int s = 0; s < ways - 1; s++) {
+      sources[s] = this.runs.get(first + s).records;
+      ends[s] = this.runs.get(first + s).count;
+    }
+    sources[ways - 1] = this.recent;
+    ends[ways - 1] = this.recentCount;
+
+    long from = first == this.runs.size() ? this.covered : this.runs.get(first).from;
+    Path written = this.runFile(from, this.logged);
+    Path temp = written.resolveSibling(written.getFileName() + ".tmp");
+
+    try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer block = ByteBuffer.allocate(RECORD * 1024);
+
+      block.putLong(from).putLong(this.logged);
+      for (long left = merged; left > 0; left--) {
+        int least = -1;
+
+        for (int s = 0; s < ways; s++) {
+          if (next[s] < ends[s] && (least < 0
+              || compare(sources[s], next[s], sources[least], next[least]) < 0)) {
+            least = s;
+          }
+        }
+        copy(sources[least], next[least]++, block);
+        this.written++;
+        if (block.remaining() < RECORD) {
+          write(out, block);
+        }
+      }
+      write(out, block);
+      out.force(true);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    // once the new run is in place it covers the ones it came from, so a crash
+    // before they are deleted only leaves files to clean up on the next open
+    try {
+      Files.move(temp, written, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      while (this.runs.size() > first) {
+        SortedRun old = this.runs.remove(this.runs.size() - 1);
+
+        this.indexed -= old.count;
+        Files.delete(old.file);
+      }
+      SortedRun run = new SortedRun(written);
+      this.runs.add(run);
+      this.indexed += run.count;
+      this.covered = this.logged;
+      this.recentCount = 0;
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // copies the given record of a run to the end of a block
+  static void copy(ByteBuffer run, int record, ByteBuffer block) {
+    for (int b = 0; b < RECORD; b += 8) {
+      block.putLong(run.getLong(record * RECORD + b));
+    }
+  }
+
+  // writes out and empties a block
+  static void write(FileChannel out, ByteBuffer block) throws IOException {
+    block.flip();
+    while (block.hasRemaining()) {
+      out.write(block);
+    }
+    block.clear();
+  }
+
+  // syncs the log and writes out the recent results, so the next open reads
+  // nothing back
+  void close() {
+    this.merge();
+    try {
+      this.logChannel.close();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // compares two records of runs by board, then clicks, seconds and sequence
+  static int compare(ByteBuffer a, int i, ByteBuffer b, int j) {
+    int order = compare(a, i, b.getInt(j * RECORD), b.getInt(j * RECORD + 4),
+        b.getLong(j * RECORD + 8), b.getInt(j * RECORD + 16), b.getInt(j * RECORD + 20));
+
+    return order != 0 ? order
+        : Long.compare(a.getLong(i * RECORD + 24), b.getLong(j * RECORD + 24));
+  }
+
+  // compares a record of a run with a board and result, ignoring its sequence
+  static int compare(ByteBuffer run, int i, int width, int height, long seed, int clicks,
+      int seconds) {
+    int at = i * RECORD;
+    int order = Integer.compare(run.getInt(at), width);
+
+    if (order == 0) {
+      order = Integer.compare(run.getInt(at + 4), height);
+    }
+    if (order == 0) {
+      order = Long.compare(run.getLong(at + 8), seed);
+    }
+    if (order == 0) {
+      order = Integer.compare(run.getInt(at + 16), clicks);
+    }
+    if (order == 0) {
+      order = Integer.compare(run.getInt(at + 20), seconds);
+    }
+    return order;
+  }
+
+  // the first record of a sorted run of the given length that comes after the
+  // given board and result, or that is not before it if not after
+  static int search(ByteBuffer run, int count, int width, int height, long seed, int clicks,
+      int seconds, boolean after) {
+    int low = 0;
+    int high = count;
+
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      int order = compare(run, mid, width, height, seed, clicks, seconds);
+
+      if (order < 0 || (after && order == 0)) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  // the records of the given run, counting the runs on disk oldest first and then
+  // the recent run
+  ByteBuffer run(int r) {
+    return r < this.runs.size() ? this.runs.get(r).records : this.recent;
+  }
+
+  // the number of records in the given run
+  int runCount(int r) {
+    return r < this.runs.size() ? this.runs.get(r).count : this.recentCount;
+  }
+
+  // the number of results recorded for a board
+  long count(int width, int height, long seed) {
+    long count = 0;
+
+    for (int r = 0; r <= this.runs.size(); r++) {
+      count += search(this.run(r), this.runCount(r), width, height, seed, Integer.MAX_VALUE,
+          Integer.MAX_VALUE, true)
+          - search(this.run(r), this.runCount(r), width, height, seed, 0, 0, false);
+    }
+    return count;
+  }
+
+  // the place a result would take on the leaderboard of its board, counting from
+  // 1: one past the number of results strictly better than it
+  long rank(int width, int height, long seed, int clicks, int seconds) {
+    long rank = 1;
+
+    for (int r = 0; r <= this.runs.size(); r++) {
+      rank += search(this.run(r), this.runCount(r), width, height, seed, clicks, seconds, false)
+          - search(this.run(r), this.runCount(r), width, height, seed, 0, 0, false);
+    }
+    return rank;
+  }
+
+  // the best results of a board, at most the given number of them, best first
+  ArrayList<LeaderboardEntry> top(int width, int height, long seed, int k) {
+    ArrayList<LeaderboardEntry> best = new ArrayList<LeaderboardEntry>();
+    int ways = this.runs.size() + 1;
+    int[] next = new int[ways];
+    int[] ends = new int[ways];
+
+    for (int r = 0; r < ways; r++) {
+      next[r] = search(this.run(r), this.runCount(r), width, height, seed, 0, 0, false);
+      ends[r] = search(this.run(r), this.runCount(r), width, height, seed, Integer.MAX_VALUE,
+          Integer.MAX_VALUE, true);
+    }
+    while (best.size() < k) {
+      int least = -1;
+
+      for (int r = 0; r < ways; r++) {
+        if (next[r] < ends[r] && (least < 0
+            || compare(this.run(r), next[r], this.run(least), next[least]) < 0)) {
+          least = r;
+        }
+      }
+      if (least < 0) {
+        break;
+      }
+      ByteBuffer run = this.run(least);
+      int at = next[least]++ * RECORD;
+
+      best.add(new LeaderboardEntry(run.getInt(at + 16), run.getInt(at + 20),
+          run.getLong(at + 24)));
+    }
+    return best;
+  }
+}
+
+//Times recording and querying a leaderboard with many results
+class LeaderboardBenchmark {
+
+  // runs the benchmark in the given directory, optionally given the number of
+  // results and of boards they are spread over
+  public static void main(String[] args) throws IOException {
+    Path dir = Files.createTempDirectory("leaderboard");
+    int results = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int boards = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    java.util.Random rand = new java.util.Random(1);
+
+    Leaderboard scores = new Leaderboard(dir, 4096, 4096);
+    long start = System.nanoTime();
+    for (int i = 0; i < results; i++) {
+      scores.record(10, 10, rand.nextInt(boards), 50 + rand.nextInt(500), rand.nextInt(600));
+    }
+    scores.close();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("recorded %d results in %.2f s (%.0f results/s)%n", results, seconds,
+        results / seconds);
+
+    start = System.nanoTime();
+    scores = new Leaderboard(dir);
+    System.out.printf("reopened in %.2f ms%n", (System.nanoTime() - start) / 1e6);
+
+    int queries = 1_000_000;
+    long sink = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < queries; i++) {
+      sink += scores.rank(10, 10, rand.nextInt(boards), 50 + rand.nextInt(500),
+          rand.nextInt(600));
+    }
+    double rankNanos = (double) (System.nanoTime() - start) / queries;
+
+    start = System.nanoTime();
+    for (int i = 0; i < queries / 10; i++) {
+      sink += scores.top(10, 10, rand.nextInt(boards), 10).size();
+    }
+    double topNanos = (double) (System.nanoTime() - start) / (queries / 10);
+    System.out.printf("rank in %.2f us, top 10 in %.2f us (%d)%n", rankNanos / 1000,
+        topNanos / 1000, sink);
+    scores.close();
+  }
+}
+
+//Examples and tests for leaderboards
+class ExamplesLeaderboard {
+
+  // a fresh directory to keep a leaderboard in
+  Path dir() {
+    try {
+      return Files.createTempDirectory("leaderboard");
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // tests ranks and top results before and after merging
+  void testRanks(Tester t) {
+    Leaderboard scores = new Leaderboard(this.dir(), 2, 4);
+
+    t.checkExpect(scores.record(5, 5, 1, 30, 20), 1L);
+    t.checkExpect(scores.record(5, 5, 1, 25, 40), 1L);
+    t.checkExpect(scores.record(5, 5, 1, 30, 10), 2L);
+    // another seed and another size are ranked on their own
+    t.checkExpect(scores.record(5, 5, 2, 99, 99), 1L);
+    t.checkExpect(scores.record(6, 5, 1, 40, 40), 1L);
+    t.checkExpect(scores.record(5, 5, 1, 30, 20), 3L);
+
+    t.checkExpect(scores.indexed, 4);
+    t.checkExpect(scores.recentCount, 2);
+    t.checkExpect(scores.count(5, 5, 1), 4L);
+    t.checkExpect(scores.count(5, 5, 3), 0L);
+    t.checkExpect(scores.rank(5, 5, 1, 1, 1), 1L);
+    t.checkExpect(scores.rank(5, 5, 1, 30, 21), 5L);
+
+    ArrayList<LeaderboardEntry> best = scores.top(5, 5, 1, 3);
+    t.checkExpect(best.size(), 3);
+    t.checkExpect(best.get(0).clicks, 25);
+    t.checkExpect(best.get(1).seconds, 10);
+    // equal results go in the order they were recorded
+    t.checkExpect(best.get(2).sequence, 0L);
+    t.checkExpect(scores.top(5, 5, 1, 10).get(3).sequence, 5L);
+    t.checkExpect(scores.top(5, 5, 3, 10).size(), 0);
+    scores.close();
+  }
+
+  // tests that results survive closing, and results never merged are read back
+  // from the log
+  void testReopen(Tester t) {
+    Path dir = this.dir();
+    Leaderboard scores = new Leaderboard(dir, 1, 100);
+
+    for (int i = 0; i < 10; i++) {
+      scores.record(4, 4, 7, 100 - i, i);
+    }
+    t.checkExpect(scores.indexed, 0);
+    // left open without merging, as after a crash
+    Leaderboard again = new Leaderboard(dir, 1, 100);
+    t.checkExpect(again.count(4, 4, 7), 10L);
+    t.checkExpect(again.top(4, 4, 7, 1).get(0).clicks, 91);
+    again.close();
+
+    Leaderboard reopened = new Leaderboard(dir);
+    t.checkExpect(reopened.indexed, 10);
+    t.checkExpect(reopened.recentCount, 0);
+    t.checkExpect(reopened.rank(4, 4, 7, 95, 0), 5L);
+    t.checkExpect(reopened.record(4, 4, 7, 50, 50), 1L);
+    t.checkExpect(reopened.top(4, 4, 7, 1).get(0).sequence, 10L);
+    reopened.close();
+  }
+
+  // tests that many results stay sorted across several merges
+  void testMerges(Tester t) {
+    Leaderboard scores = new Leaderboard(this.dir(), 16, 100);
+    java.util.Random rand = new java.util.Random(3);
+    int[] clicks = new int[1000];
+
+    for (int i = 0; i < 1000; i++) {
+      clicks[i] = rand.nextInt(500);
+      scores.record(8, 8, i % 3, clicks[i], 0);
+    }
+    t.checkExpect(scores.indexed, 1000);
+
+    ArrayList<LeaderboardEntry> best = scores.top(8, 8, 1, 1000);
+    boolean ordered = true;
+    for (int i = 1; i < best.size(); i++) {
+      ordered &= best.get(i - 1).clicks <= best.get(i).clicks;
+    }
+    t.checkExpect(best.size(), 333);
+    t.checkExpect(ordered, true);
+
+    int better = 0;
+    for (int i = 0; i < 1000; i++) {
+      better += i % 3 == 0 && clicks[i] < 250 ? 1 : 0;
+    }
+    t.checkExpect(scores.rank(8, 8, 0, 250, 0), better + 1L);
+
+    t.checkException(
+        new IllegalArgumentException("A result cannot have negative clicks or seconds"),
+        scores, "record", 8, 8, 0L, -1, 0);
+    scores.close();
+  }
+
+  // tests that runs grow geometrically, so there are few of them and each result
+  // is only rewritten a few times
+  void testTiers(Tester t) {
+    Leaderboard scores = new Leaderboard(this.dir(), 64, 10);
+    java.util.Random rand = new java.util.Random(5);
+    boolean doubling = true;
+
+    for (int i = 0; i < 20000; i++) {
+      scores.record(3, 3, i % 7, rand.nextInt(100), 0);
+      for (int r = 1; r < scores.runs.size(); r++) {
+        doubling &= scores.runs.get(r - 1).count >= 2 * scores.runs.get(r).count;
+      }
+    }
+    t.checkExpect(doubling, true);
+    t.checkRange(scores.runs.size(), 1, 13);
+    t.checkExpect(scores.indexed, 20000);
+    // rewriting everything on each merge would write about 20 million records
+    t.checkExpect(scores.written < 20000L * 13, true);
+    t.checkExpect(scores.count(3, 3, 0), 2858L);
+    scores.close();
+  }
+
+  // tests that the runs a crash left behind in the middle of a merge are
+  // cleaned up on opening
+  void testCrashedMerge(Tester t) {
+    Path dir = this.dir();
+    Leaderboard scores = new Leaderboard(dir, 1, 4);
+
+    for (int i = 0; i < 4; i++) {
+      scores.record(2, 2, 0, i, 0);
+    }
+    try {
+      // keep the first run, as if it had not been deleted once merged
+      byte[] first = Files.readAllBytes(scores.runFile(0, 4));
+
+      for (int i = 4; i < 8; i++) {
+        scores.record(2, 2, 0, i, 0);
+      }
+      t.checkExpect(scores.runs.size(), 1);
+      Files.write(scores.runFile(0, 4), first);
+      Files.write(dir.resolve("results.8-9.run.tmp"), new byte[3]);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    Leaderboard reopened = new Leaderboard(dir, 1, 4);
+    t.checkExpect(reopened.count(2, 2, 0), 8L);
+    t.checkExpect(reopened.runs.size(), 1);
+    t.checkExpect(Files.exists(reopened.runFile(0, 4)), false);
+    t.checkExpect(Files.exists(dir.resolve("results.8-9.run.tmp")), false);
+    reopened.close();
+  }
+
+  // tests that a ranked game records its wins and replays its seed on restart
+  void testRankedGame(Tester t) {
+    Leaderboard scores = new Leaderboard(this.dir());
+    LightEmAll game = new LightEmAll(5, 4, 12, scores);
+    SeededPuzzle puzzle = new SeededPuzzle(new GridTopology(5, 4, GridTopology.SQUARE), 12);
+
+    t.checkExpect(PackedBoard.of(game).links, puzzle.links);
+    game.onKeyEvent("r");
+    t.checkExpect(PackedBoard.of(game).links, puzzle.links);
+
+    game.score = 17;
+    game.timeElapsed = 9;
+    game.recordWin();
+    t.checkExpect(scores.count(5, 4, 12), 1L);
+    t.checkExpect(scores.top(5, 4, 12, 1).get(0).clicks, 17);
+    t.checkExpect(scores.logged, 1L);
+
+    // unranked games record nothing
+    new LightEmAll(5, 4).recordWin();
+    t.checkExpect(scores.logged, 1L);
+    scores.close();
+  }
+}
@@ -1,9 +1,12 @@
 import java.awt.Color;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Random;
+import java.util.function.LongSupplier;
+
+import com.sun.management.ThreadMXBean;
 
 import javalib.impworld.World;
 import javalib.impworld.WorldScene;
@@ -15,6 +18,7 @@ import javalib.worldimages.OverlayOffsetImage;
 import javalib.worldimages.Posn;
 import javalib.worldimages.RectangleImage;
 import javalib.worldimages.RotateImage;
+import javalib.worldimages.ScaleImage;
 import javalib.worldimages.TextImage;
 import javalib.worldimages.WorldImage;
 import tester.Tester;
@@ -44,13 +48,25 @@ interface IUtils {
   // size of the game piece
   int CELL_SIZE = 50;
 
+  // the sides of a game piece, numbered clockwise
+  int TOP = 0;
+  int RIGHT = 1;
+  int BOTTOM = 2;
+  int LEFT = 3;
+}
+
+//Holds the images every game piece is drawn on. The JVM only initializes this
+//class the first time a piece is drawn, so boards that are made and played
+//without being drawn never build them, nor load the imaging classes behind them.
+class RenderAssets {
+
   // a cell with no wires on it
-  WorldImage GP_CELL = new FrameImage(
+  static final WorldImage GP_CELL = new FrameImage(
       new RectangleImage(IUtils.CELL_SIZE, IUtils.CELL_SIZE, OutlineMode.SOLID, IUtils.GP_COLOR),
       Color.BLACK);
 
   // represents a power station
-  WorldImage POWER_STATION = new OverlayImage(
+  static final WorldImage POWER_STATION = new OverlayImage(
       new EquilateralTriangleImage(20, OutlineMode.SOLID, Color.CYAN),
       new RotateImage(new EquilateralTriangleImage(20, OutlineMode.SOLID, Color.CYAN), 180));
 }
@@ -71,6 +87,9 @@ class LightEmAll extends World {
   int width; // columns
   int height; // rows
 
+  // which cells of the board neighbor each other
+  GridTopology topology;
+
   // the current location of the power station,
   // as well as its effective radius
   int powerRow;
@@ -79,12 +98,75 @@ class LightEmAll extends World {
   boolean booleanFlag;
   Random rand;
   int tickRate;
-  int timeElapsed;
+  int timeElapsed; // whole seconds since the board was made
+
+  // the clock the timer reads, in nanoseconds, and its reading when the board
+  // was made
+  LongSupplier clock;
+  long startNanos;
+
+  // in render on demand mode, makeScene hands back the last frame until the game
+  // changes or the timer shows another second
+  boolean renderOnDemand;
+  boolean dirty; // whether the game has changed since the last frame
+  WorldScene frame;
+  int frameSecond; // the second the last frame shows
+  int framesBuilt;
   int score;
 
+  // the strategy that lays the wires of a new board along a spanning tree
+  ITreeGenerator generator;
+
+  // the part of the board shown in the window
+  Viewport viewport;
+
+  // the wires of each cell before the board was scrambled, and the hints toward
+  // them
+  byte[] solution;
+  HintEngine hints;
+
+  // where won games are recorded, or null, and the seed their boards are made
+  // from
+  Leaderboard leaderboard;
+  long seed;
+
+  // buffers kept between restarts of a board of the same size,
+  // so that pressing 'r' does not reallocate the world
+  ArrayList<Edge> edges; // every edge of the topology, in edge id order
+  int[] queue; // breadth first worklist of continueOn, as node indices
+  KruskalGenerator kruskal; // the weights and union-find of kruskals
+
+  // whether the board has been laid out yet, which a deferred game leaves until
+  // it is first drawn or played
+  boolean generated;
+
   LightEmAll(int width, int height) {
-    this.width = width;
-    this.height = height;
+    this(width, height, new KruskalGenerator());
+  }
+
+  // constructor for a game whose boards are laid out by the given generator
+  LightEmAll(int width, int height, ITreeGenerator generator) {
+    this(new GridTopology(width, height, GridTopology.SQUARE), generator);
+  }
+
+  // constructor for a game on a square or wraparound grid
+  LightEmAll(GridTopology topology, ITreeGenerator generator) {
+    this(topology, generator, false);
+  }
+
+  // constructor for a game that may leave laying out its board until the board
+  // is first needed
+  LightEmAll(GridTopology topology, ITreeGenerator generator, boolean deferred) {
+    if (topology.sides != 4) {
+      throw new IllegalArgumentException("LightEmAll can only draw four sided pieces");
+    }
+    // the pieces, solution and hints are all kept in column-major order
+    if (topology.layout != CellLayout.COLUMN_MAJOR) {
+      throw new IllegalArgumentException("LightEmAll can only play boards in column-major order");
+    }
+    this.width = topology.width;
+    this.height = topology.height;
+    this.topology = topology;
     this.nodes = new ArrayList<GamePiece>();
     this.mst = new ArrayList<Edge>();
     this.board = new ArrayList<ArrayList<GamePiece>>();
@@ -94,20 +176,53 @@ class LightEmAll extends World {
     this.tickRate = 0;
     this.timeElapsed = 0;
     this.score = 0;
+    this.generator = generator;
+    this.viewport = new Viewport(this.width, this.height);
+    this.clock = System::nanoTime;
+    this.startNanos = this.clock.getAsLong();
+    this.renderOnDemand = true;
+    this.dirty = true;
+    this.generated = false;
+
+    if (!deferred) {
+      ensureBoard();
+    }
+  }
+
+  // lays out, scrambles and powers the board, unless that has been done, and
+  // starts the timer from then
+  void ensureBoard() {
+    if (this.generated) {
+      return;
+    }
+    this.generated = true;
+    this.startNanos = this.clock.getAsLong();
 
     makeBoard();
     makeNodes();
-    kruskals(rand);
+    treeEdges(this.generator.spanningTree(this.topology, rand));
     mstApply();
     scrambleBoard(rand);
+    makeHints();
     continueOn();
+  }
 
+  // constructor for a ranked game, whose boards are all made from the given seed
+  // so that results on them can be compared, and whose wins go on the given
+  // leaderboard
+  LightEmAll(int width, int height, long seed, Leaderboard leaderboard) {
+    this(width, height, true, new Random(seed));
+    this.seed = seed;
+    this.leaderboard = leaderboard;
+    this.renderOnDemand = true;
+    initializeGame();
   }
 
   // constructor for testing
   LightEmAll(int width, int height, boolean booleanFlag, Random rand) {
     this.width = width;
     this.height = height;
+    this.topology = new GridTopology(width, height, GridTopology.SQUARE);
     this.nodes = new ArrayList<GamePiece>();
     this.board = new ArrayList<ArrayList<GamePiece>>();
     this.powerRow = 0;
@@ -117,31 +232,129 @@ class LightEmAll extends World {
     this.tickRate = 0;
     this.timeElapsed = 0;
     this.score = 0;
+    this.generator = new KruskalGenerator();
+    this.viewport = new Viewport(width, height);
+    this.clock = System::nanoTime;
+    this.startNanos = this.clock.getAsLong();
+    this.renderOnDemand = false;
+    this.dirty = true;
+    this.generated = true;
 
   }
 
-  // makes the scene
+  // makes the scene, or in render on demand mode hands back the last one if
+  // nothing it shows has changed
   @Override
   public WorldScene makeScene() {
-    WorldScene scene = new WorldScene(this.height * IUtils.CELL_SIZE,
-        this.width * IUtils.CELL_SIZE);
-
-    for (int i = 0; i < this.height; i++) {
-      for (int j = 0; j < this.width; j++) {
-        scene = this.board.get(i).get(j).drawGamePiece(scene, this);
-      }
+    ensureBoard();
+    if (this.renderOnDemand && !this.dirty && this.frame != null
+        && this.frameSecond == this.timeElapsed) {
+      return this.frame;
     }
+    WorldScene scene = this.drawView();
 
     scene.placeImageXY(
         new TextImage("Time passed: " + String.valueOf(timeElapsed), 15, Color.white),
-        (this.width * IUtils.CELL_SIZE) / 2, IUtils.CELL_SIZE);
+        this.viewport.windowWidth / 2, IUtils.CELL_SIZE);
 
     scene.placeImageXY(new TextImage("Score: " + String.valueOf(score), 15, Color.yellow),
-        (this.width * IUtils.CELL_SIZE) / 2, IUtils.CELL_SIZE * 2);
+        this.viewport.windowWidth / 2, IUtils.CELL_SIZE * 2);
 
+    this.frame = scene;
+    this.frameSecond = this.timeElapsed;
+    this.dirty = false;
+    this.framesBuilt++;
     return scene;
   }
 
+  // draws the cells in the viewport on a scene the size of the window, skipping
+  // every cell out of view
+  WorldScene drawView() {
+    Viewport view = this.viewport;
+    WorldScene scene = new WorldScene(view.windowWidth, view.windowHeight);
+
+    if (!view.detailed()) {
+      return this.drawBlocks(scene);
+    }
+
+    GamePiece station = this.stationPiece();
+    int stationCol = station == null ? -1 : station.col;
+    int stationRow = station == null ? -1 : station.row;
+
+    for (int i = view.firstCol(); i < view.endCol(); i++) {
+      for (int j = view.firstRow(); j < view.endRow(); j++) {
+        WorldImage cell = this.board.get(i).get(j).pieceImage(stationCol, stationRow);
+
+        if (view.cellPixels != IUtils.CELL_SIZE) {
+          cell = new ScaleImage(cell, view.cellPixels / (double) IUtils.CELL_SIZE);
+        }
+        scene.placeImageXY(cell, view.centerX(i), view.centerY(j));
+      }
+    }
+    return scene;
+  }
+
+  // draws the cells in view as square blocks of cells, each shaded by the share
+  // of its cells that are powered, for cells too small to show their wires
+  WorldScene drawBlocks(WorldScene scene) {
+    Viewport view = this.viewport;
+    int block = view.blockCells();
+    int pixels = block * view.cellPixels;
+
+    // blocks line up with the board, so they keep their cells while scrolling
+    for (int c = view.firstCol() / block * block; c < view.endCol(); c += block) {
+      for (int r = view.firstRow() / block * block; r < view.endRow(); r += block) {
+        int cells = 0;
+        int lit = 0;
+
+        for (int i = c; i < Math.min(c + block, this.width); i++) {
+          for (int j = r; j < Math.min(r + block, this.height); j++) {
+            cells++;
+            if (this.board.get(i).get(j).powered) {
+              lit++;
+            }
+          }
+        }
+        scene.placeImageXY(
+            new RectangleImage(pixels, pixels, OutlineMode.SOLID, blockColor(lit, cells)),
+            c * view.cellPixels - view.left + pixels / 2,
+            r * view.cellPixels - view.top + pixels / 2);
+      }
+    }
+    return scene;
+  }
+
+  // the color of a block with the given number of powered cells out of its cells,
+  // from the unlit color when none is powered to the lit color when all are
+  static Color blockColor(int lit, int cells) {
+    Color from = IUtils.UNLIT_COLOR;
+    Color to = IUtils.LIT_COLOR;
+
+    return new Color(from.getRed() + (to.getRed() - from.getRed()) * lit / cells,
+        from.getGreen() + (to.getGreen() - from.getGreen()) * lit / cells,
+        from.getBlue() + (to.getBlue() - from.getBlue()) * lit / cells);
+  }
+
+  // the piece holding the power station, looking where the station should be
+  // before searching the board as drawGamePiece does, or null if there is none
+  GamePiece stationPiece() {
+    if (this.powerCol < this.board.size() && this.powerRow < this.height
+        && this.board.get(this.powerCol).get(this.powerRow).powerStation) {
+      return this.board.get(this.powerCol).get(this.powerRow);
+    }
+    GamePiece found = null;
+
+    for (int i = 0; i < this.height; i++) {
+      for (int j = 0; j < this.width; j++) {
+        if (this.board.get(j).get(i).powerStation) {
+          found = this.board.get(j).get(i);
+          break;
+        }
+      }
+    }
+    return found;
+  }
+
   // makes a board of empty pieces
   void makeBoard() {
     for (int i = 0; i < this.width; i++) {
@@ -152,123 +365,160 @@ class LightEmAll extends World {
     }
   }
 
-  // onTick event handler that updates time elapsed per tick
+  // onTick event handler that updates the time elapsed from the clock, so the
+  // timer keeps time however often ticks come
   @Override
   public void onTick() {
 
     this.tickRate++;
 
-    if (this.tickRate % 45 == 0) {
-      this.timeElapsed++;
-    }
+    this.timeElapsed = (int) ((this.clock.getAsLong() - this.startNanos) / 1_000_000_000L);
   }
 
   // establishes boolean values for wire directions based on edges on the board
   void mstApply() {
-    for (Edge e : this.mst) {
-      e.getFrom().connectTo(e.getTo());
+    for (int i = 0; i < this.mst.size(); i++) {
+      Edge e = this.mst.get(i);
+
+      e.getFrom().connectSide(e.side);
+      e.getTo().connectSide(this.topology.opposite(e.side));
     }
 
     this.board.get(this.powerRow).get(this.powerCol).updatePowerStation();
     this.board.get(this.powerRow).get(this.powerCol).power();
-  }
-
-  // creates the minimum spanning tree for the game
-  void kruskals(Random rand) {
-    HashMap<GamePiece, GamePiece> representatives = new HashMap<GamePiece, GamePiece>();
-    ArrayList<Edge> edgesInTree = new ArrayList<Edge>();
-    ArrayList<Edge> worklist = makeEdges(rand);
 
-    worklist.sort(new EdgeComparator()); // all edges in graph, sorted by edge weights;
+    if (this.solution == null || this.solution.length != this.topology.cells) {
+      this.solution = new byte[this.topology.cells];
+    }
+    for (int i = 0; i < this.nodes.size(); i++) {
+      this.solution[i] = (byte) this.nodes.get(i).links();
+    }
+  }
 
-    for (int i = 0; i < nodes.size(); i++) {
-      representatives.put(this.nodes.get(i), this.nodes.get(i));
+  // starts hints toward the solution from the scrambled board, reusing the hints
+  // of the last board if it had the same topology
+  void makeHints() {
+    if (this.hints == null || this.hints.topology != this.topology) {
+      this.hints = new HintEngine(this.topology, this.solution, this.solution);
+    }
+    // the scrambled wires are gathered in the hints' own array, then reset
+    // starts from them
+    for (int i = 0; i < this.nodes.size(); i++) {
+      this.hints.links[i] = (byte) this.nodes.get(i).links();
     }
+    this.hints.reset(this.solution, this.hints.links);
+  }
 
-    while (edgesInTree.size() < this.nodes.size() - 1) {
-      Edge nextEdge = worklist.remove(0);
+  // turns the cell the hints point to into place, each turn counting as a click
+  void takeHint() {
+    int cell = this.hints == null ? -1 : this.hints.hint();
 
-      GamePiece from = nextEdge.getFrom();
-      GamePiece to = nextEdge.getTo();
+    if (cell >= 0) {
+      GamePiece piece = piece(cell);
+      int turns = this.hints.turns(cell);
 
-      if (find(representatives, from).sameGamePiece(find(representatives, to))) {
-        // discard edge
-      }
+      piece.rotate(turns);
+      this.score += turns;
+      this.hints.setLinks(cell, piece.links());
+      continueOn();
+    }
+  }
 
-      else {
-        edgesInTree.add(nextEdge);
-        representatives = union(representatives, find(representatives, from),
-            find(representatives, to));
-      }
+  // creates the minimum spanning tree for the game
+  void kruskals(Random rand) {
+    ArrayList<Edge> worklist = gridEdges();
+
+    if (this.kruskal == null) {
+      this.kruskal = new KruskalGenerator();
+    }
+    this.kruskal.prepare(this.topology);
+    for (int i = 0; i < worklist.size(); i++) {
+      worklist.get(i).weight = rand.nextInt(25);
+      this.kruskal.weights[i] = worklist.get(i).weight;
     }
 
-    this.mst = edgesInTree;
+    treeEdges(this.kruskal.minimumTree(this.topology, this.kruskal.weights));
   }
 
-  // helper method that determines the key of a key value pair in a hash map
-  public GamePiece find(HashMap<GamePiece, GamePiece> hash, GamePiece gp) {
-    while (hash.get(gp) != gp) {
-      gp = hash.get(gp);
+  // sets mst to the edges of the board with the given ids, i.e., the first
+  // nodes - 1 ids of a tree chosen by a generator
+  void treeEdges(int[] tree) {
+    ArrayList<Edge> edges = gridEdges();
+
+    if (this.mst == null) {
+      this.mst = new ArrayList<Edge>();
+    }
+    else {
+      this.mst.clear();
+    }
+    for (int i = 0; i < this.topology.cells - 1; i++) {
+      this.mst.add(edges.get(tree[i]));
     }
-    return gp;
   }
 
-  // helper method that applies the parent gamepiece from one gamepiece to another
-  public HashMap<GamePiece, GamePiece> union(HashMap<GamePiece, GamePiece> representatives,
-      GamePiece find1, GamePiece find2) {
-    representatives.put(find2, find1);
-
-    return representatives;
+  // returns the edge buffer of this board, building it with zero weights if the
+  // board has been reallocated since the last generation
+  ArrayList<Edge> gridEdges() {
+    if (this.edges == null) {
+      this.edges = makeGridEdges();
+    }
+    return this.edges;
   }
 
   // creates the scrambled board
   void scrambleBoard(Random rand) {
     for (int i = 0; i < this.width; i++) {
       for (int j = 0; j < this.height; j++) {
-        int rotations = rand.nextInt(4);
-
-        for (int k = 0; k < rotations; k++) {
-          this.board.get(i).get(j).rotate();
-        }
+        this.board.get(i).get(j).rotate(rand.nextInt(4));
       }
     }
   }
 
-  // rotates the game pieces on left click
+  // rotates the game piece under the mouse on left click
   @Override
   public void onMouseClicked(Posn posn, String key) {
-    if (key.equals("LeftButton")) {
-      this.board.get((int) Math.floor(posn.x / IUtils.CELL_SIZE))
-      .get((int) Math.floor(posn.y / IUtils.CELL_SIZE)).rotate();
+    ensureBoard();
+    int col = this.viewport.colAt(posn.x);
+    int row = this.viewport.rowAt(posn.y);
+
+    if (key.equals("LeftButton") && col >= 0 && row >= 0) {
+      this.board.get(col).get(row).rotate();
+      if (this.hints != null) {
+        this.hints.setLinks(this.topology.cell(col, row),
+            this.board.get(col).get(row).links());
+      }
 
       this.score += 1;
+      this.dirty = true;
 
       continueOn();
     }
 
     if (checkWin()) {
+      this.recordWin();
       this.endOfWorld("you won!");
     }
 
   }
 
+  // records the clicks and seconds this game was won in, if it is ranked
+  void recordWin() {
+    if (this.leaderboard != null) {
+      this.leaderboard.record(this.width, this.height, this.seed, this.score, this.timeElapsed);
+      this.leaderboard.sync();
+    }
+  }
+
   // creates the last scene of the game, for the winning case
   @Override
   public WorldScene lastScene(String msg) {
-    WorldScene scene = new WorldScene(this.width * IUtils.CELL_SIZE,
-        this.height * IUtils.CELL_SIZE);
+    WorldScene scene = this.drawView();
 
     WorldImage text = new OverlayImage(new TextImage(msg, IUtils.CELL_SIZE / 2, Color.BLACK),
         new RectangleImage(IUtils.CELL_SIZE * 5, IUtils.CELL_SIZE / 2, OutlineMode.SOLID,
             Color.WHITE));
 
-    for (int i = 0; i < this.height; i++) {
-      for (int j = 0; j < this.width; j++) {
-        scene = this.board.get(i).get(j).drawGamePiece(scene, this);
-      }
-    }
-
-    scene.placeImageXY(text, scene.height / 2, scene.width / 2);
+    scene.placeImageXY(text, scene.width / 2, scene.height / 2);
 
     return scene;
 
@@ -285,27 +535,34 @@ class LightEmAll extends World {
 
   // creates the edges on the board with random weights
   public ArrayList<Edge> makeEdges(Random rand) {
-    ArrayList<Edge> edges = new ArrayList<Edge>();
+    ArrayList<Edge> edges = makeGridEdges();
 
-    for (int i = 0; i < this.width; i++) {
-      for (int j = 0; j < this.height; j++) {
+    for (int i = 0; i < edges.size(); i++) {
+      edges.get(i).weight = rand.nextInt(25);
+    }
+    return edges;
+  }
 
-        if (j != this.height - 1) {
-          edges.add(
-              new Edge(this.board.get(i).get(j), this.board.get(i).get(j + 1), rand.nextInt(25)));
-        }
+  // creates the edges on the board, all with a weight of zero, in the order of
+  // the topology's edge ids
+  ArrayList<Edge> makeGridEdges() {
+    ArrayList<Edge> edges = new ArrayList<Edge>();
 
-        if (i != this.width - 1) {
-          edges.add(
-              new Edge(this.board.get(i).get(j), this.board.get(i + 1).get(j), rand.nextInt(25)));
-        }
-      }
+    for (int e = 0; e < this.topology.edges; e++) {
+      edges.add(new Edge(piece(this.topology.edgeFrom[e]), piece(this.topology.edgeTo[e]),
+          this.topology.edgeSide[e], 0));
     }
     return edges;
   }
 
+  // the game piece of the given node index
+  GamePiece piece(int node) {
+    return this.board.get(this.topology.col(node)).get(this.topology.row(node));
+  }
+
   // checks if the current game state is "won"
   public boolean checkWin() {
+    ensureBoard();
     boolean win = true;
 
     for (GamePiece g : this.nodes) {
@@ -318,9 +575,14 @@ class LightEmAll extends World {
 
   // updates the power status of all GamePieces
   void continueOn() {
+    GridTopology t = this.topology;
+    int head = 0;
+    int tail = 0;
 
-    ArrayList<GamePiece> worklist = new ArrayList<GamePiece>(
-        Arrays.asList(this.board.get(powerCol).get(powerRow)));
+    if (this.queue == null || this.queue.length != t.cells) {
+      this.queue = new int[t.cells];
+    }
+    this.queue[tail++] = t.cell(this.powerCol, this.powerRow);
 
     for (int i = 0; i < this.width; i++) {
       for (int j = 0; j < this.height; j++) {
@@ -331,42 +593,62 @@ class LightEmAll extends World {
         // connected
       }
     }
-    while (worklist.size() > 0) {
-      GamePiece next = worklist.remove(0);
+    while (head < tail) {
+      int node = this.queue[head++];
+      GamePiece from = piece(node);
 
-      worklist.addAll(next.lightUp(this.board, this.width, this.height));
+      for (int i = t.start[node]; i < t.start[node + 1]; i++) {
+        GamePiece to = piece(t.neighbors[i]);
+        int side = t.sideOf[i];
+
+        if (!to.powered && from.hasSide(side) && to.hasSide(t.opposite(side))) {
+          to.power();
+          this.queue[tail++] = t.neighbors[i];
+        }
+      }
+    }
+
+    if (this.hints != null) {
+      for (int i = 0; i < this.nodes.size(); i++) {
+        this.hints.setPowered(i, this.nodes.get(i).powered);
+      }
     }
   }
 
-  // moves the power station based on the arrow keys
+  // moves the power station based on the arrow keys, zooms and scrolls the view
+  // with +, -, w, a, s and d, and takes a hint with h
   @Override
   public void onKeyEvent(String key) {
-    this.board.get(this.powerCol).get(this.powerRow).updatePowerStation();
+    ensureBoard();
+    this.dirty = true;
 
-    if (this.powerRow > 0 && key.equals("up")
-        && board.get(this.powerCol).get(this.powerRow).hasTop()
-        && board.get(this.powerCol).get(this.powerRow - 1).won()) {
-      this.powerRow = this.powerRow - 1;
-    }
+    int station = this.topology.cell(this.powerCol, this.powerRow);
+    int side = -1;
 
-    if (this.powerRow != this.height - 1 && key.equals("down")
-        && board.get(this.powerCol).get(this.powerRow).hasBottom()
-        && board.get(this.powerCol).get(this.powerRow + 1).won()) {
-      this.powerRow = this.powerRow + 1;
+    if (key.equals("up")) {
+      side = IUtils.TOP;
     }
-
-    if (this.powerCol > 0 && key.equals("left")
-        && board.get(this.powerCol).get(this.powerRow).hasLeft()
-        && board.get(this.powerCol - 1).get(this.powerRow).won()) {
-      this.powerCol = this.powerCol - 1;
+    if (key.equals("down")) {
+      side = IUtils.BOTTOM;
     }
+    if (key.equals("left")) {
+      side = IUtils.LEFT;
+    }
+    if (key.equals("right")) {
+      side = IUtils.RIGHT;
+    }
+
+    // the station moves along a wire onto a powered neighbor
+    if (side >= 0) {
+      int to = this.topology.neighbor(station, side);
 
-    if (this.powerCol != this.width - 1 && key.equals("right")
-        && board.get(this.powerCol).get(this.powerRow).hasRight()
-        && board.get(this.powerCol + 1).get(this.powerRow).won()) {
-      this.powerCol = this.powerCol + 1;
+      if (to >= 0 && piece(station).hasSide(side) && piece(to).won()) {
+        piece(station).updatePowerStation();
+        this.powerCol = this.topology.col(to);
+        this.powerRow = this.topology.row(to);
+        piece(to).updatePowerStation();
+      }
     }
-    this.board.get(this.powerCol).get(this.powerRow).updatePowerStation();
 
     if (key.equals("r")) {
 
@@ -374,26 +656,84 @@ class LightEmAll extends World {
 
     }
 
+    if (key.equals("h")) {
+      takeHint();
+      if (checkWin()) {
+        this.recordWin();
+        this.endOfWorld("you won!");
+      }
+    }
+
+    // zooming and scrolling the view
+    if (key.equals("=") || key.equals("+")) {
+      this.viewport.zoom(true);
+    }
+    if (key.equals("-")) {
+      this.viewport.zoom(false);
+    }
+    if (key.equals("w")) {
+      this.viewport.scroll(0, this.viewport.windowHeight / -4);
+    }
+    if (key.equals("s")) {
+      this.viewport.scroll(0, this.viewport.windowHeight / 4);
+    }
+    if (key.equals("a")) {
+      this.viewport.scroll(this.viewport.windowWidth / -4, 0);
+    }
+    if (key.equals("d")) {
+      this.viewport.scroll(this.viewport.windowWidth / 4, 0);
+    }
+
   }
 
-  // initializes a new Game board
+  // initializes a new Game board, resetting the existing pieces in place when the
+  // board still has the right size
   void initializeGame() {
-    this.nodes = new ArrayList<GamePiece>();
-    this.mst = new ArrayList<Edge>();
-    this.board = new ArrayList<ArrayList<GamePiece>>();
     this.powerRow = 0;
     this.powerCol = 0;
     this.radius = 0;
     this.score = 0;
     this.timeElapsed = 0;
-    makeBoard();
-    makeNodes();
-    kruskals(rand);
+    this.startNanos = this.clock.getAsLong();
+    this.dirty = true;
+    this.generated = true;
+    if (this.leaderboard != null) {
+      this.rand = new Random(this.seed);
+    }
+
+    if (sameSize()) {
+      for (int i = 0; i < this.nodes.size(); i++) {
+        this.nodes.get(i).reset();
+      }
+    }
+    else {
+      this.nodes = new ArrayList<GamePiece>();
+      this.board = new ArrayList<ArrayList<GamePiece>>();
+      this.edges = null;
+      makeBoard();
+      makeNodes();
+    }
+    treeEdges(this.generator.spanningTree(this.topology, rand));
     mstApply();
     scrambleBoard(rand);
+    makeHints();
     continueOn();
   }
 
+  // determines if the current board and nodes can be reused for a board of this size
+  boolean sameSize() {
+    if (this.board == null || this.nodes == null || this.board.size() != this.width
+        || this.nodes.size() != this.width * this.height) {
+      return false;
+    }
+    for (int i = 0; i < this.width; i++) {
+      if (this.board.get(i).size() != this.height) {
+        return false;
+      }
+    }
+    return true;
+  }
+
 }
 
 //class that represents a GamePiece
@@ -449,6 +789,17 @@ class GamePiece {
     this.powered = false;
   }
 
+  // clears this gamepiece back to an unpowered cell with no wires, for reuse on
+  // restart
+  void reset() {
+    this.left = false;
+    this.right = false;
+    this.top = false;
+    this.bottom = false;
+    this.powerStation = false;
+    this.powered = false;
+  }
+
   // setter permitted by John Park Piazza Post, powers a gamepiece
   public void power() {
     this.powered = true;
@@ -467,24 +818,66 @@ class GamePiece {
   // determines the boolean values of a gamepiece based on the row/col position of
   // it and the piece it is connected to
   public void connectTo(GamePiece toNode) {
-    if (this.row == toNode.row - 1) {
-      this.bottom = true;
-      toNode.top = true;
+    int side = this.sideTowards(toNode);
+
+    if (side >= 0) {
+      this.connectSide(side);
+      toNode.connectSide((side + 2) % 4);
     }
-    if (this.row - 1 == toNode.row) {
+  }
+
+  // the side of this gamepiece that faces the given adjacent gamepiece on a
+  // bounded grid, or -1 if they are not adjacent
+  int sideTowards(GamePiece that) {
+    if (this.col == that.col && this.row == that.row - 1) {
+      return IUtils.BOTTOM;
+    }
+    if (this.col == that.col && this.row - 1 == that.row) {
+      return IUtils.TOP;
+    }
+    if (this.row == that.row && this.col == that.col - 1) {
+      return IUtils.RIGHT;
+    }
+    if (this.row == that.row && this.col - 1 == that.col) {
+      return IUtils.LEFT;
+    }
+    return -1;
+  }
+
+  // adds a wire through the given side of this gamepiece
+  void connectSide(int side) {
+    if (side == IUtils.TOP) {
       this.top = true;
-      toNode.bottom = true;
     }
-    if (this.col == toNode.col - 1) {
+    if (side == IUtils.RIGHT) {
       this.right = true;
-      toNode.left = true;
     }
-    if (this.col - 1 == toNode.col) {
+    if (side == IUtils.BOTTOM) {
+      this.bottom = true;
+    }
+    if (side == IUtils.LEFT) {
       this.left = true;
-      toNode.right = true;
     }
   }
 
+  // determines if this gamepiece has a wire through the given side
+  boolean hasSide(int side) {
+    return (side == IUtils.TOP && this.top) || (side == IUtils.RIGHT && this.right)
+        || (side == IUtils.BOTTOM && this.bottom) || (side == IUtils.LEFT && this.left);
+  }
+
+  // the wires of this gamepiece as a mask with one bit per side
+  int links() {
+    int links = 0;
+
+    for (int side = 0; side < 4; side++) {
+      if (this.hasSide(side)) {
+        links |= 1 << side;
+      }
+    }
+    return links;
+  }
+
   // changes the top, bottom, left, right fields according to a rotation
   void rotate() {
     boolean newTop = false;
@@ -511,15 +904,25 @@ class GamePiece {
     this.bottom = newBot;
   }
 
+  // rotates this gamepiece clockwise the given number of times, all at once
+  void rotate(int times) {
+    this.setLinks(GridTopology.SQUARE_TURNS[times << 4 | this.links()]);
+  }
+
+  // sets the wires of this gamepiece from a mask with one bit per side
+  void setLinks(int links) {
+    this.top = (links & (1 << IUtils.TOP)) != 0;
+    this.right = (links & (1 << IUtils.RIGHT)) != 0;
+    this.bottom = (links & (1 << IUtils.BOTTOM)) != 0;
+    this.left = (links & (1 << IUtils.LEFT)) != 0;
+  }
+
   // draws the gamePiece on the WorldScene and puts the gradient effect
   public WorldScene drawGamePiece(WorldScene w, LightEmAll game) {
-    Color color = IUtils.UNLIT_COLOR;
+    int poweredRow = -1;
+    int poweredCol = -1;
 
     if (powered) {
-      int poweredRow = -1;
-
-      int poweredCol = -1;
-
       for (int i = 0; i < game.height; i++) {
         for (int j = 0; j < game.width; j++) {
           if (game.board.get(j).get(i).powerStation) {
@@ -529,7 +932,21 @@ class GamePiece {
           }
         }
       }
+    }
+
+    w.placeImageXY(this.pieceImage(poweredCol, poweredRow),
+        this.col * IUtils.CELL_SIZE + IUtils.CELL_SIZE / 2,
+        this.row * IUtils.CELL_SIZE + IUtils.CELL_SIZE / 2);
+
+    return w;
+  }
 
+  // the image of this gamePiece, shaded by its distance from the power station at
+  // the given column and row if it is powered
+  WorldImage pieceImage(int poweredCol, int poweredRow) {
+    Color color = IUtils.UNLIT_COLOR;
+
+    if (powered) {
       int distance = Math.abs(row - poweredRow) + Math.abs(col - poweredCol);
 
       int shade = 255 - (distance * 30);
@@ -540,7 +957,7 @@ class GamePiece {
 
     WorldImage cell = new OverlayImage(
         new RectangleImage(IUtils.CELL_SIZE / 4, IUtils.CELL_SIZE / 4, OutlineMode.SOLID, color),
-        IUtils.GP_CELL);
+        RenderAssets.GP_CELL);
 
     if (top) {
       cell = new OverlayOffsetImage(
@@ -568,13 +985,10 @@ class GamePiece {
     }
 
     if (powerStation) {
-      cell = new OverlayImage(IUtils.POWER_STATION, cell);
+      cell = new OverlayImage(RenderAssets.POWER_STATION, cell);
     }
 
-    w.placeImageXY(cell, this.col * IUtils.CELL_SIZE + IUtils.CELL_SIZE / 2,
-        this.row * IUtils.CELL_SIZE + IUtils.CELL_SIZE / 2);
-
-    return w;
+    return cell;
   }
 
   // observational getter, as instructed by TA, determines if cell is powered
@@ -638,7 +1052,6 @@ class GamePiece {
   public ArrayList<GamePiece> lightUp(ArrayList<ArrayList<GamePiece>> board, int width,
       int height) {
     ArrayList<GamePiece> worklist = new ArrayList<GamePiece>();
-
     if (this.row > 0 && this.top) {
       if (board.get(this.col).get(this.row - 1).continuePath("top")) {
         board.get(this.col).get(this.row - 1).powered = true;
@@ -646,7 +1059,7 @@ class GamePiece {
         worklist.add(board.get(this.col).get(this.row - 1));
       }
     }
-    if (this.row != width - 1 && this.bottom) {
+    if (this.row != height - 1 && this.bottom) {
       if (board.get(this.col).get(this.row + 1).continuePath("bottom")) {
         board.get(this.col).get(this.row + 1).powered = true;
 
@@ -663,7 +1076,7 @@ class GamePiece {
       }
     }
 
-    if (this.col != height - 1 && this.right) {
+    if (this.col != width - 1 && this.right) {
       if (board.get(this.col + 1).get(this.row).continuePath("right")) {
         board.get(this.col + 1).get(this.row).powered = true;
 
@@ -679,11 +1092,18 @@ class GamePiece {
 class Edge {
   GamePiece fromNode;
   GamePiece toNode;
+  int side; // the side of fromNode the edge leaves through
   int weight;
 
   Edge(GamePiece fromNode, GamePiece toNode, int weight) {
+    this(fromNode, toNode, fromNode.sideTowards(toNode), weight);
+  }
+
+  // constructor for edges that wrap around the board
+  Edge(GamePiece fromNode, GamePiece toNode, int side, int weight) {
     this.fromNode = fromNode;
     this.toNode = toNode;
+    this.side = side;
     this.weight = weight;
   }
 
@@ -845,7 +1265,7 @@ class ExamplesLightEmAll { // LEFT RIGHT TOP BOT
         new RectangleImage(IUtils.CELL_SIZE / 4, IUtils.CELL_SIZE / 2, OutlineMode.SOLID,
             IUtils.UNLIT_COLOR),
         0, IUtils.CELL_SIZE / -4, new OverlayImage(new RectangleImage(IUtils.CELL_SIZE / 4,
-            IUtils.CELL_SIZE / 4, OutlineMode.SOLID, IUtils.UNLIT_COLOR), IUtils.GP_CELL)),
+            IUtils.CELL_SIZE / 4, OutlineMode.SOLID, IUtils.UNLIT_COLOR), RenderAssets.GP_CELL)),
         25, 25);
 
     this.reset();
@@ -860,7 +1280,8 @@ class ExamplesLightEmAll { // LEFT RIGHT TOP BOT
             new RectangleImage(IUtils.CELL_SIZE / 4, IUtils.CELL_SIZE / 2, OutlineMode.SOLID,
                 IUtils.UNLIT_COLOR),
             0, IUtils.CELL_SIZE / 4, new OverlayImage(new RectangleImage(IUtils.CELL_SIZE / 4,
-                IUtils.CELL_SIZE / 4, OutlineMode.SOLID, IUtils.UNLIT_COLOR), IUtils.GP_CELL)))),
+                IUtils.CELL_SIZE / 4, OutlineMode.SOLID, IUtils.UNLIT_COLOR),
+                RenderAssets.GP_CELL)))),
         75, 25);
 
     WorldScene w3 = new WorldScene(50, 50);
@@ -884,7 +1305,7 @@ class ExamplesLightEmAll { // LEFT RIGHT TOP BOT
                         0, IUtils.CELL_SIZE / 4,
                         new OverlayImage(new RectangleImage(IUtils.CELL_SIZE / 4,
                             IUtils.CELL_SIZE / 4, OutlineMode.SOLID, IUtils.UNLIT_COLOR),
-                            IUtils.GP_CELL)))))))),
+                            RenderAssets.GP_CELL)))))))),
         125, 25);
 
     // test drawGamePiece method
@@ -949,8 +1370,8 @@ class ExamplesLightEmAll { // LEFT RIGHT TOP BOT
     t.checkExpect(this.gpC2.powered, true);
 
     // test lightUp method
-    t.checkExpect(this.gpD.lightUp(board, 2, 1), new ArrayList<GamePiece>(Arrays.asList(this.gpA)));
-    t.checkExpect(this.gpB.lightUp(board, 2, 1), new ArrayList<GamePiece>(Arrays.asList(this.gpE)));
+    t.checkExpect(this.gpD.lightUp(board, 2, 2), new ArrayList<GamePiece>(Arrays.asList(this.gpA)));
+    t.checkExpect(this.gpB.lightUp(board, 2, 2), new ArrayList<GamePiece>(Arrays.asList(this.gpE)));
     t.checkExpect(this.gpA.powered, true);
     t.checkExpect(this.gpE.powered, true);
 
@@ -995,10 +1416,14 @@ class ExamplesLightEmAll { // LEFT RIGHT TOP BOT
   void testLightEmAll(Tester t) {
     this.reset();
 
-    // test the onTick method
+    // test the onTick method, ticking every 20 milliseconds
+    long[] now = { 0 };
+    l.clock = () -> now[0];
+    l.startNanos = 0;
     t.checkExpect(l.timeElapsed, 0);
 
     for (int i = 0; i < 51; i++) {
+      now[0] += 20_000_000L;
       l.onTick();
     }
 
@@ -1043,27 +1468,6 @@ class ExamplesLightEmAll { // LEFT RIGHT TOP BOT
                 new Edge(this.l2.board.get(2).get(0), this.l2.board.get(2).get(1), 10),
                 new Edge(this.l2.board.get(2).get(1), this.l2.board.get(2).get(2), 7))));
 
-    // test find method
-
-    HashMap<GamePiece, GamePiece> hashTest = new HashMap<GamePiece, GamePiece>();
-
-    hashTest.put(this.gpA, this.gpB);
-    hashTest.put(this.gpB, this.gpB);
-    hashTest.put(this.gpC, this.gpD);
-    hashTest.put(this.gpD, this.gpD);
-    hashTest.put(this.gpE, this.gpE);
-
-    t.checkExpect(this.l2.find(hashTest, this.gpA), gpB);
-    t.checkExpect(this.l2.find(hashTest, this.gpB), gpB);
-    t.checkExpect(this.l2.find(hashTest, this.gpC), gpD);
-
-    // test union method
-    this.l2.union(hashTest, this.gpA, this.gpE);
-    this.l2.union(hashTest, this.gpD, this.gpB);
-
-    t.checkExpect(this.l2.find(hashTest, this.gpB), gpD);
-    t.checkExpect(this.l2.find(hashTest, this.gpE), gpD);
-
     // test kruskals method
     this.l.kruskals(this.l.rand);
     t.checkExpect(this.l.mst, new ArrayList<Edge>(Arrays.asList(this.edge1, this.edge2, this.edge3,
@@ -1274,10 +1678,201 @@ class ExamplesLightEmAll { // LEFT RIGHT TOP BOT
     t.checkExpect(l.score, 0);
   }
 
+  // tests that restarting a board of the same size reuses the existing world
+  void testRestartReuse(Tester t) {
+    LightEmAll game = new LightEmAll(8, 8, true, new Random(11));
+
+    game.initializeGame();
+
+    GamePiece corner = game.board.get(7).get(7);
+    ArrayList<Edge> edges = game.edges;
+
+    game.initializeGame();
+
+    t.checkExpect(game.board.get(7).get(7) == corner, true);
+    t.checkExpect(game.edges == edges, true);
+    t.checkExpect(game.mst.size(), 63);
+    t.checkExpect(game.board.get(0).get(0).powerStation, true);
+    t.checkExpect(game.board.get(0).get(0).powered, true);
+
+    // warm up so that class loading and buffer growth are not measured
+    for (int i = 0; i < 100; i++) {
+      game.initializeGame();
+    }
+
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+    for (int i = 0; i < 1000; i++) {
+      game.initializeGame();
+    }
+
+    long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+    // only the measurement itself may allocate, never the restarts
+    t.checkExpect(allocated < 1000, true);
+
+    // laying a tree with kruskals keeps its weights and union-find between calls
+    game.kruskals(new Random(1));
+    int[] weights = game.kruskal.weights;
+    game.kruskals(new Random(2));
+    t.checkExpect(game.kruskal.weights == weights, true);
+    t.checkExpect(game.mst.size(), game.topology.cells - 1);
+  }
+
+  // tests games on wide and wraparound boards
+  void testTopologies(Tester t) {
+    GridTopology[] grids = { new GridTopology(7, 3, GridTopology.SQUARE),
+        new GridTopology(5, 4, GridTopology.TORUS) };
+
+    for (GridTopology grid : grids) {
+      LightEmAll game = new LightEmAll(grid, new WilsonGenerator());
+
+      // lay the wires again without scrambling, which must power every piece
+      game.initializeGame();
+      for (GamePiece g : game.nodes) {
+        g.reset();
+      }
+      game.treeEdges(game.generator.spanningTree(grid, game.rand));
+      game.mstApply();
+      game.continueOn();
+
+      t.checkExpect(game.checkWin(), true);
+    }
+
+    t.checkConstructorException(
+        new IllegalArgumentException("LightEmAll can only draw four sided pieces"), "LightEmAll",
+        new GridTopology(3, 3, GridTopology.HEX), new KruskalGenerator());
+    t.checkConstructorException(
+        new IllegalArgumentException("LightEmAll can only play boards in column-major order"),
+        "LightEmAll", new GridTopology(5, 4, GridTopology.SQUARE, CellLayout.ROW_MAJOR),
+        new KruskalGenerator());
+  }
+
+  // tests drawing and clicking through a scrolled and zoomed viewport
+  void testViewport(Tester t) {
+    LightEmAll game = new LightEmAll(4, 2, new KruskalGenerator());
+    game.viewport = new Viewport(4, 2, 100, 100);
+    game.viewport.scroll(100, 0);
+
+    // only the two columns in view are drawn
+    WorldScene scene = new WorldScene(100, 100);
+    GamePiece station = game.board.get(0).get(0);
+    for (int i = 2; i < 4; i++) {
+      for (int j = 0; j < 2; j++) {
+        scene.placeImageXY(game.board.get(i).get(j).pieceImage(station.col, station.row),
+            (i - 2) * 50 + 25, j * 50 + 25);
+      }
+    }
+    scene.placeImageXY(new TextImage("Time passed: 0", 15, Color.white), 50, 50);
+    scene.placeImageXY(new TextImage("Score: 0", 15, Color.yellow), 50, 100);
+    t.checkExpect(game.makeScene(), scene);
+
+    // clicks land on the cell drawn under them
+    int links = game.board.get(2).get(1).links();
+    game.onMouseClicked(new Posn(30, 60), "LeftButton");
+    t.checkExpect(game.board.get(2).get(1).links(), game.topology.rotate(links));
+    t.checkExpect(game.score, 1);
+
+    game.onMouseClicked(new Posn(120, 60), "LeftButton");
+    t.checkExpect(game.score, 1);
+
+    // zoomed far out, cells are drawn as blocks shaded by how many are powered
+    game.onKeyEvent("-");
+    t.checkExpect(game.viewport.cellPixels, 25);
+    game.viewport.cellPixels = 2;
+    WorldScene blocks = new WorldScene(100, 100);
+    int lit = 0;
+    for (GamePiece piece : game.nodes) {
+      lit += piece.powered ? 1 : 0;
+    }
+    blocks.placeImageXY(new RectangleImage(8, 8, OutlineMode.SOLID,
+        LightEmAll.blockColor(lit, 8)), 4, 4);
+    t.checkExpect(game.drawView(), blocks);
+
+    t.checkExpect(LightEmAll.blockColor(0, 4), IUtils.UNLIT_COLOR);
+    t.checkExpect(LightEmAll.blockColor(4, 4), IUtils.LIT_COLOR);
+    t.checkExpect(LightEmAll.blockColor(2, 4), new Color(167, 161, 128));
+  }
+
+  // tests that hints follow the board as it is clicked and lead to a win
+  void testHints(Tester t) {
+    LightEmAll game = new LightEmAll(5, 5, true, new Random(8));
+    game.initializeGame();
+    SeededPuzzle puzzle = new SeededPuzzle(new GridTopology(5, 5, GridTopology.SQUARE), 8);
+
+    t.checkExpect(game.solution, puzzle.solution);
+    t.checkExpect(game.hints.wrong.size > 0, true);
+
+    // clicking a wrong cell into place takes it out of the hints
+    int cell = game.hints.hint();
+    int turns = game.hints.turns(cell);
+    for (int i = 0; i < turns; i++) {
+      game.onMouseClicked(new Posn(game.topology.col(cell) * IUtils.CELL_SIZE + 1,
+          game.topology.row(cell) * IUtils.CELL_SIZE + 1), "LeftButton");
+    }
+    t.checkExpect(game.hints.wrong.contains(cell), false);
+    t.checkExpect(game.score, turns);
+
+    int wrong = game.hints.wrong.size;
+    game.onKeyEvent("h");
+    t.checkExpect(game.hints.wrong.size, wrong - 1);
+    t.checkExpect(game.hints.nearPower[game.hints.hint()] > 0, true);
+
+    for (int i = 0; i < 25; i++) {
+      game.onKeyEvent("h");
+    }
+    t.checkExpect(game.hints.hint(), -1);
+    t.checkExpect(game.checkWin(), true);
+  }
+
+  // tests that the timer follows the clock and that frames are only rebuilt when
+  // something on them changes
+  void testRenderOnDemand(Tester t) {
+    LightEmAll game = new LightEmAll(4, 4, new KruskalGenerator());
+    long[] now = { 5_000_000_000L };
+    game.clock = () -> now[0];
+    game.startNanos = now[0];
+
+    WorldScene first = game.makeScene();
+    t.checkExpect(game.makeScene() == first, true);
+
+    // idle ticks within the same second build nothing, however many there are
+    for (int i = 0; i < 1000; i++) {
+      now[0] += 900_000L;
+      game.onTick();
+      game.makeScene();
+    }
+    t.checkExpect(game.timeElapsed, 0);
+    t.checkExpect(game.framesBuilt, 1);
+
+    // a slow tick still shows the right time
+    now[0] += 2_500_000_000L;
+    game.onTick();
+    t.checkExpect(game.timeElapsed, 3);
+    t.checkExpect(game.makeScene() == first, false);
+    t.checkExpect(game.framesBuilt, 2);
+
+    game.onMouseClicked(new Posn(10, 10), "LeftButton");
+    game.makeScene();
+    t.checkExpect(game.framesBuilt, 3);
+    game.onKeyEvent("-");
+    game.makeScene();
+    game.makeScene();
+    t.checkExpect(game.framesBuilt, 4);
+
+    game.onKeyEvent("r");
+    game.onTick();
+    t.checkExpect(game.timeElapsed, 0);
+
+    game.renderOnDemand = false;
+    t.checkExpect(game.makeScene() == game.makeScene(), false);
+  }
+
   // big bang
   void testGame(Tester t) {
     LightEmAll l = new LightEmAll(6, 6);
 
-    l.bigBang(l.width * IUtils.CELL_SIZE, l.width * IUtils.CELL_SIZE, 0.02);
+    l.bigBang(l.viewport.windowWidth, l.viewport.windowHeight, 0.1);
   }
 }
\ No newline at end of file
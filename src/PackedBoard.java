@@ -0,0 +1,206 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents a board without GamePieces, for any topology: the wires of every cell
+//are a bit mask of the sides they leave through, in the cell order of the topology
+class PackedBoard {
+  GridTopology topology;
+  byte[] links;
+  boolean[] powered;
+  int station; // the cell of the power station
+
+  // breadth first worklist of propagate, which afterwards starts with the cells
+  // it powered, reached of them
+  int[] queue;
+  int reached;
+
+  PackedBoard(GridTopology topology) {
+    this.topology = topology;
+    this.links = new byte[topology.cells];
+    this.powered = new boolean[topology.cells];
+    this.queue = new int[topology.cells];
+    this.station = 0;
+  }
+
+  // lays the wires along a spanning tree from the generator, scrambles them and
+  // powers the board, like a new LightEmAll game
+  void generate(ITreeGenerator generator, Random rand) {
+    int[] tree = generator.spanningTree(this.topology, rand);
+
+    for (int cell = 0; cell < this.topology.cells; cell++) {
+      this.links[cell] = 0;
+    }
+    for (int i = 0; i < this.topology.cells - 1; i++) {
+      this.connect(tree[i]);
+    }
+    this.station = 0;
+    this.scramble(rand);
+    this.propagate();
+  }
+
+  // connects the two cells at the ends of the given edge of the topology
+  void connect(int edge) {
+    int side = this.topology.edgeSide[edge];
+
+    this.links[this.topology.edgeFrom[edge]] |= 1 << side;
+    this.links[this.topology.edgeTo[edge]] |= 1 << this.topology.opposite(side);
+  }
+
+  // determines if the given cell has a wire through the given side
+  boolean hasSide(int cell, int side) {
+    return (this.links[cell] & (1 << side)) != 0;
+  }
+
+  // rotates the given cell clockwise once
+  void rotate(int cell) {
+    this.links[cell] = (byte) this.topology.rotate(this.links[cell]);
+  }
+
+  // rotates every cell a random number of times, visiting cells in order
+  void scramble(Random rand) {
+    for (int cell = 0; cell < this.topology.cells; cell++) {
+      int rotations = rand.nextInt(this.topology.sides);
+
+      for (int k = 0; k < rotations; k++) {
+        this.rotate(cell);
+      }
+    }
+  }
+
+  // rotates every cell a random number of times, many cells per random number
+  // and in parallel on large boards
+  void bulkScramble(Random rand) {
+    BulkScramble.scramble(this.links, this.topology.sides, rand);
+  }
+
+  // updates the power status of every cell, starting at the power station
+  void propagate() {
+    GridTopology t = this.topology;
+    int head = 0;
+    int tail = 0;
+
+    for (int cell = 0; cell < t.cells; cell++) {
+      this.powered[cell] = false;
+    }
+    this.reached = 0;
+    if (t.cells == 0) {
+      return;
+    }
+    this.powered[this.station] = true;
+    this.queue[tail++] = this.station;
+
+    while (head < tail) {
+      int cell = this.queue[head++];
+
+      for (int i = t.start[cell]; i < t.start[cell + 1]; i++) {
+        int to = t.neighbors[i];
+        int side = t.sideOf[i];
+
+        if (!this.powered[to] && this.hasSide(cell, side) && this.hasSide(to, t.opposite(side))) {
+          this.powered[to] = true;
+          this.queue[tail++] = to;
+        }
+      }
+    }
+    this.reached = tail;
+  }
+
+  // moves the power station through the given side onto a powered neighbor it is
+  // wired to, like the arrow keys of a game; determines if it moved
+  boolean moveStation(int side) {
+    int to = this.topology.neighbor(this.station, side);
+
+    if (to >= 0 && this.hasSide(this.station, side) && this.powered[to]) {
+      this.station = to;
+      return true;
+    }
+    return false;
+  }
+
+  // counts the powered cells
+  int poweredCount() {
+    int count = 0;
+
+    for (int cell = 0; cell < this.topology.cells; cell++) {
+      if (this.powered[cell]) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  // determines if every cell is powered
+  boolean allPowered() {
+    for (int cell = 0; cell < this.topology.cells; cell++) {
+      if (!this.powered[cell]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // packs the wires and power of a game's board
+  static PackedBoard of(LightEmAll game) {
+    PackedBoard packed = new PackedBoard(game.topology);
+
+    for (int cell = 0; cell < game.topology.cells; cell++) {
+      GamePiece piece = game.board.get(game.topology.col(cell)).get(game.topology.row(cell));
+
+      packed.links[cell] = (byte) piece.links();
+      packed.powered[cell] = piece.powered;
+    }
+    packed.station = game.topology.cell(game.powerCol, game.powerRow);
+    return packed;
+  }
+}
+
+//Examples and tests for packed boards
+class ExamplesPackedBoard {
+
+  // tests generating and solving packed boards of every kind
+  void testPackedBoard(Tester t) {
+    ITreeGenerator[] generators = { new KruskalGenerator(), new PrimGenerator(),
+        new WilsonGenerator() };
+
+    for (int kind = 0; kind < 3; kind++) {
+      for (ITreeGenerator generator : generators) {
+        PackedBoard board = new PackedBoard(new GridTopology(5, 4, kind));
+
+        board.generate(generator, new Random(kind));
+
+        // undo the scramble by laying the wires along a fresh tree
+        int[] tree = generator.spanningTree(board.topology, new Random(4));
+        Arrays.fill(board.links, (byte) 0);
+        for (int i = 0; i < board.topology.cells - 1; i++) {
+          board.connect(tree[i]);
+        }
+        board.propagate();
+        t.checkExpect(board.allPowered(), true);
+
+        // turning a dead end away from its only neighbor cuts it off
+        int deadEnd = 0;
+        while (Integer.bitCount(board.links[deadEnd]) != 1) {
+          deadEnd++;
+        }
+        board.rotate(deadEnd);
+        board.propagate();
+        t.checkExpect(board.allPowered(), false);
+        t.checkExpect(board.powered[deadEnd], deadEnd == board.station);
+      }
+    }
+  }
+
+  // tests that a packed Kruskal board matches the LightEmAll board from the same seed
+  void testPackedMatchesGame(Tester t) {
+    LightEmAll game = new LightEmAll(4, 6, true, new Random(8));
+    PackedBoard packed = new PackedBoard(new GridTopology(4, 6, GridTopology.SQUARE));
+
+    game.initializeGame();
+    packed.generate(new KruskalGenerator(), new Random(8));
+
+    t.checkExpect(PackedBoard.of(game).links, packed.links);
+    t.checkExpect(PackedBoard.of(game).powered, packed.powered);
+  }
+}
@@ -0,0 +1,233 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents one version of a board that never changes, so that searches can keep
+//as many versions as they like. The wires of the cells sit in chunks of 32 link
+//masks at the leaves of a tree with 32 children to a node, in the cell order of
+//the topology. Rotating a cell copies only the path from the root to its chunk
+//and shares every other chunk with the version it came from.
+class PersistentBoard {
+  // bits of a cell index used at each level, and the chunk size they give
+  static final int BITS = 5;
+  static final int WIDTH = 1 << BITS;
+  static final int MASK = WIDTH - 1;
+
+  GridTopology topology;
+  Object root; // a byte[] chunk if shift is 0, an Object[] of children otherwise
+  int shift; // the bits of a cell index below the root's children
+  int station; // the cell of the power station
+
+  PersistentBoard(GridTopology topology, Object root, int shift, int station) {
+    this.topology = topology;
+    this.root = root;
+    this.shift = shift;
+    this.station = station;
+  }
+
+  // the version holding the wires and station of a packed board
+  static PersistentBoard of(PackedBoard board) {
+    int cells = board.topology.cells;
+    ArrayList<Object> level = new ArrayList<Object>();
+    int shift = 0;
+
+    for (int start = 0; start < Math.max(cells, 1); start += WIDTH) {
+      byte[] chunk = new byte[WIDTH];
+
+      System.arraycopy(board.links, start, chunk, 0, Math.max(0, Math.min(WIDTH, cells - start)));
+      level.add(chunk);
+    }
+    while (level.size() > 1) {
+      ArrayList<Object> parents = new ArrayList<Object>();
+
+      for (int start = 0; start < level.size(); start += WIDTH) {
+        Object[] node = new Object[WIDTH];
+
+        for (int i = 0; i < WIDTH && start + i < level.size(); i++) {
+          node[i] = level.get(start + i);
+        }
+        parents.add(node);
+      }
+      level = parents;
+      shift += BITS;
+    }
+    return new PersistentBoard(board.topology, level.get(0), shift, board.station);
+  }
+
+  // the chunk holding the given cell
+  byte[] chunk(int cell) {
+    Object node = this.root;
+
+    for (int s = this.shift; s > 0; s -= BITS) {
+      node = ((Object[]) node)[(cell >>> s) & MASK];
+    }
+    return (byte[]) node;
+  }
+
+  // the link mask of the given cell
+  int links(int cell) {
+    return this.chunk(cell)[cell & MASK];
+  }
+
+  // determines if the given cell has a wire through the given side
+  boolean hasSide(int cell, int side) {
+    return (this.links(cell) & (1 << side)) != 0;
+  }
+
+  // the version with the given cell rotated clockwise once
+  PersistentBoard rotate(int cell) {
+    this.checkCell(cell);
+    return this.withLinks(cell, this.topology.rotate(this.links(cell)));
+  }
+
+  // the version with the given link mask on the given cell
+  PersistentBoard withLinks(int cell, int links) {
+    this.checkCell(cell);
+    return new PersistentBoard(this.topology, set(this.root, this.shift, cell, links),
+        this.shift, this.station);
+  }
+
+  // the version with the power station on the given cell
+  PersistentBoard withStation(int cell) {
+    this.checkCell(cell);
+    return new PersistentBoard(this.topology, this.root, this.shift, cell);
+  }
+
+  // throws if the given cell is not on the board
+  void checkCell(int cell) {
+    if (cell < 0 || cell >= this.topology.cells) {
+      throw new IllegalArgumentException("There is no cell " + cell + " on this board");
+    }
+  }
+
+  // a copy of the given node with the given cell below it set, copying only the
+  // nodes on the way down
+  static Object set(Object node, int shift, int cell, int links) {
+    if (shift == 0) {
+      byte[] chunk = ((byte[]) node).clone();
+
+      chunk[cell & MASK] = (byte) links;
+      return chunk;
+    }
+    Object[] children = ((Object[]) node).clone();
+    int i = (cell >>> shift) & MASK;
+
+    children[i] = set(children[i], shift - BITS, cell, links);
+    return children;
+  }
+
+  // copies this version into the given packed board of the same topology and
+  // powers it
+  void unpackInto(PackedBoard board) {
+    int cells = this.topology.cells;
+
+    for (int start = 0; start < cells; start += WIDTH) {
+      System.arraycopy(this.chunk(start), 0, board.links, start, Math.min(WIDTH, cells - start));
+    }
+    board.station = this.station;
+    board.propagate();
+  }
+
+  // a powered packed copy of this version
+  PackedBoard unpack() {
+    PackedBoard board = new PackedBoard(this.topology);
+
+    this.unpackInto(board);
+    return board;
+  }
+}
+
+//Examples and tests for persistent boards
+class ExamplesPersistentBoard {
+
+  // makes a scrambled packed board
+  PackedBoard packed(int width, int height, int seed) {
+    PackedBoard board = new PackedBoard(new GridTopology(width, height, GridTopology.SQUARE));
+
+    board.generate(new KruskalGenerator(), new Random(seed));
+    return board;
+  }
+
+  // adds the chunks below the given node to the list
+  void chunks(Object node, int shift, ArrayList<Object> found) {
+    if (shift == 0) {
+      found.add(node);
+    }
+    else {
+      for (Object child : (Object[]) node) {
+        if (child != null) {
+          this.chunks(child, shift - PersistentBoard.BITS, found);
+        }
+      }
+    }
+  }
+
+  // tests packing and unpacking boards of several sizes
+  void testRoundTrip(Tester t) {
+    int[][] sizes = { { 1, 1 }, { 4, 8 }, { 5, 7 }, { 33, 33 }, { 100, 100 } };
+
+    for (int[] size : sizes) {
+      PackedBoard board = this.packed(size[0], size[1], 3);
+      PersistentBoard version = PersistentBoard.of(board);
+      PackedBoard back = version.unpack();
+
+      t.checkExpect(back.links, board.links);
+      t.checkExpect(back.powered, board.powered);
+      t.checkExpect(back.station, board.station);
+    }
+    t.checkExpect(PersistentBoard.of(this.packed(4, 8, 3)).shift, 0);
+    t.checkExpect(PersistentBoard.of(this.packed(5, 7, 3)).shift, 5);
+    t.checkExpect(PersistentBoard.of(this.packed(100, 100, 3)).shift, 10);
+  }
+
+  // tests that rotating makes a new version and leaves the old one alone
+  void testRotate(Tester t) {
+    PackedBoard board = this.packed(6, 6, 1);
+    PersistentBoard first = PersistentBoard.of(board);
+    PersistentBoard second = first.rotate(20).rotate(20).withStation(7);
+
+    board.rotate(20);
+    board.rotate(20);
+    board.station = 7;
+    board.propagate();
+
+    t.checkExpect(second.unpack().links, board.links);
+    t.checkExpect(second.unpack().powered, board.powered);
+    t.checkExpect(second.station, 7);
+    t.checkExpect(first.station, 0);
+    t.checkExpect(first.unpack().links, this.packed(6, 6, 1).links);
+    t.checkExpect(second.hasSide(20, 0), (board.links[20] & 1) != 0);
+  }
+
+  // tests that a rotation shares every chunk but one with the old version
+  void testSharing(Tester t) {
+    PersistentBoard first = PersistentBoard.of(this.packed(100, 100, 2));
+    PersistentBoard second = first.rotate(5000);
+    ArrayList<Object> before = new ArrayList<Object>();
+    ArrayList<Object> after = new ArrayList<Object>();
+
+    this.chunks(first.root, first.shift, before);
+    this.chunks(second.root, second.shift, after);
+
+    int shared = 0;
+    for (int i = 0; i < before.size(); i++) {
+      if (before.get(i) == after.get(i)) {
+        shared++;
+      }
+    }
+    t.checkExpect(before.size(), 313);
+    t.checkExpect(shared, 312);
+    t.checkExpect(before.get(5000 / 32) == after.get(5000 / 32), false);
+  }
+
+  // tests that cells must be on the board
+  void testBadCell(Tester t) {
+    PersistentBoard version = PersistentBoard.of(this.packed(2, 2, 0));
+
+    t.checkException(new IllegalArgumentException("There is no cell 4 on this board"),
+        version, "rotate", 4);
+    t.checkException(new IllegalArgumentException("There is no cell -1 on this board"),
+        version, "withStation", -1);
+  }
+}
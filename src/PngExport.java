@@ -0,0 +1,343 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.imageio.ImageIO;
+
+import tester.Tester;
+
+//Writes a picture of a packed square board to a PNG file without a window. The
+//board is cut into square tiles of cells; a row of tiles is drawn in parallel on
+//plain BufferedImages, in the colors and gradient of drawGamePiece, and its pixel
+//rows are compressed into the file before the next row of tiles is drawn, so
+//memory holds one row of tiles: it grows with the width of the board, but not
+//with its height.
+class PngExport {
+  // the widest image whose lines of three bytes a pixel fit in an array
+  static final int MAX_WIDTH = (Integer.MAX_VALUE - 1) / 3;
+
+  PackedBoard board;
+  int cellPixels; // the pixels a cell takes on each side
+  int tileCells; // the cells a tile takes on each side
+
+  PngExport(PackedBoard board, int cellPixels, int tileCells) {
+    if (board.topology.sides != 4) {
+      throw new IllegalArgumentException("Only four sided boards can be drawn");
+    }
+    if (cellPixels < 1 || tileCells < 1) {
+      throw new IllegalArgumentException("Cells and tiles need at least one pixel and cell");
+    }
+    if ((long) board.topology.width * cellPixels > MAX_WIDTH
+        || (long) board.topology.height * cellPixels > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The image would be too large to write");
+    }
+    this.board = board;
+    this.cellPixels = cellPixels;
+    this.tileCells = tileCells;
+  }
+
+  // writes the whole board as a PNG image
+  void write(OutputStream out) throws IOException {
+    GridTopology t = this.board.topology;
+    int width = t.width * this.cellPixels;
+    int height = t.height * this.cellPixels;
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+    out.write(new byte[] { (byte) 137, 80, 78, 71, 13, 10, 26, 10 });
+    writeInt(header, width);
+    writeInt(header, height);
+    // eight bits per channel, red green and blue, no interlacing
+    header.write(new byte[] { 8, 2, 0, 0, 0 });
+    writeChunk(out, "IHDR", header.toByteArray(), header.size());
+
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    DeflaterOutputStream pixels = new DeflaterOutputStream(new IdatStream(out), deflater,
+        1 << 16);
+    byte[] line = new byte[1 + 3 * width];
+    int across = (t.width + this.tileCells - 1) / this.tileCells;
+
+    for (int row = 0; row < t.height; row += this.tileCells) {
+      int firstRow = row;
+      int rows = Math.min(this.tileCells, t.height - row);
+      BufferedImage[] tiles = IntStream.range(0, across).parallel()
+          .mapToObj(tile -> this.drawTile(tile * this.tileCells, firstRow,
+              Math.min(this.tileCells, t.width - tile * this.tileCells), rows))
+          .toArray(BufferedImage[]::new);
+
+      for (int y = 0; y < rows * this.cellPixels; y++) {
+        int at = 1; // every line starts with filter type 0, no filtering
+
+        for (BufferedImage tile : tiles) {
+          int[] data = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+          int start = y * tile.getWidth();
+
+          for (int x = 0; x < tile.getWidth(); x++) {
+            int rgb = data[start + x];
+            line[at++] = (byte) (rgb >>> 16);
+            line[at++] = (byte) (rgb >>> 8);
+            line[at++] = (byte) rgb;
+          }
+        }
+        pixels.write(line);
+      }
+    }
+    pixels.finish();
+    pixels.flush();
+    deflater.end();
+    writeChunk(out, "IEND", new byte[0], 0);
+    out.flush();
+  }
+
+  // draws the given block of cells, its top left cell at the given column and row
+  BufferedImage drawTile(int col, int row, int cols, int rows) {
+    GridTopology t = this.board.topology;
+    BufferedImage tile = new BufferedImage(cols * this.cellPixels, rows * this.cellPixels,
+        BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = tile.createGraphics();
+    double scale = this.cellPixels / (double) IUtils.CELL_SIZE;
+
+    for (int c = 0; c < cols; c++) {
+      for (int r = 0; r < rows; r++) {
+        int cell = t.cell(col + c, row + r);
+        Graphics2D cellGraphics = (Graphics2D) g.create();
+
+        cellGraphics.translate(c * this.cellPixels, r * this.cellPixels);
+        cellGraphics.scale(scale, scale);
+        drawCell(cellGraphics, this.board.links[cell], this.color(col + c, row + r),
+            cell == this.board.station);
+        cellGraphics.dispose();
+      }
+    }
+    g.dispose();
+    return tile;
+  }
+
+  // the color of the wires of the cell at the given column and row: the gradient
+  // of drawGamePiece if it is powered, and the unlit color if not
+  Color color(int col, int row) {
+    GridTopology t = this.board.topology;
+
+    if (!this.board.powered[t.cell(col, row)]) {
+      return IUtils.UNLIT_COLOR;
+    }
+    int distance = Math.abs(row - t.row(this.board.station))
+        + Math.abs(col - t.col(this.board.station));
+    int shade = Math.min(Math.max(255 - distance * 30, 0), 255);
+
+    return new Color(shade, shade, 12);
+  }
+
+  // draws one cell of CELL_SIZE pixels, as drawGamePiece does: a framed dark
+  // square, a small square in the middle and an arm to every side with a wire,
+  // and the star of the power station on top
+  static void drawCell(Graphics2D g, int links, Color color, boolean station) {
+    int size = IUtils.CELL_SIZE;
+    int quarter = size / 4;
+    int middle = size / 2;
+
+    g.setColor(IUtils.GP_COLOR);
+    g.fillRect(0, 0, size, size);
+    g.setColor(Color.BLACK);
+    g.drawRect(0, 0, size - 1, size - 1);
+
+    g.setColor(color);
+    g.fillRect(middle - quarter / 2, middle - quarter / 2, quarter, quarter);
+    if ((links & (1 << IUtils.TOP)) != 0) {
+      g.fillRect(middle - quarter / 2, 0, quarter, middle);
+    }
+    if ((links & (1 << IUtils.BOTTOM)) != 0) {
+      g.fillRect(middle - quarter / 2, middle, quarter, middle);
+    }
+    if ((links & (1 << IUtils.LEFT)) != 0) {
+      g.fillRect(0, middle - quarter / 2, middle, quarter);
+    }
+    if ((links & (1 << IUtils.RIGHT)) != 0) {
+      g.fillRect(middle, middle - quarter / 2, middle, quarter);
+    }
+
+    if (station) {
+      // two equilateral triangles with sides of 20, one upside down
+      int half = 10;
+      int rise = (int) Math.round(10 * Math.sqrt(3) / 2);
+
+      g.setColor(Color.CYAN);
+      g.fillPolygon(new Polygon(new int[] { middle, middle - half, middle + half },
+          new int[] { middle - rise, middle + rise, middle + rise }, 3));
+      g.fillPolygon(new Polygon(new int[] { middle, middle - half, middle + half },
+          new int[] { middle + rise, middle - rise, middle - rise }, 3));
+    }
+  }
+
+  // writes a big endian int
+  static void writeInt(OutputStream out, int value) throws IOException {
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  // writes a PNG chunk of the given type holding the first length bytes of data
+  static void writeChunk(OutputStream out, String type, byte[] data, int length)
+      throws IOException {
+    byte[] name = type.getBytes("US-ASCII");
+    CRC32 crc = new CRC32();
+
+    crc.update(name);
+    crc.update(data, 0, length);
+    writeInt(out, length);
+    out.write(name);
+    out.write(data, 0, length);
+    writeInt(out, (int) crc.getValue());
+  }
+
+  // writes a picture of a new board, optionally given its width, height, seed,
+  // pixels per cell and file name
+  public static void main(String[] args) throws IOException {
+    int width = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int height = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+    int cellPixels = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+    String file = args.length > 4 ? args[4] : "board.png";
+    PackedBoard board = new PackedBoard(new GridTopology(width, height, GridTopology.SQUARE));
+
+    board.generate(new KruskalGenerator(), new Random(seed));
+
+    long start = System.nanoTime();
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+      new PngExport(board, cellPixels, 64).write(out);
+    }
+    System.out.printf("%d x %d pixels in %.2f s, written to %s%n", width * cellPixels,
+        height * cellPixels, (System.nanoTime() - start) / 1e9, file);
+  }
+}
+
+//Represents the compressed pixels of a PNG image, written out as IDAT chunks of
+//up to 64 KB
+class IdatStream extends OutputStream {
+  OutputStream out;
+  byte[] buffer = new byte[1 << 16];
+  int size;
+
+  IdatStream(OutputStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (this.size == this.buffer.length) {
+      this.flush();
+    }
+    this.buffer[this.size++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    while (length > 0) {
+      if (this.size == this.buffer.length) {
+        this.flush();
+      }
+      int part = Math.min(length, this.buffer.length - this.size);
+
+      System.arraycopy(bytes, offset, this.buffer, this.size, part);
+      this.size += part;
+      offset += part;
+      length -= part;
+    }
+  }
+
+  // writes out the bytes so far as one chunk
+  @Override
+  public void flush() throws IOException {
+    if (this.size > 0) {
+      PngExport.writeChunk(this.out, "IDAT", this.buffer, this.size);
+      this.size = 0;
+    }
+  }
+}
+
+//Examples and tests for PNG export
+class ExamplesPngExport {
+
+  // writes the given board to an image and reads it back
+  BufferedImage export(PackedBoard board, int cellPixels, int tileCells) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new PngExport(board, cellPixels, tileCells).write(out);
+    return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  // tests the colors of a wire of three cells, the station at its left end and the
+  // right end turned away
+  void testColors(Tester t) throws IOException {
+    PackedBoard line = new PackedBoard(new GridTopology(3, 1, GridTopology.SQUARE));
+    line.links[0] = 0b0010;
+    line.links[1] = 0b1010;
+    line.links[2] = 0b0001;
+    line.propagate();
+
+    BufferedImage image = this.export(line, 50, 2);
+
+    t.checkExpect(image.getWidth(), 150);
+    t.checkExpect(image.getHeight(), 50);
+    // the frame, the dark square and the station
+    t.checkExpect(image.getRGB(0, 0) & 0xFFFFFF, 0);
+    t.checkExpect(image.getRGB(3, 3) & 0xFFFFFF, IUtils.GP_COLOR.getRGB() & 0xFFFFFF);
+    t.checkExpect(image.getRGB(25, 25) & 0xFFFFFF, 0x00FFFF);
+    // one step from the station, powered wires are a shade darker
+    t.checkExpect(image.getRGB(75, 25) & 0xFFFFFF, new Color(225, 225, 12).getRGB() & 0xFFFFFF);
+    t.checkExpect(image.getRGB(55, 25) & 0xFFFFFF, new Color(225, 225, 12).getRGB() & 0xFFFFFF);
+    t.checkExpect(image.getRGB(75, 10) & 0xFFFFFF, IUtils.GP_COLOR.getRGB() & 0xFFFFFF);
+    // the unpowered end has its wire to the top in the unlit color
+    t.checkExpect(image.getRGB(125, 10) & 0xFFFFFF, IUtils.UNLIT_COLOR.getRGB() & 0xFFFFFF);
+    t.checkExpect(image.getRGB(140, 25) & 0xFFFFFF, IUtils.GP_COLOR.getRGB() & 0xFFFFFF);
+  }
+
+  // tests that the size of tiles never changes the picture
+  void testTiles(Tester t) throws IOException {
+    PackedBoard board = new PackedBoard(new GridTopology(11, 7, GridTopology.SQUARE));
+    board.generate(new KruskalGenerator(), new Random(3));
+
+    BufferedImage whole = this.export(board, 6, 100);
+    BufferedImage small = this.export(board, 6, 3);
+
+    t.checkExpect(whole.getWidth(), 66);
+    t.checkExpect(whole.getHeight(), 42);
+    t.checkExpect(small.getRGB(0, 0, 66, 42, null, 0, 66),
+        whole.getRGB(0, 0, 66, 42, null, 0, 66));
+  }
+
+  // tests that only square grids of a size that fits an image can be drawn
+  void testBadBoards(Tester t) {
+    PackedBoard hex = new PackedBoard(new GridTopology(2, 2, GridTopology.HEX));
+    PackedBoard square = new PackedBoard(new GridTopology(2, 2, GridTopology.SQUARE));
+
+    t.checkConstructorException(
+        new IllegalArgumentException("Only four sided boards can be drawn"), "PngExport", hex,
+        10, 10);
+    t.checkConstructorException(
+        new IllegalArgumentException("Cells and tiles need at least one pixel and cell"),
+        "PngExport", square, 0, 10);
+
+    // the width in pixels would not fit a line, or not even an int
+    PackedBoard wide = new PackedBoard(new GridTopology(1000, 1, GridTopology.SQUARE));
+    PackedBoard wider = new PackedBoard(new GridTopology(5000, 1, GridTopology.SQUARE));
+    IllegalArgumentException tooLarge =
+        new IllegalArgumentException("The image would be too large to write");
+    t.checkConstructorException(tooLarge, "PngExport", wide, 1 << 20, 10);
+    t.checkConstructorException(tooLarge, "PngExport", wider, 1 << 20, 10);
+    t.checkExpect(new PngExport(wide, 1 << 19, 10).cellPixels, 1 << 19);
+  }
+}
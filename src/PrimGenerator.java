@@ -0,0 +1,66 @@
+import java.util.Arrays;
+import java.util.Random;
+
+//Generates boards with Prim's algorithm over randomly weighted edges, growing a
+//single tree from the first cell
+class PrimGenerator extends AGridGenerator {
+  int[] weights; // the weight of each edge
+  int[] bestEdge; // the cheapest known edge into each cell outside of the tree
+  IndexedMinHeap frontier;
+
+  // resizes the buffers for the given topology
+  void resize(GridTopology topology) {
+    this.weights = new int[topology.edges];
+    this.bestEdge = new int[topology.cells];
+    this.frontier = new IndexedMinHeap(topology.cells);
+  }
+
+  // produces the minimum spanning tree of randomly weighted edges
+  public int[] spanningTree(GridTopology topology, Random rand) {
+    int size = 0;
+
+    this.prepare(topology);
+    for (int e = 0; e < topology.edges; e++) {
+      this.weights[e] = rand.nextInt(25);
+    }
+    if (topology.cells == 0) {
+      return this.tree;
+    }
+    Arrays.fill(this.bestEdge, -1);
+    this.frontier.clear();
+
+    this.frontier.insert(0, 0);
+    while (!this.frontier.isEmpty()) {
+      int cell = this.frontier.pollMin();
+
+      this.inTree[cell] = true;
+      if (this.bestEdge[cell] >= 0) {
+        this.tree[size++] = this.bestEdge[cell];
+      }
+
+      for (int i = topology.start[cell]; i < topology.start[cell + 1]; i++) {
+        int edge = topology.edgeOf[i];
+        int other = topology.neighbors[i];
+        int weight = this.weights[edge];
+
+        if (this.inTree[other]) {
+          // already connected
+        }
+        else if (!this.frontier.contains(other)) {
+          this.bestEdge[other] = edge;
+          this.frontier.insert(other, weight);
+        }
+        else if (weight < this.frontier.keyOf(other)) {
+          this.bestEdge[other] = edge;
+          this.frontier.decreaseKey(other, weight);
+        }
+      }
+    }
+    return this.tree;
+  }
+
+  // the name of this strategy
+  public String name() {
+    return "prim";
+  }
+}
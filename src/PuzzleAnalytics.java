@@ -0,0 +1,437 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import tester.Tester;
+
+//Represents the measurements of one generated puzzle, taken from its solved and
+//scrambled wires without drawing anything
+class PuzzleStats {
+  GridTopology topology;
+
+  int diameter; // the most wires between two cells of the solved tree
+  int[] degrees; // the number of cells with each number of wires
+  int straights; // cells with two wires straight across from each other
+  int minRotations; // the fewest clockwise turns that solve the scrambled board
+  int branchingCells; // cells still open after constraint propagation
+  double searchBits; // log2 of the orientations left to search over
+
+  // the masks each cell may still take after constraint propagation, mask m
+  // being bit m
+  long[] options;
+
+  PuzzleStats(GridTopology topology, byte[] solution, byte[] scrambled) {
+    this.topology = topology;
+    this.degrees = new int[topology.sides + 1];
+
+    int[] distance = new int[topology.cells];
+    int[] queue = new int[topology.cells];
+    int far = this.farthest(solution, 0, distance, queue);
+    this.diameter = distance[this.farthest(solution, far, distance, queue)];
+
+    for (int cell = 0; cell < topology.cells; cell++) {
+      int links = solution[cell];
+      this.degrees[Integer.bitCount(links)]++;
+
+      if (Integer.bitCount(links) == 2 && this.turned(links, topology.sides / 2) == links) {
+        this.straights++;
+      }
+      this.minRotations += this.turnsBetween(scrambled[cell], links);
+    }
+    this.propagateConstraints(scrambled);
+  }
+
+  // generates a board the way PackedBoard.generate does and measures it
+  static PuzzleStats generate(GridTopology topology, ITreeGenerator generator, Random rand) {
+    PackedBoard board = new PackedBoard(topology);
+    int[] tree = generator.spanningTree(topology, rand);
+
+    for (int i = 0; i < topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    byte[] solution = board.links.clone();
+    board.scramble(rand);
+    return new PuzzleStats(topology, solution, board.links);
+  }
+
+  // the given link mask turned clockwise the given number of times
+  int turned(int links, int turns) {
+    for (int k = 0; k < turns; k++) {
+      links = this.topology.rotate(links);
+    }
+    return links;
+  }
+
+  // the fewest clockwise turns from one mask to another, so a piece that looks
+  // the same after half a turn never needs more than that
+  int turnsBetween(int from, int to) {
+    for (int turns = 0; turns < this.topology.sides; turns++) {
+      if (this.turned(from, turns) == to) {
+        return turns;
+      }
+    }
+    throw new IllegalArgumentException("No turn makes " + from + " into " + to);
+  }
+
+  // measures the distance along wires from the given cell to every cell it
+  // reaches, returning the farthest one
+  int farthest(byte[] links, int from, int[] distance, int[] queue) {
+    GridTopology t = this.topology;
+    int head = 0;
+    int tail = 0;
+    int last = from;
+
+    if (t.cells == 0) {
+      return 0;
+    }
+    Arrays.fill(distance, -1);
+    distance[from] = 0;
+    queue[tail++] = from;
+
+    while (head < tail) {
+      int cell = queue[head++];
+      last = cell;
+
+      for (int i = t.start[cell]; i < t.start[cell + 1]; i++) {
+        int to = t.neighbors[i];
+        int side = t.sideOf[i];
+
+        if (distance[to] < 0 && (links[cell] & (1 << side)) != 0
+            && (links[to] & (1 << t.opposite(side))) != 0) {
+          distance[to] = distance[cell] + 1;
+          queue[tail++] = to;
+        }
+      }
+    }
+    return last;
+  }
+
+  // narrows every cell to the orientations that keep its wires off the edge of
+  // the board and agree with what its neighbors can still do, until nothing
+  // changes, then counts what is left for a search to branch on
+  void propagateConstraints(byte[] scrambled) {
+    GridTopology t = this.topology;
+    long[] options = new long[t.cells];
+    int[] worklist = new int[t.cells];
+    boolean[] waiting = new boolean[t.cells];
+    int size = 0;
+
+    for (int cell = 0; cell < t.cells; cell++) {
+      for (int turns = 0; turns < t.sides; turns++) {
+        int links = this.turned(scrambled[cell], turns);
+        boolean offBoard = false;
+
+        for (int side = 0; side < t.sides; side++) {
+          offBoard |= (links & (1 << side)) != 0 && t.neighbor(cell, side) < 0;
+        }
+        if (!offBoard) {
+          options[cell] |= 1L << links;
+        }
+      }
+      worklist[size++] = cell;
+      waiting[cell] = true;
+    }
+
+    while (size > 0) {
+      int cell = worklist[--size];
+      waiting[cell] = false;
+
+      for (int side = 0; side < t.sides; side++) {
+        int other = t.neighbor(cell, side);
+
+        if (other < 0) {
+          continue;
+        }
+        int back = t.opposite(side);
+        long narrowed = options[other] & this.agreeing(options[cell], side, back, t.sides);
+
+        if (narrowed != options[other]) {
+          options[other] = narrowed;
+          if (!waiting[other]) {
+            waiting[other] = true;
+            worklist[size++] = other;
+          }
+        }
+      }
+    }
+
+    this.options = options;
+    for (int cell = 0; cell < t.cells; cell++) {
+      int left = Long.bitCount(options[cell]);
+
+      if (left > 1) {
+        this.branchingCells++;
+        this.searchBits += Math.log(left) / Math.log(2);
+      }
+    }
+  }
+
+  // the masks of a neighbor whose wire through side back agrees with some mask in
+  // options on the wire through side
+  long agreeing(long options, int side, int back, int sides) {
+    boolean wire = false;
+    boolean none = false;
+
+    for (int links = 0; links < 1 << sides; links++) {
+      if ((options & (1L << links)) != 0) {
+        wire |= (links & (1 << side)) != 0;
+        none |= (links & (1 << side)) == 0;
+      }
+    }
+    long allowed = 0;
+    for (int links = 0; links < 1 << sides; links++) {
+      boolean has = (links & (1 << back)) != 0;
+
+      if (has ? wire : none) {
+        allowed |= 1L << links;
+      }
+    }
+    return allowed;
+  }
+}
+
+//Represents counts of how often each whole number value was seen
+class Histogram {
+  long[] counts = new long[0];
+
+  // counts one more of the given value
+  void add(int value) {
+    if (value >= this.counts.length) {
+      this.counts = Arrays.copyOf(this.counts, Math.max(value + 1, this.counts.length * 2));
+    }
+    this.counts[value]++;
+  }
+
+  // adds the counts of another histogram to these
+  void merge(Histogram that) {
+    if (that.counts.length > this.counts.length) {
+      this.counts = Arrays.copyOf(this.counts, that.counts.length);
+    }
+    for (int value = 0; value < that.counts.length; value++) {
+      this.counts[value] += that.counts[value];
+    }
+  }
+
+  // the number of values counted
+  long total() {
+    long total = 0;
+
+    for (long count : this.counts) {
+      total += count;
+    }
+    return total;
+  }
+
+  // writes a CSV row for every value seen, under the given metric name
+  void write(String metric, Writer out) throws IOException {
+    for (int value = 0; value < this.counts.length; value++) {
+      if (this.counts[value] > 0) {
+        out.write(metric + "," + value + "," + this.counts[value] + "\n");
+      }
+    }
+  }
+}
+
+//Represents the histograms of every measurement over a batch of puzzles
+class PuzzleHistograms {
+  static final String[] METRICS = { "diameter", "dead_ends", "straights", "elbows", "tees",
+      "crosses", "min_rotations", "branching_cells", "search_bits" };
+
+  Histogram[] histograms = new Histogram[METRICS.length];
+
+  PuzzleHistograms() {
+    for (int i = 0; i < METRICS.length; i++) {
+      this.histograms[i] = new Histogram();
+    }
+  }
+
+  // counts the measurements of one puzzle
+  void add(PuzzleStats stats) {
+    int[] d = stats.degrees;
+    int[] values = { stats.diameter, d[1], stats.straights, d[2] - stats.straights,
+        d.length > 3 ? d[3] : 0, d.length > 4 ? d[4] : 0, stats.minRotations,
+        stats.branchingCells, (int) Math.round(stats.searchBits) };
+
+    for (int i = 0; i < METRICS.length; i++) {
+      this.histograms[i].add(values[i]);
+    }
+  }
+
+  // adds the counts of another batch to these
+  void merge(PuzzleHistograms that) {
+    for (int i = 0; i < METRICS.length; i++) {
+      this.histograms[i].merge(that.histograms[i]);
+    }
+  }
+
+  // writes every histogram as CSV rows of metric, value and number of boards
+  void write(Writer out) throws IOException {
+    out.write("metric,value,boards\n");
+    for (int i = 0; i < METRICS.length; i++) {
+      this.histograms[i].write(METRICS[i], out);
+    }
+    out.flush();
+  }
+}
+
+//Generates and measures a batch of puzzles on every core. Puzzle i is always
+//generated from seed + i, and histograms only add up counts, so a batch gives the
+//same numbers however its puzzles are spread over threads.
+class PuzzleAnalytics {
+
+  // measures the given number of puzzles of the given topology
+  static PuzzleHistograms run(GridTopology topology, long seed, int count) {
+    ThreadLocal<ITreeGenerator> generators = ThreadLocal.withInitial(KruskalGenerator::new);
+
+    return IntStream.range(0, count).parallel()
+        .mapToObj(i -> PuzzleStats.generate(topology, generators.get(), new Random(seed + i)))
+        .collect(PuzzleHistograms::new, PuzzleHistograms::add, PuzzleHistograms::merge);
+  }
+
+  // writes the histograms of a batch to a CSV file, optionally given the width,
+  // height, number of puzzles, first seed and file name
+  public static void main(String[] args) throws IOException {
+    int width = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    int height = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int count = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+    long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+    String file = args.length > 4 ? args[4] : "puzzle-stats.csv";
+
+    long start = System.nanoTime();
+    PuzzleHistograms histograms = run(new GridTopology(width, height, GridTopology.SQUARE),
+        seed, count);
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    try (BufferedWriter out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+      histograms.write(out);
+    }
+    System.out.printf("%d boards of %d x %d in %.2f s (%.0f boards/s), written to %s%n", count,
+        width, height, seconds, count / seconds, file);
+  }
+}
+
+//Examples and tests for puzzle analytics
+class ExamplesPuzzleAnalytics {
+
+  // makes a board from link masks given in cell order
+  byte[] links(int... masks) {
+    byte[] links = new byte[masks.length];
+
+    for (int i = 0; i < masks.length; i++) {
+      links[i] = (byte) masks[i];
+    }
+    return links;
+  }
+
+  // tests the measurements of a straight line of three cells
+  void testLine(Tester t) {
+    GridTopology line = new GridTopology(3, 1, GridTopology.SQUARE);
+    PuzzleStats stats = new PuzzleStats(line, this.links(0b0010, 0b1010, 0b1000),
+        this.links(0b0100, 0b0101, 0b0001));
+
+    t.checkExpect(stats.diameter, 2);
+    t.checkExpect(stats.degrees, new int[] { 0, 2, 1, 0, 0 });
+    t.checkExpect(stats.straights, 1);
+    // three turns, one and three: the straight piece needs one turn, not three
+    t.checkExpect(stats.minRotations, 7);
+    // the edges of the board leave every cell one way to point
+    t.checkExpect(stats.branchingCells, 0);
+    t.checkExpect(stats.searchBits, 0.0);
+  }
+
+  // tests a T piece and a cross in the middle of a plus shape
+  void testPlus(Tester t) {
+    GridTopology grid = new GridTopology(3, 3, GridTopology.SQUARE);
+    // column major: (0,0) (0,1) (0,2) (1,0) (1,1) (1,2) (2,0) (2,1) (2,2)
+    byte[] solved = this.links(0b0100, 0b0111, 0b0001, 0b0100, 0b1111, 0b0001, 0b0100,
+        0b1101, 0b0001);
+    PuzzleStats stats = new PuzzleStats(grid, solved, solved);
+
+    t.checkExpect(stats.degrees, new int[] { 0, 6, 0, 2, 1 });
+    t.checkExpect(stats.diameter, 4);
+    t.checkExpect(stats.minRotations, 0);
+    t.checkExpect(stats.turnsBetween(0b0011, 0b1001), 3);
+  }
+
+  // tests that constraint propagation never rules out the solution and leaves
+  // some choices to search on larger boards
+  void testBranching(Tester t) {
+    GridTopology grid = new GridTopology(8, 8, GridTopology.SQUARE);
+    boolean sound = true;
+    int open = 0;
+
+    for (int seed = 0; seed < 20; seed++) {
+      Random rand = new Random(seed);
+      PackedBoard board = new PackedBoard(grid);
+      int[] tree = new KruskalGenerator().spanningTree(grid, rand);
+
+      for (int i = 0; i < grid.cells - 1; i++) {
+        board.connect(tree[i]);
+      }
+      byte[] solved = board.links.clone();
+      board.scramble(rand);
+      PuzzleStats stats = new PuzzleStats(grid, solved, board.links);
+
+      for (int cell = 0; cell < grid.cells; cell++) {
+        sound &= (stats.options[cell] & (1L << solved[cell])) != 0;
+      }
+      open += stats.branchingCells;
+      sound &= stats.searchBits >= stats.branchingCells;
+    }
+    t.checkExpect(sound, true);
+    t.checkExpect(open > 0, true);
+  }
+
+  // tests that histograms count and merge
+  void testHistogram(Tester t) {
+    Histogram first = new Histogram();
+    Histogram second = new Histogram();
+
+    first.add(2);
+    first.add(2);
+    second.add(5);
+    first.merge(second);
+
+    t.checkExpect(first.counts, new long[] { 0, 0, 2, 0, 0, 1 });
+    t.checkExpect(first.total(), 3L);
+  }
+
+  // tests that a parallel batch always gives the same CSV
+  void testBatch(Tester t) throws IOException {
+    GridTopology grid = new GridTopology(7, 6, GridTopology.SQUARE);
+    PuzzleHistograms first = PuzzleAnalytics.run(grid, 10, 300);
+    PuzzleHistograms second = PuzzleAnalytics.run(grid, 10, 300);
+    StringWriter one = new StringWriter();
+    StringWriter two = new StringWriter();
+
+    first.write(one);
+    second.write(two);
+
+    t.checkExpect(one.toString(), two.toString());
+    t.checkExpect(one.toString().startsWith("metric,value,boards\ndiameter,"), true);
+    for (Histogram histogram : first.histograms) {
+      t.checkExpect(histogram.total(), 300L);
+    }
+    // every puzzle has as many dead ends as it has wires to spare at T pieces and
+    // crosses, plus two
+    long deadEnds = 0;
+    long spare = 0;
+    for (int value = 0; value < first.histograms[1].counts.length; value++) {
+      deadEnds += value * first.histograms[1].counts[value];
+    }
+    for (int value = 0; value < first.histograms[4].counts.length; value++) {
+      spare += value * first.histograms[4].counts[value];
+    }
+    for (int value = 0; value < first.histograms[5].counts.length; value++) {
+      spare += 2 * value * first.histograms[5].counts[value];
+    }
+    t.checkExpect(deadEnds, spare + 2 * 300);
+  }
+}
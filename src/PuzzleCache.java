@@ -0,0 +1,251 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents a puzzle generated from a seed: the scrambled wires a game starts
+//from, the solved wires and the station, on a square grid
+class SeededPuzzle {
+  GridTopology topology;
+  long seed;
+  byte[] links;
+  byte[] solution;
+  int station;
+
+  // generates the puzzle a LightEmAll game of this size builds from new
+  // Random(seed): Kruskal's algorithm, then a scramble, with the station at the
+  // top left
+  SeededPuzzle(GridTopology topology, long seed) {
+    PackedBoard board = new PackedBoard(topology);
+    Random rand = new Random(seed);
+    int[] tree = new KruskalGenerator().spanningTree(topology, rand);
+
+    for (int i = 0; i < topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    this.topology = topology;
+    this.seed = seed;
+    this.solution = board.links.clone();
+    board.scramble(rand);
+    this.links = board.links;
+    this.station = board.station;
+  }
+
+  // a powered board to play this puzzle on, which the puzzle does not share
+  PackedBoard board() {
+    PackedBoard board = new PackedBoard(this.topology);
+
+    System.arraycopy(this.links, 0, board.links, 0, this.links.length);
+    board.station = this.station;
+    board.propagate();
+    return board;
+  }
+
+  // roughly the bytes this puzzle takes up on the heap: the two wire arrays and
+  // the objects around them
+  long bytes() {
+    return 2L * this.links.length + 96;
+  }
+}
+
+//Represents the puzzles most recently asked for by size and seed, kept until
+//their bytes go over a budget, least recently used first. Puzzles of one size
+//share a topology, whose neighbor tables are counted against the budget once
+//while any puzzle of that size is kept, and dropped with the last of them. Misses
+//are generated outside the lock, so a slow generation never holds up hits.
+class PuzzleCache {
+  long budget; // the most bytes of puzzles and topologies to keep
+  long bytes; // the bytes of the puzzles and topologies kept now
+
+  // puzzles by "width height seed", in order of use
+  LinkedHashMap<String, SeededPuzzle> puzzles;
+
+  // topologies are never changed, so every puzzle of the same size shares one,
+  // by "width height", with the number of kept puzzles using it
+  HashMap<String, GridTopology> topologies;
+  HashMap<String, Integer> uses;
+
+  long hits;
+  long misses;
+  long evictions;
+
+  PuzzleCache(long budget) {
+    if (budget < 0) {
+      throw new IllegalArgumentException("A cache cannot have a negative budget");
+    }
+    this.budget = budget;
+    this.puzzles = new LinkedHashMap<String, SeededPuzzle>(16, 0.75f, true);
+    this.topologies = new HashMap<String, GridTopology>();
+    this.uses = new HashMap<String, Integer>();
+  }
+
+  // the puzzle of the given size and seed, generated only if it is not kept
+  SeededPuzzle get(int width, int height, long seed) {
+    String size = width + " " + height;
+    String key = size + " " + seed;
+    GridTopology topology;
+
+    synchronized (this) {
+      SeededPuzzle kept = this.puzzles.get(key);
+
+      if (kept != null) {
+        this.hits++;
+        return kept;
+      }
+      this.misses++;
+      topology = this.topologies.get(size);
+    }
+    if (topology == null) {
+      topology = new GridTopology(width, height, GridTopology.SQUARE);
+    }
+    SeededPuzzle made = new SeededPuzzle(topology, seed);
+
+    synchronized (this) {
+      // another thread may have made the same puzzle meanwhile
+      SeededPuzzle kept = this.puzzles.get(key);
+
+      if (kept != null) {
+        return kept;
+      }
+      // another thread may also have made the topology of this size, and the
+      // puzzle is kept with that one
+      GridTopology shared = this.topologies.get(size);
+      long needed = made.bytes() + (shared == null ? made.topology.bytes() : 0);
+
+      if (needed <= this.budget) {
+        if (shared == null) {
+          this.topologies.put(size, made.topology);
+          this.uses.put(size, 0);
+        }
+        else {
+          made.topology = shared;
+        }
+        this.uses.merge(size, 1, Integer::sum);
+        this.puzzles.put(key, made);
+        this.bytes += needed;
+        this.evict();
+      }
+      return made;
+    }
+  }
+
+  // drops the least recently used puzzles until the rest fit the budget, and
+  // the topology of each that was the last of its size
+  void evict() {
+    Iterator<Map.Entry<String, SeededPuzzle>> oldest = this.puzzles.entrySet().iterator();
+
+    while (this.bytes > this.budget && oldest.hasNext()) {
+      SeededPuzzle puzzle = oldest.next().getValue();
+      String size = puzzle.topology.width + " " + puzzle.topology.height;
+
+      this.bytes -= puzzle.bytes();
+      oldest.remove();
+      this.evictions++;
+      if (this.uses.merge(size, -1, Integer::sum) == 0) {
+        this.uses.remove(size);
+        this.bytes -= this.topologies.remove(size).bytes();
+      }
+    }
+  }
+
+  // the share of requests served without generating, or 0 before any request
+  synchronized double hitRate() {
+    long requests = this.hits + this.misses;
+
+    return requests == 0 ? 0 : (double) this.hits / requests;
+  }
+
+  // describes the cache's use so far
+  synchronized String stats() {
+    return String.format("%d puzzles, %d of %d bytes, %d hits, %d misses, %d evictions, "
+        + "hit rate %.3f", this.puzzles.size(), this.bytes, this.budget, this.hits, this.misses,
+        this.evictions, this.hitRate());
+  }
+}
+
+//Examples and tests for the puzzle cache
+class ExamplesPuzzleCache {
+
+  // tests that a seeded puzzle is the board a seeded game builds
+  void testSeededPuzzle(Tester t) {
+    LightEmAll game = new LightEmAll(5, 4, true, new Random(12));
+    SeededPuzzle puzzle = new SeededPuzzle(new GridTopology(5, 4, GridTopology.SQUARE), 12);
+
+    game.initializeGame();
+    t.checkExpect(puzzle.board().links, PackedBoard.of(game).links);
+    t.checkExpect(puzzle.board().powered, PackedBoard.of(game).powered);
+    t.checkExpect(puzzle.bytes(), 136L);
+
+    PackedBoard solved = puzzle.board();
+    System.arraycopy(puzzle.solution, 0, solved.links, 0, solved.links.length);
+    solved.propagate();
+    t.checkExpect(solved.allPowered(), true);
+
+    // boards handed out are copies
+    puzzle.board().rotate(0);
+    t.checkExpect(puzzle.board().links, PackedBoard.of(game).links);
+  }
+
+  // tests hits, misses and the hit rate
+  void testHits(Tester t) {
+    PuzzleCache cache = new PuzzleCache(1 << 20);
+
+    t.checkExpect(cache.hitRate(), 0.0);
+    SeededPuzzle first = cache.get(6, 6, 1);
+    t.checkExpect(cache.get(6, 6, 1) == first, true);
+    t.checkExpect(cache.get(6, 6, 1) == first, true);
+    t.checkExpect(cache.get(6, 6, 2) == first, false);
+    t.checkExpect(cache.get(6, 5, 1).topology.height, 5);
+
+    t.checkExpect(cache.hits, 2L);
+    t.checkExpect(cache.misses, 3L);
+    t.checkExpect(cache.hitRate(), 0.4);
+    t.checkExpect(cache.get(6, 6, 2).topology == first.topology, true);
+    t.checkExpect(cache.stats().startsWith("3 puzzles"), true);
+  }
+
+  // tests that the least recently used puzzles go once the budget is spent
+  void testEviction(Tester t) {
+    // each 10 by 10 puzzle takes 296 bytes besides the tables of its size, which
+    // are counted once, so three fit
+    long tables = new GridTopology(10, 10, GridTopology.SQUARE).bytes();
+    PuzzleCache cache = new PuzzleCache(tables + 900);
+
+    SeededPuzzle one = cache.get(10, 10, 1);
+    cache.get(10, 10, 2);
+    cache.get(10, 10, 3);
+    t.checkExpect(cache.bytes, tables + 888);
+    t.checkExpect(cache.uses.get("10 10"), 3);
+
+    // using the first puzzle again makes the second the least recently used
+    cache.get(10, 10, 1);
+    cache.get(10, 10, 4);
+    t.checkExpect(cache.evictions, 1L);
+    t.checkExpect(cache.puzzles.containsKey("10 10 2"), false);
+    t.checkExpect(cache.get(10, 10, 1) == one, true);
+
+    // a puzzle larger than the whole budget is made but never kept, nor its tables
+    cache.get(30, 30, 1);
+    t.checkExpect(cache.puzzles.containsKey("30 30 1"), false);
+    t.checkExpect(cache.topologies.containsKey("30 30"), false);
+    t.checkExpect(cache.bytes, tables + 888);
+
+    // a size whose tables need the room of every 10 by 10 puzzle drops them all,
+    // and their tables with the last of them
+    cache.get(10, 9, 1);
+    t.checkExpect(cache.puzzles.size(), 1);
+    t.checkExpect(cache.topologies.containsKey("10 10"), false);
+    t.checkExpect(cache.uses.containsKey("10 10"), false);
+    t.checkExpect(cache.bytes, cache.get(10, 9, 1).bytes()
+        + cache.topologies.get("10 9").bytes());
+    t.checkExpect(new GridTopology(10, 10, GridTopology.SQUARE, CellLayout.MORTON).bytes(),
+        tables + 1200);
+
+    t.checkConstructorException(
+        new IllegalArgumentException("A cache cannot have a negative budget"), "PuzzleCache",
+        -1L);
+  }
+}
@@ -0,0 +1,325 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents an operation of the game timed on boards of growing size
+interface IScalingCase {
+
+  // the name of this operation, as shown in reports
+  String name();
+
+  // the power of the number of cells the time of this operation may grow with:
+  // 1 for linear, 0 for an operation that does not depend on the board's size
+  double declared();
+
+  // sets up a board with the given number of cells on each side, untimed
+  void setUp(int side);
+
+  // runs the operation once on the board that was set up
+  void run();
+}
+
+//Times making a new game: laying out the wires, scrambling and powering them
+class GenerateCase implements IScalingCase {
+  int side;
+  LightEmAll game;
+
+  public String name() {
+    return "generate";
+  }
+
+  // KruskalGenerator sorts the edge weights with a counting sort, so generation is
+  // linear
+  public double declared() {
+    return 1;
+  }
+
+  public void setUp(int side) {
+    this.side = side;
+  }
+
+  public void run() {
+    this.game = new LightEmAll(this.side, this.side, new KruskalGenerator());
+  }
+}
+
+//Times powering a game's board from its station
+class PropagateCase implements IScalingCase {
+  LightEmAll game;
+
+  public String name() {
+    return "propagate";
+  }
+
+  public double declared() {
+    return 1;
+  }
+
+  public void setUp(int side) {
+    this.game = new LightEmAll(side, side);
+  }
+
+  public void run() {
+    this.game.continueOn();
+  }
+}
+
+//Times checking a won game for a win, which has to look at every cell
+class WinCase implements IScalingCase {
+  LightEmAll game;
+
+  public String name() {
+    return "check win";
+  }
+
+  public double declared() {
+    return 1;
+  }
+
+  public void setUp(int side) {
+    this.game = new LightEmAll(side, side, true, new Random(side));
+    this.game.initializeGame();
+    for (int cell = 0; cell < this.game.topology.cells; cell++) {
+      this.game.piece(cell).setLinks(this.game.solution[cell]);
+    }
+    this.game.continueOn();
+  }
+
+  public void run() {
+    if (!this.game.checkWin()) {
+      throw new IllegalStateException("A solved board should be won");
+    }
+  }
+}
+
+//Times drawing a frame, which only draws the cells in the window
+class RenderCase implements IScalingCase {
+  LightEmAll game;
+
+  public String name() {
+    return "render";
+  }
+
+  public double declared() {
+    return 0;
+  }
+
+  public void setUp(int side) {
+    this.game = new LightEmAll(side, side, true, new Random(side));
+    this.game.initializeGame();
+  }
+
+  public void run() {
+    this.game.makeScene();
+  }
+}
+
+//Represents the times of one operation at growing sizes, with the power of the
+//number of cells that fits them best
+class ScalingResult {
+  String name;
+  double declared;
+  int[] cells;
+  double[] nanos; // the fastest run at each size
+  double exponent;
+
+  ScalingResult(String name, double declared, int[] cells, double[] nanos) {
+    this.name = name;
+    this.declared = declared;
+    this.cells = cells;
+    this.nanos = nanos;
+    this.exponent = ScalingSuite.fit(cells, nanos);
+  }
+
+  // determines if the fitted exponent is within the declared one, give or take
+  // the noise of timing small operations
+  boolean withinDeclared() {
+    return this.withinDeclared(ScalingSuite.TOLERANCE);
+  }
+
+  // determines if the fitted exponent is within the declared one, give or take
+  // the given tolerance
+  boolean withinDeclared(double tolerance) {
+    return this.exponent <= this.declared + tolerance;
+  }
+
+  // describes this result as a row of a report
+  String row() {
+    StringBuilder row = new StringBuilder(String.format("%-10s n^%.2f (declared n^%.0f) %s",
+        this.name, this.exponent, this.declared, this.withinDeclared() ? "ok  " : "SLOW"));
+
+    for (int i = 0; i < this.cells.length; i++) {
+      row.append(String.format(" %d:%.1fus", this.cells[i], this.nanos[i] / 1000));
+    }
+    return row.toString();
+  }
+}
+
+//Runs operations on square boards whose sides double each time, and fits a
+//power law to their times by least squares on a log-log scale. An operation
+//fails when its fitted exponent goes over the one it declares by more than
+//TOLERANCE, which a quadratic operation declared linear always does. Nothing
+//here opens a window, so it runs on machines with no display.
+class ScalingSuite {
+  // how far a fitted exponent may go over the declared one, and how far in the
+  // tests, whose smaller sizes run alongside other examples and time less evenly
+  static final double TOLERANCE = 0.4;
+  static final double TEST_TOLERANCE = 0.6;
+
+  // how long each size is timed, at least, in nanoseconds
+  static final long BUDGET = 20_000_000;
+
+  // times an operation at each of the given sides, taking the fastest of several
+  // runs at each
+  static ScalingResult measure(IScalingCase operation, int[] sides) {
+    int[] cells = new int[sides.length];
+    double[] nanos = new double[sides.length];
+
+    // the first runs are interpreted, so warm up at the largest size
+    operation.setUp(sides[sides.length - 1]);
+    for (int i = 0; i < 3; i++) {
+      operation.run();
+    }
+    for (int i = 0; i < sides.length; i++) {
+      operation.setUp(sides[i]);
+      cells[i] = sides[i] * sides[i];
+      nanos[i] = Double.MAX_VALUE;
+
+      long spent = 0;
+      for (int run = 0; run < 5 || spent < BUDGET; run++) {
+        long start = System.nanoTime();
+        operation.run();
+        long took = System.nanoTime() - start;
+
+        spent += took;
+        nanos[i] = Math.min(nanos[i], took);
+      }
+    }
+    return new ScalingResult(operation.name(), operation.declared(), cells, nanos);
+  }
+
+  // the slope of the least squares line through the logs of the times against
+  // the logs of the cells
+  static double fit(int[] cells, double[] nanos) {
+    double meanX = 0;
+    double meanY = 0;
+
+    for (int i = 0; i < cells.length; i++) {
+      meanX += Math.log(cells[i]) / cells.length;
+      meanY += Math.log(Math.max(nanos[i], 1)) / cells.length;
+    }
+    double covariance = 0;
+    double variance = 0;
+
+    for (int i = 0; i < cells.length; i++) {
+      double dx = Math.log(cells[i]) - meanX;
+
+      covariance += dx * (Math.log(Math.max(nanos[i], 1)) - meanY);
+      variance += dx * dx;
+    }
+    return covariance / variance;
+  }
+
+  // every operation of the game that is checked
+  static ArrayList<IScalingCase> cases() {
+    ArrayList<IScalingCase> cases = new ArrayList<IScalingCase>();
+
+    cases.add(new GenerateCase());
+    cases.add(new PropagateCase());
+    cases.add(new WinCase());
+    cases.add(new RenderCase());
+    return cases;
+  }
+
+  // prints a report of every operation, optionally given the sides to try
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    int[] sides = { 32, 64, 128, 256, 512 };
+    if (args.length > 0) {
+      sides = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sides[i] = Integer.parseInt(args[i]);
+      }
+    }
+    boolean passed = true;
+
+    for (IScalingCase operation : cases()) {
+      ScalingResult result = measure(operation, sides);
+
+      System.out.println(result.row());
+      passed &= result.withinDeclared();
+    }
+    if (!passed) {
+      System.exit(1);
+    }
+  }
+}
+
+//Represents an operation that is quadratic by mistake, draining a list from its
+//front the way the old breadth first searches did, to check that the suite
+//catches it
+class DrainFrontCase implements IScalingCase {
+  ArrayList<Integer> list = new ArrayList<Integer>();
+  int cells;
+
+  public String name() {
+    return "drain";
+  }
+
+  public double declared() {
+    return 1;
+  }
+
+  public void setUp(int side) {
+    this.cells = side * side;
+  }
+
+  public void run() {
+    for (int i = 0; i < this.cells; i++) {
+      this.list.add(i);
+    }
+    while (!this.list.isEmpty()) {
+      this.list.remove(0);
+    }
+  }
+}
+
+//Examples and tests for the scaling suite. On machines with no display, run them
+//with -Djava.awt.headless=true rather than setting it here, which would keep
+//other examples from opening a window
+class ExamplesScalingSuite {
+  int[] sides = { 16, 32, 64, 128 };
+
+  // tests fitting exponents to exact power laws
+  void testFit(Tester t) {
+    int[] cells = { 100, 1000, 10000 };
+
+    t.checkRange(ScalingSuite.fit(cells, new double[] { 5, 50, 500 }), 0.999, 1.001);
+    t.checkRange(ScalingSuite.fit(cells, new double[] { 1, 100, 10000 }), 1.999, 2.001);
+    t.checkRange(ScalingSuite.fit(cells, new double[] { 7, 7, 7 }), -0.001, 0.001);
+
+    ScalingResult result = new ScalingResult("fake", 1, cells, new double[] { 1, 14, 200 });
+    t.checkExpect(result.withinDeclared(), true);
+    t.checkExpect(result.row().startsWith("fake       n^1.15 (declared n^1) ok"), true);
+    t.checkExpect(new ScalingResult("fake", 0, cells, new double[] { 1, 10, 100 })
+        .withinDeclared(), false);
+  }
+
+  // tests that every operation of the game grows no faster than it declares
+  void testGameScaling(Tester t) {
+    for (IScalingCase operation : ScalingSuite.cases()) {
+      ScalingResult result = ScalingSuite.measure(operation, this.sides);
+
+      t.checkExpect(result.withinDeclared(ScalingSuite.TEST_TOLERANCE), true, result.row());
+    }
+  }
+
+  // tests that a quadratic operation declared linear fails
+  void testCatchesQuadratic(Tester t) {
+    ScalingResult result = ScalingSuite.measure(new DrainFrontCase(), this.sides);
+
+    t.checkExpect(result.withinDeclared(ScalingSuite.TEST_TOLERANCE), false, result.row());
+    t.checkRange(result.exponent, 1.5, 2.5);
+  }
+}
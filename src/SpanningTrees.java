@@ -0,0 +1,168 @@
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import com.sun.management.ThreadMXBean;
+
+import tester.Tester;
+
+//Compares the generation time and memory of every generator side by side
+class GeneratorBenchmark {
+
+  // runs the benchmark, optionally with the board sides to try as arguments
+  public static void main(String[] args) {
+    int[] sides = { 64, 256, 1024 };
+    if (args.length > 0) {
+      sides = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sides[i] = Integer.parseInt(args[i]);
+      }
+    }
+    ITreeGenerator[] generators = { new KruskalGenerator(), new PrimGenerator(),
+        new WilsonGenerator() };
+
+    System.out.printf("%-8s %6s %12s %14s %14s%n", "strategy", "side", "ms/board",
+        "first alloc KB", "reuse alloc KB");
+    for (int side : sides) {
+      GridTopology topology = new GridTopology(side, side, GridTopology.SQUARE);
+
+      for (ITreeGenerator generator : generators) {
+        System.out.println(new GeneratorBenchmark().run(generator, topology, 5));
+      }
+    }
+  }
+
+  // times the given generator on the given topology, returning a table row
+  String run(ITreeGenerator generator, GridTopology topology, int rounds) {
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    Random rand = new Random(topology.cells);
+
+    long before = threads.getThreadAllocatedBytes(thread);
+    generator.spanningTree(topology, rand);
+    long firstAlloc = threads.getThreadAllocatedBytes(thread) - before;
+
+    long start = System.nanoTime();
+    before = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < rounds; i++) {
+      generator.spanningTree(topology, rand);
+    }
+    long reuseAlloc = (threads.getThreadAllocatedBytes(thread) - before) / rounds;
+    double millis = (System.nanoTime() - start) / 1e6 / rounds;
+
+    return String.format("%-8s %6d %12.2f %14d %14d", generator.name(), topology.width,
+        millis, firstAlloc / 1024, reuseAlloc / 1024);
+  }
+}
+
+//Examples and tests for the spanning tree generators
+class ExamplesSpanningTrees {
+
+  // determines if the first cells - 1 edges in tree form a spanning tree of the
+  // topology
+  boolean spans(GridTopology topology, int[] tree) {
+    PackedBoard board = new PackedBoard(topology);
+
+    for (int i = 0; i < topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    board.propagate();
+    return board.allPowered();
+  }
+
+  // tests that every generator produces spanning trees
+  void testSpanningTrees(Tester t) {
+    ITreeGenerator[] generators = { new KruskalGenerator(), new PrimGenerator(),
+        new WilsonGenerator() };
+
+    for (ITreeGenerator generator : generators) {
+      GridTopology grid = new GridTopology(7, 4, GridTopology.SQUARE);
+      Random rand = new Random(3);
+
+      t.checkExpect(spans(grid, generator.spanningTree(grid, rand)), true);
+      // and again on the reused buffers
+      t.checkExpect(spans(grid, generator.spanningTree(grid, rand)), true);
+
+      GridTopology torus = new GridTopology(5, 2, GridTopology.TORUS);
+      t.checkExpect(spans(torus, generator.spanningTree(torus, rand)), true);
+
+      GridTopology single = new GridTopology(1, 1, GridTopology.SQUARE);
+      t.checkExpect(generator.spanningTree(single, rand).length, 0);
+    }
+  }
+
+  // tests that the Kruskal generator keeps the original boards
+  void testKruskalGenerator(Tester t) {
+    LightEmAll original = new LightEmAll(5, 5, true, new Random(9));
+    GridTopology grid = new GridTopology(5, 5, GridTopology.SQUARE);
+    int[] tree = new KruskalGenerator().spanningTree(grid, new Random(9));
+
+    original.makeBoard();
+    original.makeNodes();
+    original.kruskals(original.rand);
+
+    for (int i = 0; i < 24; i++) {
+      t.checkExpect(original.mst.get(i).getFrom().col * 5 + original.mst.get(i).getFrom().row,
+          grid.edgeFrom[tree[i]]);
+      t.checkExpect(original.mst.get(i).getTo().col * 5 + original.mst.get(i).getTo().row,
+          grid.edgeTo[tree[i]]);
+    }
+  }
+
+  // tests that Prim's algorithm finds a tree as light as Kruskal's
+  void testPrimGenerator(Tester t) {
+    GridTopology grid = new GridTopology(6, 9, GridTopology.SQUARE);
+    KruskalGenerator kruskal = new KruskalGenerator();
+    PrimGenerator prim = new PrimGenerator();
+    int[] kruskalTree = kruskal.spanningTree(grid, new Random(21));
+    int[] primTree = prim.spanningTree(grid, new Random(21));
+    int kruskalWeight = 0;
+    int primWeight = 0;
+
+    for (int i = 0; i < grid.cells - 1; i++) {
+      kruskalWeight += kruskal.weights[kruskalTree[i]];
+      primWeight += prim.weights[primTree[i]];
+    }
+
+    t.checkExpect(primWeight, kruskalWeight);
+  }
+
+  // tests that games can be built with any generator
+  void testGameGenerators(Tester t) {
+    LightEmAll game = new LightEmAll(5, 6, new WilsonGenerator());
+
+    t.checkExpect(game.mst.size(), 29);
+    t.checkExpect(game.board.get(0).get(0).powerStation, true);
+
+    game.initializeGame();
+    t.checkExpect(game.mst.size(), 29);
+    t.checkExpect(game.generator.name(), "wilson");
+  }
+
+  // tests the IndexedMinHeap class
+  void testIndexedMinHeap(Tester t) {
+    IndexedMinHeap heap = new IndexedMinHeap(5);
+
+    heap.insert(3, 10);
+    heap.insert(1, 4);
+    heap.insert(4, 7);
+    heap.insert(0, 12);
+
+    t.checkExpect(heap.contains(2), false);
+    t.checkExpect(heap.contains(4), true);
+    t.checkExpect(heap.keyOf(4), 7);
+
+    heap.decreaseKey(0, 1);
+
+    t.checkExpect(heap.pollMin(), 0);
+    t.checkExpect(heap.pollMin(), 1);
+    t.checkExpect(heap.pollMin(), 4);
+    t.checkExpect(heap.contains(4), false);
+    t.checkExpect(heap.pollMin(), 3);
+    t.checkExpect(heap.isEmpty(), true);
+
+    heap.insert(2, 5);
+    heap.clear();
+    t.checkExpect(heap.isEmpty(), true);
+    t.checkExpect(heap.contains(2), false);
+  }
+}
@@ -0,0 +1,127 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+//Measures the time from starting a JVM to having a board that can be played, the
+//way a short-lived batch worker would: headless on a packed board, with a game
+//whose board is laid out as it is made, and with a deferred game, each up to its
+//first frame. Run with a mode to time that mode in this JVM, or without one to
+//time each mode in several fresh JVMs.
+class StartupBenchmark {
+  static final String[] MODES = { "packed", "game", "deferred" };
+
+  // makes a playable board of the given side in the given mode, returning the
+  // number of cells it powers
+  static int firstBoard(String mode, int side) {
+    if (mode.equals("packed")) {
+      GridTopology topology = new GridTopology(side, side, GridTopology.SQUARE);
+      PackedBoard board = new PackedBoard(topology);
+
+      board.generate(new KruskalGenerator(), new Random());
+      return board.poweredCount();
+    }
+    LightEmAll game = new LightEmAll(new GridTopology(side, side, GridTopology.SQUARE),
+        new KruskalGenerator(), mode.equals("deferred"));
+
+    int powered = 0;
+
+    game.makeScene();
+    for (GamePiece piece : game.nodes) {
+      powered += piece.powered ? 1 : 0;
+    }
+    return powered;
+  }
+
+  // describes the time since this JVM started and the classes it has loaded
+  static String since(String mode) {
+    return String.format("%-9s %8d ms %8d classes", mode,
+        ManagementFactory.getRuntimeMXBean().getUptime(),
+        ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+  }
+
+  // times one mode in this JVM, or each mode in fresh JVMs, optionally given the
+  // side of the board and the number of JVMs per mode
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length > 0 && Arrays.asList(MODES).contains(args[0])) {
+      int side = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+      firstBoard(args[0], side);
+      System.out.println(since(args[0]));
+      return;
+    }
+    int side = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+        + "java";
+
+    for (String mode : MODES) {
+      long[] millis = new long[runs];
+      String last = "";
+
+      for (int i = 0; i < runs; i++) {
+        Process child = new ProcessBuilder(java, "-Djava.awt.headless=true", "-cp",
+            System.getProperty("java.class.path"), "StartupBenchmark", mode,
+            Integer.toString(side)).redirectErrorStream(true).start();
+
+        try (BufferedReader out = new BufferedReader(
+            new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+          last = out.readLine();
+        }
+        child.waitFor();
+        millis[i] = Long.parseLong(last.trim().split("\\s+")[1]);
+      }
+      Arrays.sort(millis);
+      System.out.printf("%-9s median %4d ms to first playable %d x %d board (%s)%n", mode,
+          millis[runs / 2], side, side, last.trim().split("\\s+", 4)[3]);
+    }
+  }
+}
+
+//Examples and tests for starting games quickly
+class ExamplesStartupBenchmark {
+
+  // tests that a deferred game lays out its board when it is first needed
+  void testDeferred(Tester t) {
+    GridTopology topology = new GridTopology(6, 5, GridTopology.SQUARE);
+    LightEmAll game = new LightEmAll(topology, new KruskalGenerator(), true);
+
+    t.checkExpect(game.generated, false);
+    t.checkExpect(game.nodes.size(), 0);
+    t.checkExpect(game.board.size(), 0);
+
+    game.makeScene();
+    t.checkExpect(game.generated, true);
+    t.checkExpect(game.nodes.size(), 30);
+    t.checkExpect(game.mst.size(), 29);
+    t.checkExpect(game.board.get(0).get(0).powered, true);
+
+    // asking again keeps the board
+    GamePiece corner = game.board.get(5).get(4);
+    game.ensureBoard();
+    t.checkExpect(game.board.get(5).get(4) == corner, true);
+    t.checkExpect(game.mst.size(), 29);
+
+    LightEmAll clicked = new LightEmAll(topology, new KruskalGenerator(), true);
+    clicked.onMouseClicked(new Posn(1, 1), "LeftButton");
+    t.checkExpect(clicked.score, 1);
+    t.checkExpect(new LightEmAll(topology, new KruskalGenerator(), true).checkWin(), false);
+    t.checkExpect(new LightEmAll(topology, new KruskalGenerator()).generated, true);
+  }
+
+  // tests that each mode makes a board
+  void testFirstBoard(Tester t) {
+    t.checkRange(StartupBenchmark.firstBoard("packed", 8), 1, 65);
+    t.checkRange(StartupBenchmark.firstBoard("game", 8), 1, 65);
+    t.checkRange(StartupBenchmark.firstBoard("deferred", 8), 1, 65);
+    t.checkExpect(StartupBenchmark.since("game").startsWith("game "), true);
+    t.checkExpect(RenderAssets.GP_CELL != null, true);
+  }
+}
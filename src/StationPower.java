@@ -0,0 +1,228 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import tester.Tester;
+
+//Represents the power of a packed board driven by several power stations at
+//once: a single breadth first pass from every station gives each powered cell
+//to its nearest station along the wires, so extra stations cost no extra passes.
+//Cells equally far from two stations belong to the station listed first.
+class StationPower {
+  PackedBoard board;
+  int[] stations; // the cell of each station
+
+  int[] owner; // the station powering each cell, or -1 if it is unpowered
+  int[] distance; // the number of wires from each cell to its station, or -1
+
+  // the cells of each station as a bitset, cell c being bit c % 64 of word c / 64
+  long[][] members;
+
+  // breadth first worklist of propagate
+  int[] queue;
+
+  StationPower(PackedBoard board, int[] stations) {
+    this.board = board;
+    this.stations = new int[0];
+    this.owner = new int[board.topology.cells];
+    this.distance = new int[board.topology.cells];
+    this.members = new long[0][];
+    this.queue = new int[board.topology.cells];
+
+    for (int cell : stations) {
+      this.addStation(cell);
+    }
+  }
+
+  // adds a station on the given cell, returning its index
+  int addStation(int cell) {
+    this.checkCell(cell);
+
+    this.stations = Arrays.copyOf(this.stations, this.stations.length + 1);
+    this.stations[this.stations.length - 1] = cell;
+    this.members = Arrays.copyOf(this.members, this.members.length + 1);
+    this.members[this.members.length - 1] = new long[(this.board.topology.cells + 63) / 64];
+    return this.stations.length - 1;
+  }
+
+  // moves the given station to another cell
+  void moveStation(int station, int cell) {
+    this.checkCell(cell);
+    this.stations[station] = cell;
+  }
+
+  // throws if the given cell is not on the board
+  void checkCell(int cell) {
+    if (cell < 0 || cell >= this.board.topology.cells) {
+      throw new IllegalArgumentException("There is no cell " + cell + " on this board");
+    }
+  }
+
+  // updates the owner, distance and power of every cell with one breadth first
+  // pass started from all stations together
+  void propagate() {
+    GridTopology t = this.board.topology;
+    int head = 0;
+    int tail = 0;
+
+    Arrays.fill(this.owner, -1);
+    Arrays.fill(this.distance, -1);
+    for (long[] bits : this.members) {
+      Arrays.fill(bits, 0);
+    }
+
+    for (int s = 0; s < this.stations.length; s++) {
+      int cell = this.stations[s];
+
+      if (this.owner[cell] < 0) {
+        this.claim(cell, s, 0);
+        this.queue[tail++] = cell;
+      }
+    }
+
+    while (head < tail) {
+      int cell = this.queue[head++];
+
+      for (int i = t.start[cell]; i < t.start[cell + 1]; i++) {
+        int to = t.neighbors[i];
+        int side = t.sideOf[i];
+
+        if (this.owner[to] < 0 && this.board.hasSide(cell, side)
+            && this.board.hasSide(to, t.opposite(side))) {
+          this.claim(to, this.owner[cell], this.distance[cell] + 1);
+          this.queue[tail++] = to;
+        }
+      }
+    }
+
+    for (int cell = 0; cell < t.cells; cell++) {
+      this.board.powered[cell] = this.owner[cell] >= 0;
+    }
+  }
+
+  // gives a cell to a station at the given distance
+  void claim(int cell, int station, int distance) {
+    this.owner[cell] = station;
+    this.distance[cell] = distance;
+    this.members[station][cell >>> 6] |= 1L << cell;
+  }
+
+  // determines if the given cell is powered by the given station
+  boolean belongsTo(int cell, int station) {
+    return (this.members[station][cell >>> 6] & (1L << cell)) != 0;
+  }
+
+  // counts the cells powered by the given station
+  int cellsOf(int station) {
+    int count = 0;
+
+    for (long word : this.members[station]) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  // determines if every cell is powered by some station
+  boolean allPowered() {
+    for (int cell = 0; cell < this.owner.length; cell++) {
+      if (this.owner[cell] < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
+
+//Examples and tests for boards with several power stations
+class ExamplesStationPower {
+
+  // makes a solved board laid out by Kruskal's algorithm from the given seed
+  PackedBoard solved(GridTopology topology, int seed) {
+    PackedBoard board = new PackedBoard(topology);
+    int[] tree = new KruskalGenerator().spanningTree(topology, new Random(seed));
+
+    for (int i = 0; i < topology.cells - 1; i++) {
+      board.connect(tree[i]);
+    }
+    return board;
+  }
+
+  // tests stations at both ends of a straight wire
+  void testTwoStations(Tester t) {
+    PackedBoard line = this.solved(new GridTopology(5, 1, GridTopology.SQUARE), 0);
+    StationPower power = new StationPower(line, new int[] { 0, 4 });
+
+    power.propagate();
+
+    t.checkExpect(power.owner, new int[] { 0, 0, 0, 1, 1 });
+    t.checkExpect(power.distance, new int[] { 0, 1, 2, 1, 0 });
+    t.checkExpect(power.cellsOf(0), 3);
+    t.checkExpect(power.cellsOf(1), 2);
+    t.checkExpect(power.belongsTo(3, 1), true);
+    t.checkExpect(power.belongsTo(3, 0), false);
+    t.checkExpect(power.allPowered(), true);
+
+    // cutting the wire in the middle leaves that cell unpowered
+    line.rotate(2);
+    power.propagate();
+
+    t.checkExpect(power.owner, new int[] { 0, 0, -1, 1, 1 });
+    t.checkExpect(line.powered[2], false);
+    t.checkExpect(power.allPowered(), false);
+
+    power.moveStation(1, 2);
+    power.propagate();
+    t.checkExpect(power.owner[2], 1);
+    t.checkExpect(power.distance[2], 0);
+  }
+
+  // tests that a single station powers the same cells as a packed board does
+  void testOneStation(Tester t) {
+    PackedBoard board = new PackedBoard(new GridTopology(9, 7, GridTopology.TORUS));
+
+    board.generate(new WilsonGenerator(), new Random(5));
+
+    boolean[] expected = board.powered.clone();
+    StationPower power = new StationPower(board, new int[] { board.station });
+    power.propagate();
+
+    t.checkExpect(board.powered, expected);
+  }
+
+  // tests that stations split a large board between them by distance
+  void testManyStations(Tester t) {
+    GridTopology grid = new GridTopology(40, 40, GridTopology.HEX);
+    PackedBoard board = this.solved(grid, 2);
+    StationPower power = new StationPower(board, new int[] { 0, 799, 1599, 45 });
+    int total = 0;
+
+    power.propagate();
+
+    for (int s = 0; s < 4; s++) {
+      total += power.cellsOf(s);
+      t.checkExpect(power.owner[power.stations[s]], s);
+    }
+    t.checkExpect(total, grid.cells);
+    t.checkExpect(power.allPowered(), true);
+
+    // wired neighbors are never more than one wire apart in distance, which holds
+    // only if every cell is measured from its nearest station
+    boolean nearest = true;
+    for (int cell = 0; cell < grid.cells; cell++) {
+      for (int i = grid.start[cell]; i < grid.start[cell + 1]; i++) {
+        if (board.hasSide(cell, grid.sideOf[i])
+            && Math.abs(power.distance[cell] - power.distance[grid.neighbors[i]]) > 1) {
+          nearest = false;
+        }
+      }
+    }
+    t.checkExpect(nearest, true);
+  }
+
+  // tests that stations must be on the board
+  void testBadStation(Tester t) {
+    PackedBoard board = new PackedBoard(new GridTopology(2, 2, GridTopology.SQUARE));
+
+    t.checkConstructorException(new IllegalArgumentException("There is no cell 4 on this board"),
+        "StationPower", board, new int[] { 0, 4 });
+  }
+}
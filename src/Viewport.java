@@ -0,0 +1,195 @@
+import tester.Tester;
+
+//Represents the part of a board shown in the window: how many pixels a cell takes
+//at the current zoom, and how far the view has scrolled, in zoomed pixels from
+//the top left of the board. Only cells inside the view are drawn, and once cells
+//get smaller than DETAIL pixels they are drawn as blocks of several cells, so a
+//frame costs about the same however large the board is.
+class Viewport {
+  // the smallest cell drawn with its wires, in pixels
+  static final int DETAIL = 8;
+
+  // the most pixels a window takes on each side
+  static final int MAX_WINDOW = 1000;
+
+  int cols; // columns of the board
+  int rows; // rows of the board
+  int windowWidth;
+  int windowHeight;
+
+  int cellPixels; // the pixels a cell takes on each side at this zoom
+  int left; // the zoomed pixel of the board at the left edge of the window
+  int top; // the zoomed pixel of the board at the top edge of the window
+
+  // shows the board from its top left at full size, in a window as large as the
+  // board up to MAX_WINDOW pixels on each side
+  Viewport(int cols, int rows) {
+    this(cols, rows, Math.min(cols * IUtils.CELL_SIZE, MAX_WINDOW),
+        Math.min(rows * IUtils.CELL_SIZE, MAX_WINDOW));
+  }
+
+  Viewport(int cols, int rows, int windowWidth, int windowHeight) {
+    this.cols = cols;
+    this.rows = rows;
+    this.windowWidth = windowWidth;
+    this.windowHeight = windowHeight;
+    this.cellPixels = IUtils.CELL_SIZE;
+    this.left = 0;
+    this.top = 0;
+  }
+
+  // determines if cells are drawn with their wires rather than as blocks
+  boolean detailed() {
+    return this.cellPixels >= DETAIL;
+  }
+
+  // the cells on each side of a block drawn for several cells, 1 when detailed
+  int blockCells() {
+    return this.detailed() ? 1 : (DETAIL + this.cellPixels - 1) / this.cellPixels;
+  }
+
+  // the first column, at least partly in view
+  int firstCol() {
+    return Math.min(this.cols, this.left / this.cellPixels);
+  }
+
+  // one past the last column in view
+  int endCol() {
+    return Math.min(this.cols,
+        (this.left + this.windowWidth + this.cellPixels - 1) / this.cellPixels);
+  }
+
+  // the first row, at least partly in view
+  int firstRow() {
+    return Math.min(this.rows, this.top / this.cellPixels);
+  }
+
+  // one past the last row in view
+  int endRow() {
+    return Math.min(this.rows,
+        (this.top + this.windowHeight + this.cellPixels - 1) / this.cellPixels);
+  }
+
+  // the window x coordinate of the center of the given column
+  int centerX(int col) {
+    return col * this.cellPixels - this.left + this.cellPixels / 2;
+  }
+
+  // the window y coordinate of the center of the given row
+  int centerY(int row) {
+    return row * this.cellPixels - this.top + this.cellPixels / 2;
+  }
+
+  // the column under the given window x coordinate, or -1 if it is off the board
+  int colAt(int x) {
+    int col = Math.floorDiv(x + this.left, this.cellPixels);
+
+    return x < 0 || x >= this.windowWidth || col >= this.cols ? -1 : col;
+  }
+
+  // the row under the given window y coordinate, or -1 if it is off the board
+  int rowAt(int y) {
+    int row = Math.floorDiv(y + this.top, this.cellPixels);
+
+    return y < 0 || y >= this.windowHeight || row >= this.rows ? -1 : row;
+  }
+
+  // doubles or halves the size of cells, between one pixel and four times their
+  // full size, keeping the middle of the window in place
+  void zoom(boolean in) {
+    int pixels = in ? Math.min(this.cellPixels * 2, IUtils.CELL_SIZE * 4)
+        : Math.max(this.cellPixels / 2, 1);
+    long middleX = this.left + this.windowWidth / 2;
+    long middleY = this.top + this.windowHeight / 2;
+
+    this.left = (int) (middleX * pixels / this.cellPixels) - this.windowWidth / 2;
+    this.top = (int) (middleY * pixels / this.cellPixels) - this.windowHeight / 2;
+    this.cellPixels = pixels;
+    this.scroll(0, 0);
+  }
+
+  // scrolls the view by the given number of window pixels, staying on the board
+  void scroll(int dx, int dy) {
+    int maxLeft = Math.max(0, this.cols * this.cellPixels - this.windowWidth);
+    int maxTop = Math.max(0, this.rows * this.cellPixels - this.windowHeight);
+
+    this.left = Math.max(0, Math.min(maxLeft, this.left + dx));
+    this.top = Math.max(0, Math.min(maxTop, this.top + dy));
+  }
+}
+
+//Examples and tests for viewports
+class ExamplesViewport {
+
+  // tests a board that fits in its window
+  void testSmallBoard(Tester t) {
+    Viewport view = new Viewport(3, 3);
+
+    t.checkExpect(view.windowWidth, 150);
+    t.checkExpect(view.firstCol(), 0);
+    t.checkExpect(view.endCol(), 3);
+    t.checkExpect(view.endRow(), 3);
+    t.checkExpect(view.centerX(1), 75);
+    t.checkExpect(view.colAt(149), 2);
+    t.checkExpect(view.colAt(150), -1);
+    t.checkExpect(view.rowAt(-1), -1);
+
+    view.scroll(100, 100);
+    t.checkExpect(view.left, 0);
+    t.checkExpect(view.top, 0);
+  }
+
+  // tests scrolling over a board larger than its window
+  void testScroll(Tester t) {
+    Viewport view = new Viewport(300, 300, 400, 200);
+
+    t.checkExpect(view.endCol(), 8);
+    t.checkExpect(view.endRow(), 4);
+
+    view.scroll(1025, 60);
+    t.checkExpect(view.firstCol(), 20);
+    t.checkExpect(view.endCol(), 29);
+    t.checkExpect(view.firstRow(), 1);
+    t.checkExpect(view.endRow(), 6);
+    t.checkExpect(view.centerX(20), 0);
+    t.checkExpect(view.colAt(0), 20);
+    t.checkExpect(view.colAt(24), 20);
+    t.checkExpect(view.colAt(25), 21);
+    t.checkExpect(view.rowAt(0), 1);
+
+    view.scroll(100000, 100000);
+    t.checkExpect(view.left, 14600);
+    t.checkExpect(view.top, 14800);
+    t.checkExpect(view.endCol(), 300);
+  }
+
+  // tests zooming in and out around the middle of the window
+  void testZoom(Tester t) {
+    Viewport view = new Viewport(300, 300, 400, 400);
+
+    view.scroll(5000, 5000);
+    // the middle of the window is at zoomed pixel 5200, in cell 104
+    view.zoom(false);
+    t.checkExpect(view.cellPixels, 25);
+    t.checkExpect(view.left, 2400);
+    t.checkExpect(view.colAt(200), 104);
+
+    for (int i = 0; i < 10; i++) {
+      view.zoom(false);
+    }
+    t.checkExpect(view.cellPixels, 1);
+    t.checkExpect(view.detailed(), false);
+    t.checkExpect(view.blockCells(), 8);
+    t.checkExpect(view.left, 0);
+    t.checkExpect(view.endCol(), 300);
+
+    for (int i = 0; i < 10; i++) {
+      view.zoom(true);
+    }
+    t.checkExpect(view.cellPixels, 200);
+    t.checkExpect(view.blockCells(), 1);
+
+    view.cellPixels = 3;
+    t.checkExpect(view.blockCells(), 3);
+  }
+}
@@ -0,0 +1,50 @@
+import java.util.Random;
+
+//Generates boards with Wilson's algorithm, i.e., loop-erased random walks, which
+//picks every spanning tree of the grid with the same probability
+class WilsonGenerator extends AGridGenerator {
+  // the neighbor position each cell last left through on the current walk
+  int[] walkExit;
+
+  // resizes the buffers for the given topology
+  void resize(GridTopology topology) {
+    this.walkExit = new int[topology.cells];
+  }
+
+  // produces a uniformly random spanning tree of the grid
+  public int[] spanningTree(GridTopology topology, Random rand) {
+    int size = 0;
+
+    this.prepare(topology);
+    if (topology.cells == 0) {
+      return this.tree;
+    }
+
+    this.inTree[rand.nextInt(topology.cells)] = true;
+    for (int first = 0; first < topology.cells; first++) {
+      // walk until the tree is hit, remembering only the last exit of each cell,
+      // which erases the loops of the walk
+      int cell = first;
+      while (!this.inTree[cell]) {
+        int degree = topology.start[cell + 1] - topology.start[cell];
+
+        this.walkExit[cell] = topology.start[cell] + rand.nextInt(degree);
+        cell = topology.neighbors[this.walkExit[cell]];
+      }
+
+      // add the loop-erased walk to the tree
+      cell = first;
+      while (!this.inTree[cell]) {
+        this.inTree[cell] = true;
+        this.tree[size++] = topology.edgeOf[this.walkExit[cell]];
+        cell = topology.neighbors[this.walkExit[cell]];
+      }
+    }
+    return this.tree;
+  }
+
+  // the name of this strategy
+  public String name() {
+    return "wilson";
+  }
+}